@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2012 Lightbox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightbox.android.camera;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ThumbnailTransform on pixel arrays: a 640x480 frame to the 96x96 button
+ * thumbnail, rotated and mirrored as for the front camera.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ThumbnailTransformBenchmark {
+	private static final int WIDTH = 640;
+	private static final int HEIGHT = 480;
+	private static final int THUMB_SIZE = 96;
+
+	private int[] mSource;
+	private int[] mOutput;
+
+	@Setup
+	public void setUp() {
+		mSource = new int[WIDTH * HEIGHT];
+		for (int i = 0; i < mSource.length; i++) {
+			mSource[i] = 0xFF000000 | (i * 0x9E3779B1);
+		}
+		mOutput = new int[THUMB_SIZE * THUMB_SIZE];
+	}
+
+	@Benchmark
+	public int[] rotateMirrorCrop() {
+		new ThumbnailTransform(WIDTH, HEIGHT)
+				.rotate(90)
+				.mirror(true)
+				.centerCrop(THUMB_SIZE, THUMB_SIZE)
+				.apply(mSource, mOutput);
+		return mOutput;
+	}
+
+	@Benchmark
+	public float[] matrixValues() {
+		return new ThumbnailTransform(WIDTH, HEIGHT)
+				.rotate(270)
+				.centerCrop(THUMB_SIZE, THUMB_SIZE)
+				.getMatrixValues();
+	}
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2012 Lightbox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightbox.android.camera;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.lightbox.android.camera.gallery.IImage;
+
+/** Util.computeSampleSize() over a spread of camera picture sizes. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UtilBenchmark {
+	private final int[] mWidths = {640, 1280, 1600, 2048, 2592, 3264, 4128};
+	private final int[] mHeights = {480, 960, 1200, 1536, 1944, 2448, 3096};
+
+	@Benchmark
+	public int computeSampleSizeByPixels() {
+		int sum = 0;
+		for (int i = 0; i < mWidths.length; i++) {
+			sum += Util.computeSampleSize(mWidths[i], mHeights[i],
+					IImage.UNCONSTRAINED, IImage.THUMBNAIL_MAX_NUM_PIXELS);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public int computeSampleSizeBySide() {
+		int sum = 0;
+		for (int i = 0; i < mWidths.length; i++) {
+			sum += Util.computeSampleSize(mWidths[i], mHeights[i],
+					IImage.MINI_THUMB_TARGET_SIZE, IImage.MINI_THUMB_MAX_NUM_PIXELS);
+		}
+		return sum;
+	}
+}
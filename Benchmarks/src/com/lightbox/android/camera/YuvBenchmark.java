@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2012 Lightbox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightbox.android.camera;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * NV21 to RGB conversion of a whole preview frame, and the downsampled
+ * conversion used for the preview-to-thumbnail animation. Divide the
+ * megapixels of {@link #size} by the time per operation for the throughput;
+ * the README has it for the baseline.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class YuvBenchmark {
+	@Param({"640x480", "1280x720"})
+	public String size;
+
+	private int mWidth;
+	private int mHeight;
+	private byte[] mFrame;
+	private int[] mArgb;
+	private short[] mThumbnail;
+
+	@Setup
+	public void setUp() {
+		int x = size.indexOf('x');
+		mWidth = Integer.parseInt(size.substring(0, x));
+		mHeight = Integer.parseInt(size.substring(x + 1));
+		mFrame = new byte[mWidth * mHeight * 3 / 2];
+		new Random(42).nextBytes(mFrame);
+		mArgb = new int[mWidth * mHeight];
+		mThumbnail = new short[160 * 120];
+	}
+
+	@Benchmark
+	public int[] decodeYuv() {
+		Util.decodeYUV(mArgb, mFrame, mWidth, mHeight);
+		return mArgb;
+	}
+
+	@Benchmark
+	public short[] convertScaledThumbnail() {
+		YuvConverter.convertScaled(mFrame, mWidth, mHeight, 0, true,
+				160, 120, null, mThumbnail);
+		return mThumbnail;
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2012 Lightbox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightbox.android.camera.gallery;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.graphics.Bitmap;
+import android.net.Uri;
+
+import com.lightbox.android.camera.ImageManager;
+
+/**
+ * ImageListUber merging three in-memory lists whose dates interleave, as the
+ * internal and external storage lists do.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImageListUberBenchmark {
+	private static final int LISTS = 3;
+
+	@Param({"100", "1000"})
+	public int imagesPerList;
+
+	private IImageList[] mLists;
+	private ImageListUber mMerged;
+	private int[] mRandomIndices;
+	private int mNext;
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(42);
+		mLists = new IImageList[LISTS];
+		for (int i = 0; i < LISTS; i++) {
+			// Descending dates, with runs of varying length from each list.
+			long[] dates = new long[imagesPerList];
+			long date = Long.MAX_VALUE / 2;
+			for (int j = 0; j < imagesPerList; j++) {
+				date -= 1 + random.nextInt(10 * LISTS);
+				dates[j] = date;
+			}
+			mLists[i] = new FakeList(dates);
+		}
+		mMerged = merge();
+		int count = mMerged.getCount();
+		for (int i = 0; i < count; i++) {
+			mMerged.getImageAt(i);
+		}
+		mRandomIndices = new int[1024];
+		for (int i = 0; i < mRandomIndices.length; i++) {
+			mRandomIndices[i] = random.nextInt(count);
+		}
+	}
+
+	private ImageListUber merge() {
+		return new ImageListUber(mLists, ImageManager.SORT_DESCENDING);
+	}
+
+	/** Merges everything, in order, from a new list. */
+	@Benchmark
+	public IImage mergeAll() {
+		ImageListUber merged = merge();
+		IImage last = null;
+		for (int i = 0, n = merged.getCount(); i < n; i++) {
+			last = merged.getImageAt(i);
+		}
+		return last;
+	}
+
+	/** Random lookups in a list which is already merged, via the skip list. */
+	@Benchmark
+	public IImage lookupMerged() {
+		mNext = (mNext + 1) & (mRandomIndices.length - 1);
+		return mMerged.getImageAt(mRandomIndices[mNext]);
+	}
+
+	private static class FakeList implements IImageList {
+		private final IImage[] mImages;
+
+		FakeList(long[] dates) {
+			mImages = new IImage[dates.length];
+			for (int i = 0; i < dates.length; i++) {
+				mImages[i] = new FakeImage(dates[i]);
+			}
+		}
+
+		public int getCount() {
+			return mImages.length;
+		}
+
+		public IImage getImageAt(int i) {
+			return mImages[i];
+		}
+
+		public void close() {
+		}
+	}
+
+	private static class FakeImage implements IImage {
+		private final long mDateTaken;
+
+		FakeImage(long dateTaken) {
+			mDateTaken = dateTaken;
+		}
+
+		public Uri fullSizeImageUri() {
+			return null;
+		}
+
+		public long getDateTaken() {
+			return mDateTaken;
+		}
+
+		public Bitmap miniThumbBitmap() {
+			return null;
+		}
+	}
+}
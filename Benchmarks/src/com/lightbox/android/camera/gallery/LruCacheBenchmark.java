@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2012 Lightbox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightbox.android.camera.gallery;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * LruCache lookups and inserts. Every value stays strongly reachable from
+ * the benchmark, so evicted entries are still found through the weak map,
+ * as they are when the gallery holds on to them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LruCacheBenchmark {
+	private static final int CAPACITY = 64;
+	private static final int KEYS = 4 * CAPACITY;
+
+	private final Integer[] mKeys = new Integer[KEYS];
+	private final Object[] mValues = new Object[KEYS];
+	private LruCache<Integer, Object> mCache;
+	private int mNext;
+
+	@Setup
+	public void setUp() {
+		mCache = new LruCache<Integer, Object>(CAPACITY);
+		for (int i = 0; i < KEYS; i++) {
+			mKeys[i] = i;
+			mValues[i] = new Object();
+			mCache.put(mKeys[i], mValues[i]);
+		}
+	}
+
+	/** Gets the recently used keys, which are all in the LRU map. */
+	@Benchmark
+	public Object getRecent() {
+		mNext = (mNext + 1) % CAPACITY;
+		return mCache.get(mKeys[KEYS - CAPACITY + mNext]);
+	}
+
+	/** Cycles through four times the capacity, so most gets miss the LRU map. */
+	@Benchmark
+	public Object getCycling() {
+		mNext = (mNext + 1) % KEYS;
+		return mCache.get(mKeys[mNext]);
+	}
+
+	@Benchmark
+	public Object put() {
+		mNext = (mNext + 1) % KEYS;
+		return mCache.put(mKeys[mNext], mValues[mNext]);
+	}
+}
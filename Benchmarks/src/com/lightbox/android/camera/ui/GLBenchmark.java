@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2012 Lightbox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightbox.android.camera.ui;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** The CPU side of the HUD's GL drawing, without a GL context. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GLBenchmark {
+	// A scale and translate, as Matrix.getValues() gives it.
+	private final float[] mMatrix = {1.5f, 0, 12, 0, -1.5f, 480, 0, 0, 1};
+	private final float[] mGLMatrix = new float[16];
+
+	private final SpriteBatch mBatch = new SpriteBatch();
+	// A stretched nine-patch, as NinePatchTexture gives it (4x4 vertices).
+	private final int[] mDivX = {0, 8, 92, 100};
+	private final int[] mDivY = {0, 8, 32, 40};
+	private final float[] mDivU = {0, 0.125f, 0.375f, 0.5f};
+	private final float[] mDivV = {0, 0.25f, 0.75f, 1};
+
+	private final TransformStack mTransform = new TransformStack();
+	private final float[] mPoints = new float[4];
+
+	/** Mapping one icon into the sprite batch. */
+	@Benchmark
+	public void batchSprite() {
+		mBatch.add(null, 1, 1f, mMatrix, 10, 20, 32, 32, 0, 0, 0.5f, 0.5f);
+		mBatch.reset();
+	}
+
+	/** Mapping the nine cells of a nine-patch into the sprite batch. */
+	@Benchmark
+	public void batchNinePatch() {
+		mBatch.addGrid(null, 1, 1f, mMatrix, 10, 20, mDivX, mDivY, mDivU, mDivV, 4, 4);
+		mBatch.reset();
+	}
+
+	/**
+	 * The transform work of one child, as GLRootView.renderChild() and a
+	 * rotated indicator do it, and a clip mapped through it.
+	 */
+	@Benchmark
+	public float[] transformChild() {
+		TransformStack transform = mTransform;
+		transform.save();
+		transform.translate(10, 20);
+		transform.save();
+		transform.translate(16, 16);
+		transform.rotate(-90);
+		float[] points = mPoints;
+		points[0] = 0;
+		points[1] = 32;
+		points[2] = 32;
+		points[3] = 0;
+		transform.mapPoints(points, 2);
+		transform.restore();
+		transform.restore();
+		return points;
+	}
+
+	@Benchmark
+	public float[] toGLMatrix() {
+		System.arraycopy(mMatrix, 0, mGLMatrix, 0, mMatrix.length);
+		return GLRootView.toGLMatrix(mGLMatrix);
+	}
+}
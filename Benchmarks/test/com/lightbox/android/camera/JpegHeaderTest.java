@@ -0,0 +1,342 @@
+/*
+ * Copyright (C) 2012 Lightbox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightbox.android.camera;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Parses JPEG headers built here, byte by byte, in both byte orders, and
+ * truncated and corrupted copies of them.
+ */
+public class JpegHeaderTest {
+	private static final int CORRUPT_COPIES = 20000;
+
+	private static final String DATE_TIME = "2012:06:01 10:00:00";
+	private static final String DATE_TIME_ORIGINAL = "2012:05:31 09:30:15";
+	private static final byte[] THUMBNAIL = {
+			(byte) 0xFF, (byte) 0xD8, 1, 2, 3, 4, 5, 6, (byte) 0xFF, (byte) 0xD9};
+
+	@Test
+	public void readsLittleEndianExif() {
+		assertFullHeader(new Jpeg(true));
+	}
+
+	@Test
+	public void readsBigEndianExif() {
+		assertFullHeader(new Jpeg(false));
+	}
+
+	@Test
+	public void turnsOrientationIntoDegrees() {
+		int[] orientations = {1, 2, 3, 4, 5, 6, 7, 8, 0, 9};
+		// Like ImageManager.getExifOrientation(), the mirrored values are 0.
+		int[] degrees = {0, 0, 180, 0, 0, 90, 0, 270, 0, 0};
+		for (int i = 0; i < orientations.length; i++) {
+			for (boolean littleEndian : new boolean[] {true, false}) {
+				Jpeg jpeg = new Jpeg(littleEndian);
+				jpeg.orientation = orientations[i];
+				assertEquals("orientation " + orientations[i], degrees[i],
+						JpegHeader.parse(jpeg.build()).getOrientation());
+			}
+		}
+	}
+
+	@Test
+	public void prefersDateTimeOriginal() {
+		Jpeg jpeg = new Jpeg(true);
+		assertEquals(DATE_TIME_ORIGINAL, JpegHeader.parse(jpeg.build()).getDateTime());
+
+		jpeg.dateTimeOriginal = null;
+		assertEquals(DATE_TIME, JpegHeader.parse(jpeg.build()).getDateTime());
+
+		jpeg.dateTime = null;
+		assertNull(JpegHeader.parse(jpeg.build()).getDateTime());
+
+		jpeg.dateTimeOriginal = DATE_TIME_ORIGINAL;
+		assertEquals(DATE_TIME_ORIGINAL, JpegHeader.parse(jpeg.build()).getDateTime());
+	}
+
+	@Test
+	public void readsTheSizeWithoutExif() {
+		Jpeg jpeg = new Jpeg(false);
+		jpeg.exif = false;
+		JpegHeader header = JpegHeader.parse(jpeg.build());
+		assertEquals(640, header.getWidth());
+		assertEquals(480, header.getHeight());
+		assertDefaultExif(header);
+	}
+
+	@Test
+	public void dropsAThumbnailOutsideTheSegment() {
+		Jpeg jpeg = new Jpeg(true);
+		jpeg.thumbnailLengthSlack = 1;
+		JpegHeader header = JpegHeader.parse(jpeg.build());
+		assertFalse(header.hasThumbnail());
+		assertEquals(-1, header.getThumbnailOffset());
+		// The rest is still read.
+		assertEquals(90, header.getOrientation());
+		assertEquals(640, header.getWidth());
+	}
+
+	@Test
+	public void readsNothingFromNonJpegData() {
+		assertDefaults(JpegHeader.parse(new byte[0]));
+		assertDefaults(JpegHeader.parse(new byte[] {(byte) 0xFF}));
+		assertDefaults(JpegHeader.parse(new byte[] {(byte) 0xFF, (byte) 0xD8}));
+		assertDefaults(JpegHeader.parse("GIF89a, not a JPEG".getBytes()));
+		byte[] zeros = new byte[1024];
+		assertDefaults(JpegHeader.parse(zeros));
+	}
+
+	@Test
+	public void survivesTruncation() {
+		for (boolean littleEndian : new boolean[] {true, false}) {
+			Jpeg jpeg = new Jpeg(littleEndian);
+			byte[] data = jpeg.build();
+			for (int length = 0; length < data.length; length++) {
+				JpegHeader header = JpegHeader.parse(Arrays.copyOf(data, length));
+				assertConsistent(header, length);
+				if (length < jpeg.sofEnd) {
+					assertEquals("width at " + length, 0, header.getWidth());
+				}
+				if (length < jpeg.app1End) {
+					// The segment is incomplete, so none of the EXIF is read.
+					assertDefaultExif(header);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void survivesCorruption() {
+		Random random = new Random(1);
+		byte[][] originals = {new Jpeg(true).build(), new Jpeg(false).build()};
+		for (int i = 0; i < CORRUPT_COPIES; i++) {
+			byte[] data = originals[i & 1].clone();
+			int changes = 1 + random.nextInt(8);
+			for (int j = 0; j < changes; j++) {
+				data[random.nextInt(data.length)] = (byte) random.nextInt(256);
+			}
+			assertConsistent(JpegHeader.parse(data), data.length);
+		}
+		for (int i = 0; i < CORRUPT_COPIES / 10; i++) {
+			byte[] data = new byte[random.nextInt(256)];
+			random.nextBytes(data);
+			if (data.length >= 2 && random.nextBoolean()) {
+				data[0] = (byte) 0xFF;
+				data[1] = (byte) 0xD8;
+			}
+			assertConsistent(JpegHeader.parse(data), data.length);
+		}
+	}
+
+	private static void assertFullHeader(Jpeg jpeg) {
+		byte[] data = jpeg.build();
+		JpegHeader header = JpegHeader.parse(data);
+		assertEquals(90, header.getOrientation());
+		assertEquals(640, header.getWidth());
+		assertEquals(480, header.getHeight());
+		assertEquals(DATE_TIME_ORIGINAL, header.getDateTime());
+		assertTrue(header.hasThumbnail());
+		assertEquals(THUMBNAIL.length, header.getThumbnailLength());
+		int offset = header.getThumbnailOffset();
+		assertArrayEquals(THUMBNAIL,
+				Arrays.copyOfRange(data, offset, offset + THUMBNAIL.length));
+	}
+
+	private static void assertConsistent(JpegHeader header, int length) {
+		int degrees = header.getOrientation();
+		assertTrue("orientation " + degrees, degrees % 90 == 0 && degrees >= 0 && degrees < 360);
+		assertTrue(header.getWidth() >= 0 && header.getHeight() >= 0);
+		if (header.hasThumbnail()) {
+			assertTrue("thumbnail outside the data", header.getThumbnailOffset()
+					+ (long) header.getThumbnailLength() <= length);
+		}
+	}
+
+	private static void assertDefaultExif(JpegHeader header) {
+		assertEquals(0, header.getOrientation());
+		assertNull(header.getDateTime());
+		assertFalse(header.hasThumbnail());
+		assertEquals(-1, header.getThumbnailOffset());
+	}
+
+	private static void assertDefaults(JpegHeader header) {
+		assertDefaultExif(header);
+		assertEquals(0, header.getWidth());
+		assertEquals(0, header.getHeight());
+	}
+
+	/**
+	 * Builds SOI, an APP1 EXIF segment, SOF0 and SOS. The EXIF has IFD0 with
+	 * the orientation, DateTime and a pointer to the EXIF IFD, which holds
+	 * DateTimeOriginal, and IFD1 with the thumbnail, in that order.
+	 */
+	private static final class Jpeg {
+		final boolean littleEndian;
+		boolean exif = true;
+		int orientation = 6;
+		String dateTime = DATE_TIME;
+		String dateTimeOriginal = DATE_TIME_ORIGINAL;
+		// Added to the thumbnail length written, to point past the segment.
+		int thumbnailLengthSlack;
+
+		// Where the segments end, set by build().
+		int app1End;
+		int sofEnd;
+
+		Jpeg(boolean littleEndian) {
+			this.littleEndian = littleEndian;
+		}
+
+		byte[] build() {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			out.write(0xFF);
+			out.write(0xD8);
+			if (exif) {
+				byte[] tiff = buildTiff();
+				out.write(0xFF);
+				out.write(0xE1);
+				int length = 2 + 6 + tiff.length;
+				out.write(length >> 8);
+				out.write(length);
+				out.write('E');
+				out.write('x');
+				out.write('i');
+				out.write('f');
+				out.write(0);
+				out.write(0);
+				out.write(tiff, 0, tiff.length);
+			}
+			app1End = out.size();
+
+			// SOF0: precision, height, width, one component.
+			byte[] sof = {(byte) 0xFF, (byte) 0xC0, 0, 11,
+					8, 480 >> 8, (byte) 480, 640 >> 8, (byte) 640,
+					1, 1, 0x11, 0};
+			out.write(sof, 0, sof.length);
+			sofEnd = out.size();
+
+			byte[] sos = {(byte) 0xFF, (byte) 0xDA, 0, 8, 1, 1, 0, 0, 63, 0,
+					0x12, 0x34, (byte) 0xFF, (byte) 0xD9};
+			out.write(sos, 0, sos.length);
+			return out.toByteArray();
+		}
+
+		private byte[] buildTiff() {
+			int ifd0Count = (orientation != 0 ? 1 : 0) + (dateTime != null ? 1 : 0)
+					+ (dateTimeOriginal != null ? 1 : 0);
+			int ifd0 = 8;
+			int exifIfd = ifd0 + ifdSize(ifd0Count);
+			int ifd1 = exifIfd + (dateTimeOriginal != null ? ifdSize(1) : 0);
+			int dateTimeData = ifd1 + ifdSize(2);
+			int dateTimeOriginalData = dateTimeData + (dateTime != null ? 20 : 0);
+			int thumbnailData = dateTimeOriginalData + (dateTimeOriginal != null ? 20 : 0);
+
+			Tiff tiff = new Tiff(littleEndian);
+			tiff.bytes(littleEndian ? "II" : "MM");
+			tiff.u16(42);
+			tiff.u32(ifd0);
+
+			tiff.u16(ifd0Count);
+			if (orientation != 0) tiff.entry(0x0112, 3, 1, orientation << (littleEndian ? 0 : 16));
+			if (dateTime != null) tiff.entry(0x0132, 2, 20, dateTimeData);
+			if (dateTimeOriginal != null) tiff.entry(0x8769, 4, 1, exifIfd);
+			tiff.u32(ifd1);
+
+			if (dateTimeOriginal != null) {
+				tiff.u16(1);
+				tiff.entry(0x9003, 2, 20, dateTimeOriginalData);
+				tiff.u32(0);
+			}
+
+			tiff.u16(2);
+			tiff.entry(0x0201, 4, 1, thumbnailData);
+			tiff.entry(0x0202, 4, 1, THUMBNAIL.length + thumbnailLengthSlack);
+			tiff.u32(0);
+
+			tiff.ascii(dateTime);
+			tiff.ascii(dateTimeOriginal);
+			assertEquals(thumbnailData, tiff.size());
+			tiff.write(THUMBNAIL, 0, THUMBNAIL.length);
+			return tiff.toByteArray();
+		}
+
+		private static int ifdSize(int entries) {
+			return 2 + entries * 12 + 4;
+		}
+	}
+
+	private static final class Tiff extends ByteArrayOutputStream {
+		private final boolean mLittleEndian;
+
+		Tiff(boolean littleEndian) {
+			mLittleEndian = littleEndian;
+		}
+
+		void bytes(String s) {
+			for (int i = 0; i < s.length(); i++) write(s.charAt(i));
+		}
+
+		void u16(int value) {
+			if (mLittleEndian) {
+				write(value);
+				write(value >> 8);
+			} else {
+				write(value >> 8);
+				write(value);
+			}
+		}
+
+		void u32(int value) {
+			if (mLittleEndian) {
+				u16(value);
+				u16(value >>> 16);
+			} else {
+				u16(value >>> 16);
+				u16(value);
+			}
+		}
+
+		// A SHORT value is read from the first two bytes of the field; for
+		// big-endian data the caller shifts it there.
+		void entry(int tag, int type, int components, int value) {
+			u16(tag);
+			u16(type);
+			u32(components);
+			u32(value);
+		}
+
+		// 19 characters and the terminator; nothing if s is null.
+		void ascii(String s) {
+			if (s == null) return;
+			assertEquals(19, s.length());
+			bytes(s);
+			write(0);
+		}
+	}
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2012 Lightbox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightbox.android.camera;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks ThumbnailTransform on grids whose pixels are labelled 10 * y + x,
+ * so an output shows where each of its pixels came from.
+ */
+public class ThumbnailTransformTest {
+	private static final int RANDOM_TRANSFORMS = 2000;
+	private static final float EPSILON = 1e-4f;
+
+	// A 3x2 source:
+	//    0  1  2
+	//   10 11 12
+	private static final int[] SOURCE = labelledGrid(3, 2);
+
+	@Test
+	public void rotatesClockwise() {
+		assertOutput(3, 2, new int[] {
+				0, 1, 2,
+				10, 11, 12}, transform(0, false));
+		assertOutput(2, 3, new int[] {
+				10, 0,
+				11, 1,
+				12, 2}, transform(90, false));
+		assertOutput(3, 2, new int[] {
+				12, 11, 10,
+				2, 1, 0}, transform(180, false));
+		assertOutput(2, 3, new int[] {
+				2, 12,
+				1, 11,
+				0, 10}, transform(270, false));
+	}
+
+	@Test
+	public void mirrorsAfterRotating() {
+		assertOutput(3, 2, new int[] {
+				2, 1, 0,
+				12, 11, 10}, transform(0, true));
+		assertOutput(2, 3, new int[] {
+				0, 10,
+				1, 11,
+				2, 12}, transform(90, true));
+		assertOutput(3, 2, new int[] {
+				10, 11, 12,
+				0, 1, 2}, transform(180, true));
+		assertOutput(2, 3, new int[] {
+				12, 2,
+				11, 1,
+				10, 0}, transform(270, true));
+	}
+
+	@Test
+	public void rotationsWrapAround() {
+		assertArrayEquals(apply(transform(270, false)), apply(transform(-90, false)));
+		assertArrayEquals(apply(transform(90, true)), apply(transform(450, true)));
+	}
+
+	@Test
+	public void centerCropsWideSources() {
+		// At the same scale, the middle two columns.
+		ThumbnailTransform t = new ThumbnailTransform(6, 2).centerCrop(2, 2);
+		assertOutput(2, 2, new int[] {
+				2, 3,
+				12, 13}, t, labelledGrid(6, 2));
+
+		// Halved, every other pixel of the middle four columns.
+		t = new ThumbnailTransform(8, 4).centerCrop(2, 2);
+		assertOutput(2, 2, new int[] {
+				13, 15,
+				33, 35}, t, labelledGrid(8, 4));
+	}
+
+	@Test
+	public void centerCropsTallSources() {
+		ThumbnailTransform t = new ThumbnailTransform(2, 6).centerCrop(2, 2);
+		assertOutput(2, 2, new int[] {
+				20, 21,
+				30, 31}, t, labelledGrid(2, 6));
+
+		t = new ThumbnailTransform(4, 8).centerCrop(2, 2);
+		assertOutput(2, 2, new int[] {
+				31, 33,
+				51, 53}, t, labelledGrid(4, 8));
+	}
+
+	@Test
+	public void cropsAfterRotating() {
+		// The 6x2 source turned upright is 2x6, so its middle rows are kept:
+		// columns 2 and 3 of the source, bottom row on the left.
+		ThumbnailTransform t = new ThumbnailTransform(6, 2).rotate(90).centerCrop(2, 2);
+		assertOutput(2, 2, new int[] {
+				12, 2,
+				13, 3}, t, labelledGrid(6, 2));
+	}
+
+	/**
+	 * Every output pixel of apply() must come from the source pixel that
+	 * mapPoint() takes over it, and getMatrixValues() must agree with both.
+	 */
+	@Test
+	public void mapPointAgreesWithApply() {
+		Random random = new Random(1);
+		float[] corner = new float[2];
+		for (int i = 0; i < RANDOM_TRANSFORMS; i++) {
+			int width = 1 + random.nextInt(12);
+			int height = 1 + random.nextInt(12);
+			ThumbnailTransform t = new ThumbnailTransform(width, height)
+					.rotate(90 * random.nextInt(4))
+					.mirror(random.nextBoolean());
+			if (random.nextBoolean()) {
+				t.centerCrop(1 + random.nextInt(12), 1 + random.nextInt(12));
+			}
+
+			int[] source = new int[width * height];
+			for (int j = 0; j < source.length; j++) source[j] = j;
+			int outputWidth = t.getOutputWidth();
+			int outputHeight = t.getOutputHeight();
+			int[] output = new int[outputWidth * outputHeight];
+			t.apply(source, output);
+
+			float[] m = t.getMatrixValues();
+			for (int y = 0; y < outputHeight; y++) {
+				for (int x = 0; x < outputWidth; x++) {
+					int sx = output[y * outputWidth + x] % width;
+					int sy = output[y * outputWidth + x] / width;
+
+					// The source pixel, mapped, covers this pixel's center.
+					float minX = Float.MAX_VALUE, maxX = -Float.MAX_VALUE;
+					float minY = Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+					for (int k = 0; k < 4; k++) {
+						float cx = sx + (k & 1);
+						float cy = sy + (k >> 1);
+						t.mapPoint(cx, cy, corner);
+						assertEquals(m[0] * cx + m[1] * cy + m[2], corner[0], EPSILON);
+						assertEquals(m[3] * cx + m[4] * cy + m[5], corner[1], EPSILON);
+						minX = Math.min(minX, corner[0]);
+						maxX = Math.max(maxX, corner[0]);
+						minY = Math.min(minY, corner[1]);
+						maxY = Math.max(maxY, corner[1]);
+					}
+					if (x + 0.5f < minX - EPSILON || x + 0.5f > maxX + EPSILON
+							|| y + 0.5f < minY - EPSILON || y + 0.5f > maxY + EPSILON) {
+						fail("transform " + i + ": output " + x + ", " + y + " came from "
+								+ sx + ", " + sy + ", which maps to " + minX + ", " + minY
+								+ " - " + maxX + ", " + maxY);
+					}
+				}
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsOtherAngles() {
+		transform(45, false);
+	}
+
+	private static ThumbnailTransform transform(int degrees, boolean mirror) {
+		return new ThumbnailTransform(3, 2).rotate(degrees).mirror(mirror);
+	}
+
+	private static int[] apply(ThumbnailTransform t) {
+		int[] output = new int[t.getOutputWidth() * t.getOutputHeight()];
+		t.apply(SOURCE, output);
+		return output;
+	}
+
+	private static void assertOutput(int width, int height, int[] expected,
+			ThumbnailTransform t) {
+		assertOutput(width, height, expected, t, SOURCE);
+	}
+
+	private static void assertOutput(int width, int height, int[] expected,
+			ThumbnailTransform t, int[] source) {
+		assertEquals("width", width, t.getOutputWidth());
+		assertEquals("height", height, t.getOutputHeight());
+		int[] output = new int[width * height];
+		t.apply(source, output);
+		assertArrayEquals(expected, output);
+	}
+
+	private static int[] labelledGrid(int width, int height) {
+		int[] grid = new int[width * height];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				grid[y * width + x] = 10 * y + x;
+			}
+		}
+		return grid;
+	}
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2012 Lightbox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightbox.android.camera;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Compares YuvConverter with the BT.601 equations in floating point, as
+ * published, for full and limited range frames and every output.
+ */
+public class YuvConverterTest {
+	// A preview frame.
+	private static final int WIDTH = 640;
+	private static final int HEIGHT = 480;
+
+	@Test
+	public void argbMatchesFullRange() {
+		byte[] frame = randomFrame(WIDTH, HEIGHT, 1);
+		int[] argb = new int[WIDTH * HEIGHT];
+		Util.decodeYUV(argb, frame, WIDTH, HEIGHT);
+		assertArgb(frame, WIDTH, HEIGHT, YuvConverter.RANGE_FULL, argb);
+	}
+
+	@Test
+	public void argbMatchesLimitedRange() {
+		byte[] frame = randomFrame(WIDTH, HEIGHT, 2);
+		int[] argb = new int[WIDTH * HEIGHT];
+		YuvConverter.convertRows(frame, WIDTH, HEIGHT, 0, HEIGHT,
+				YuvConverter.tablesFor(YuvConverter.RANGE_LIMITED), argb);
+		assertArgb(frame, WIDTH, HEIGHT, YuvConverter.RANGE_LIMITED, argb);
+	}
+
+	@Test
+	public void rgb565MatchesBothRanges() {
+		for (int range = YuvConverter.RANGE_FULL; range <= YuvConverter.RANGE_LIMITED; range++) {
+			byte[] frame = randomFrame(WIDTH, HEIGHT, 3 + range);
+			short[] rgb565 = new short[WIDTH * HEIGHT];
+			YuvConverter.convertScaled(frame, WIDTH, HEIGHT, range, 0, false,
+					WIDTH, HEIGHT, null, rgb565);
+			assertRgb565(frame, WIDTH, HEIGHT, range, rgb565);
+		}
+	}
+
+	@Test
+	public void limitedRangeReachesBlackAndWhite() {
+		byte[] frame = new byte[2 * 2 * 3 / 2];
+		frame[0] = 16;
+		frame[1] = (byte) 235;
+		frame[2] = 0;
+		frame[3] = (byte) 255;
+		frame[4] = (byte) 128;
+		frame[5] = (byte) 128;
+		int[] argb = new int[2 * 2];
+		YuvConverter.convertRows(frame, 2, 2, 0, 2,
+				YuvConverter.tablesFor(YuvConverter.RANGE_LIMITED), argb);
+		assertEquals(0xFF000000, argb[0]);
+		assertEquals(0xFFFFFFFF, argb[1]);
+		// Beyond black and white is clamped.
+		assertEquals(0xFF000000, argb[2]);
+		assertEquals(0xFFFFFFFF, argb[3]);
+	}
+
+	@Test
+	public void rowsConvertInAnyRanges() {
+		// Split on an odd row, so both ranges share a chroma row.
+		byte[] frame = randomFrame(34, 22, 7);
+		int[] argb = new int[34 * 22];
+		YuvConverter.Tables tables = YuvConverter.tablesFor(YuvConverter.RANGE_FULL);
+		YuvConverter.convertRows(frame, 34, 22, 11, 22, tables, argb);
+		YuvConverter.convertRows(frame, 34, 22, 0, 11, tables, argb);
+		assertArgb(frame, 34, 22, YuvConverter.RANGE_FULL, argb);
+	}
+
+	@Test
+	public void decodeYuvMatchesConvertScaledAtFullSize() {
+		byte[] frame = randomFrame(WIDTH, HEIGHT, 8);
+		int[] expected = new int[WIDTH * HEIGHT];
+		YuvConverter.convertScaled(frame, WIDTH, HEIGHT, 0, false,
+				WIDTH, HEIGHT, expected, null);
+		int[] actual = new int[WIDTH * HEIGHT];
+		Util.decodeYUV(actual, frame, WIDTH, HEIGHT);
+		assertArrayEquals(expected, actual);
+	}
+
+	@Test
+	public void convertScaledAtFullSizeMatches() {
+		for (int range = YuvConverter.RANGE_FULL; range <= YuvConverter.RANGE_LIMITED; range++) {
+			byte[] frame = randomFrame(64, 48, 9 + range);
+			int[] argb = new int[64 * 48];
+			YuvConverter.convertScaled(frame, 64, 48, range, 0, false, 64, 48, argb, null);
+			assertArgb(frame, 64, 48, range, argb);
+		}
+	}
+
+	@Test
+	public void convertScaledRotatesAndMirrors() {
+		int width = 64;
+		int height = 48;
+		byte[] frame = randomFrame(width, height, 11);
+		int[] full = new int[width * height];
+		Util.decodeYUV(full, frame, width, height);
+		int[] rotated = new int[width * height];
+		// 90 degrees clockwise, then mirrored: a transpose.
+		YuvConverter.convertScaled(frame, width, height, 90, true,
+				height, width, rotated, null);
+		for (int y = 0; y < width; y++) {
+			for (int x = 0; x < height; x++) {
+				assertEquals(full[x * width + y], rotated[y * height + x]);
+			}
+		}
+		YuvConverter.convertScaled(frame, width, height, 180, false,
+				width, height, rotated, null);
+		for (int i = 0, n = width * height; i < n; i++) {
+			assertEquals(full[n - 1 - i], rotated[i]);
+		}
+	}
+
+	private static byte[] randomFrame(int width, int height, long seed) {
+		byte[] frame = new byte[width * height * 3 / 2];
+		new Random(seed).nextBytes(frame);
+		return frame;
+	}
+
+	// The published BT.601 matrices, rounded and clamped; {r, g, b}.
+	private static int[] reference(int y, int u, int v, int range) {
+		double r;
+		double g;
+		double b;
+		double cb = u - 128;
+		double cr = v - 128;
+		if (range == YuvConverter.RANGE_FULL) {
+			r = y + 1.402 * cr;
+			g = y - 0.344136 * cb - 0.714136 * cr;
+			b = y + 1.772 * cb;
+		} else {
+			double l = 1.164383 * (y - 16);
+			r = l + 1.596027 * cr;
+			g = l - 0.391762 * cb - 0.812968 * cr;
+			b = l + 2.017232 * cb;
+		}
+		return new int[] {clamp(r), clamp(g), clamp(b)};
+	}
+
+	private static int clamp(double value) {
+		return (int) Math.max(0, Math.min(255, Math.round(value)));
+	}
+
+	private static int[] referenceAt(byte[] frame, int width, int height, int range, int x, int y) {
+		int chroma = width * height + (y >> 1) * width + (x & ~1);
+		return reference(frame[y * width + x] & 0xFF, frame[chroma + 1] & 0xFF,
+				frame[chroma] & 0xFF, range);
+	}
+
+	// Fixed point may round the other way, so channels may be one off.
+	private static void assertArgb(byte[] frame, int width, int height, int range, int[] argb) {
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int[] expected = referenceAt(frame, width, height, range, x, y);
+				int actual = argb[y * width + x];
+				if ((actual >>> 24) != 0xFF
+						|| Math.abs(((actual >> 16) & 0xFF) - expected[0]) > 1
+						|| Math.abs(((actual >> 8) & 0xFF) - expected[1]) > 1
+						|| Math.abs((actual & 0xFF) - expected[2]) > 1) {
+					fail("pixel " + x + "," + y + " is " + Integer.toHexString(actual)
+							+ ", expected r, g, b " + expected[0] + ", "
+							+ expected[1] + ", " + expected[2]);
+				}
+			}
+		}
+	}
+
+	private static void assertRgb565(byte[] frame, int width, int height, int range, short[] rgb565) {
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int[] expected = referenceAt(frame, width, height, range, x, y);
+				int actual = rgb565[y * width + x] & 0xFFFF;
+				if (Math.abs((actual >> 11) - (expected[0] >> 3)) > 1
+						|| Math.abs(((actual >> 5) & 0x3F) - (expected[1] >> 2)) > 1
+						|| Math.abs((actual & 0x1F) - (expected[2] >> 3)) > 1) {
+					fail("pixel " + x + "," + y + " is " + Integer.toHexString(actual)
+							+ ", expected r, g, b " + expected[0] + ", "
+							+ expected[1] + ", " + expected[2]);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2012 Lightbox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightbox.android.camera.ui;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+import java.util.Stack;
+
+import org.junit.Test;
+
+/**
+ * Compares TransformStack with 3x3 matrices multiplied in double precision,
+ * as android.graphics.Matrix would be, over random sequences of operations.
+ */
+public class TransformStackTest {
+	private static final int OPERATIONS = 200000;
+	// The HUD never nests deeper than this, but it is beyond INITIAL_DEPTH.
+	private static final int MAX_DEPTH = 20;
+	// Relative to the largest value of the matrix.
+	private static final double TOLERANCE = 1e-4;
+
+	@Test
+	public void matchesTheReferenceOverRandomOperations() {
+		Random random = new Random(1);
+		TransformStack stack = new TransformStack();
+		double[] reference = identity();
+		Stack<double[]> saved = new Stack<double[]>();
+
+		for (int i = 0; i < OPERATIONS; i++) {
+			float x = random.nextFloat() * 200 - 100;
+			float y = random.nextFloat() * 200 - 100;
+			switch (random.nextInt(6)) {
+			case 0:
+				stack.translate(x, y);
+				reference = multiply(reference, translation(x, y));
+				break;
+			case 1:
+				float sx = random.nextFloat() + 0.5f;
+				float sy = random.nextFloat() + 0.5f;
+				stack.scale(sx, sy);
+				reference = multiply(reference, new double[] {sx, 0, 0, 0, sy, 0, 0, 0, 1});
+				break;
+			case 2:
+				// Quarter turns, including negative and multiple ones, as often
+				// as arbitrary angles.
+				float degrees = random.nextBoolean()
+						? 90 * (random.nextInt(9) - 4)
+						: random.nextFloat() * 720 - 360;
+				if (random.nextBoolean()) {
+					stack.rotate(degrees);
+					reference = multiply(reference, rotation(degrees));
+				} else {
+					stack.rotate(degrees, x, y);
+					reference = multiply(reference, multiply(translation(x, y),
+							multiply(rotation(degrees), translation(-x, -y))));
+				}
+				break;
+			case 3:
+				float[] m = {random.nextFloat(), random.nextFloat(), x,
+						random.nextFloat(), random.nextFloat(), y, 0, 0, 1};
+				stack.concat(m);
+				double[] d = new double[9];
+				for (int j = 0; j < 9; j++) d[j] = m[j];
+				reference = multiply(reference, d);
+				break;
+			case 4:
+				if (saved.size() < MAX_DEPTH) {
+					stack.save();
+					saved.push(reference.clone());
+				}
+				break;
+			default:
+				if (!saved.isEmpty()) {
+					stack.restore();
+					reference = saved.pop();
+				}
+				break;
+			}
+			assertEquals(saved.size(), stack.getDepth());
+			assertMatches(i, reference, stack);
+
+			// Start over now and then, before the products lose all range.
+			if (saved.isEmpty() && random.nextInt(50) == 0) {
+				stack.reset();
+				reference = identity();
+			}
+		}
+	}
+
+	@Test
+	public void quarterTurnsAreExact() {
+		// The HUD's base transform, then a quarter turn about a pivot, as a
+		// rotated indicator does.
+		TransformStack stack = new TransformStack();
+		stack.translate(0, 480);
+		stack.scale(1, -1);
+		stack.rotate(90, 50, 50);
+		assertArrayEquals(new float[] {0, -1, 100, -1, 0, 480, 0, 0, 1},
+				stack.getValues(), 0);
+
+		for (int quarter = -8; quarter <= 8; quarter++) {
+			stack.reset();
+			stack.rotate(90 * quarter);
+			float[] v = stack.getValues();
+			for (int i = 0; i < 9; i++) {
+				if (v[i] != Math.round(v[i])) {
+					fail(90 * quarter + " degrees gives " + v[i] + " at " + i);
+				}
+			}
+		}
+
+		// Four turns about a pivot go back to where they started, exactly.
+		stack.reset();
+		stack.translate(12.5f, -3);
+		float[] before = stack.getValues().clone();
+		for (int i = 0; i < 4; i++) {
+			stack.rotate(90, 33, 71);
+		}
+		assertArrayEquals(before, stack.getValues(), 0);
+	}
+
+	@Test
+	public void restoresEveryLevelBeyondTheInitialDepth() {
+		TransformStack stack = new TransformStack();
+		int levels = 100;
+		for (int i = 0; i < levels; i++) {
+			stack.translate(i, -i);
+			stack.rotate(90);
+			stack.setAlpha(i / (float) levels);
+			stack.save();
+		}
+		for (int i = levels - 1; i >= 0; i--) {
+			TransformStack expected = new TransformStack();
+			for (int j = 0; j <= i; j++) {
+				expected.translate(j, -j);
+				expected.rotate(90);
+			}
+			stack.translate(1000, 1000);
+			stack.setAlpha(2);
+			stack.restore();
+			assertArrayEquals(expected.getValues(), stack.getValues(), 0);
+			assertEquals(i / (float) levels, stack.getAlpha(), 0);
+			assertEquals(i, stack.getDepth());
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void restoreWithoutSaveThrows() {
+		TransformStack stack = new TransformStack();
+		stack.save();
+		stack.restore();
+		stack.restore();
+	}
+
+	private static void assertMatches(int operation, double[] reference, TransformStack stack) {
+		float[] values = stack.getValues();
+		double scale = 1;
+		for (int i = 0; i < 6; i++) {
+			scale = Math.max(scale, Math.abs(reference[i]));
+		}
+		for (int i = 0; i < 9; i++) {
+			if (Math.abs(values[i] - reference[i]) / scale > TOLERANCE) {
+				fail("operation " + operation + ": value " + i + " is " + values[i]
+						+ ", expected " + reference[i]);
+			}
+		}
+
+		// And a point mapped through it.
+		float[] point = {37.5f, -12.25f};
+		stack.mapPoints(point, 1);
+		double x = reference[0] * 37.5 + reference[1] * -12.25 + reference[2];
+		double y = reference[3] * 37.5 + reference[4] * -12.25 + reference[5];
+		double range = scale * 100;
+		if (Math.abs(point[0] - x) / range > TOLERANCE
+				|| Math.abs(point[1] - y) / range > TOLERANCE) {
+			fail("operation " + operation + ": point is " + point[0] + ", "
+					+ point[1] + ", expected " + x + ", " + y);
+		}
+	}
+
+	private static double[] identity() {
+		return new double[] {1, 0, 0, 0, 1, 0, 0, 0, 1};
+	}
+
+	private static double[] translation(double dx, double dy) {
+		return new double[] {1, 0, dx, 0, 1, dy, 0, 0, 1};
+	}
+
+	private static double[] rotation(double degrees) {
+		double radians = Math.toRadians(degrees);
+		double cos = Math.cos(radians);
+		double sin = Math.sin(radians);
+		return new double[] {cos, -sin, 0, sin, cos, 0, 0, 0, 1};
+	}
+
+	// a * b, so b applies first, like the pre* methods of Matrix.
+	private static double[] multiply(double[] a, double[] b) {
+		double[] result = new double[9];
+		for (int row = 0; row < 3; row++) {
+			for (int column = 0; column < 3; column++) {
+				double sum = 0;
+				for (int k = 0; k < 3; k++) {
+					sum += a[row * 3 + k] * b[k * 3 + column];
+				}
+				result[row * 3 + column] = sum;
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2012 Lightbox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightbox.android.camera;
+
+import java.util.ArrayList;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Build;
+import android.util.Log;
+
+/**
+ * Mutable bitmaps which are no longer used, kept to be drawn into or decoded
+ * into (with BitmapFactory.Options.inBitmap, from API level 11) instead of
+ * allocating new ones. The thumbnail, rotate and flip paths each make a few
+ * bitmaps of the same sizes per capture, which otherwise churn the heap while
+ * the user is shooting.
+ *
+ * <p>Bitmaps are matched on exact size and config. The pool holds at most
+ * {@link #getMaxBytes()} bytes; the least recently returned bitmaps are
+ * recycled to stay under it. A bitmap must only be put back when nothing
+ * draws it anymore, as when it would have been recycled. All methods are
+ * thread safe.
+ */
+public class BitmapPool {
+	/** Used to tag logs */
+	private static final String TAG = "BitmapPool";
+
+	private static final int MAX_BYTES = 4 * 1024 * 1024;
+
+	private static final Paint FILTER_PAINT = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+	private static BitmapPool sInstance;
+
+	private final int mMaxBytes;
+
+	// Oldest first.
+	private final ArrayList<Bitmap> mBitmaps = new ArrayList<Bitmap>();
+	private int mBytes;
+
+	private int mHits;
+	private int mMisses;
+	private int mEvictions;
+
+	/** The pool shared by the app, holding at most 1/16 of the heap. */
+	public static synchronized BitmapPool instance() {
+		if (sInstance == null) {
+			long heap = Runtime.getRuntime().maxMemory();
+			sInstance = new BitmapPool((int) Math.min(MAX_BYTES, heap / 16));
+		}
+		return sInstance;
+	}
+
+	public BitmapPool(int maxBytes) {
+		mMaxBytes = maxBytes;
+	}
+
+	/**
+	 * Returns a mutable bitmap of the given size and config, from the pool if
+	 * there is one. Its content is undefined.
+	 */
+	public Bitmap get(int width, int height, Bitmap.Config config) {
+		Bitmap bitmap = take(width, height, config);
+		return (bitmap != null) ? bitmap : Bitmap.createBitmap(width, height, config);
+	}
+
+	/**
+	 * Gives a bitmap back to the pool, or recycles it if it cannot be reused.
+	 * Does nothing if bitmap is null.
+	 */
+	public synchronized void put(Bitmap bitmap) {
+		if (bitmap == null || bitmap.isRecycled()) return;
+		if (!bitmap.isMutable() || byteCount(bitmap) > mMaxBytes) {
+			bitmap.recycle();
+			return;
+		}
+		if (mBitmaps.contains(bitmap)) {
+			Log.w(TAG, "bitmap put twice");
+			return;
+		}
+		mBitmaps.add(bitmap);
+		mBytes += byteCount(bitmap);
+		while (mBytes > mMaxBytes) {
+			evict(0);
+		}
+	}
+
+	/** Recycles every bitmap in the pool. */
+	public synchronized void clear() {
+		for (Bitmap bitmap : mBitmaps) {
+			bitmap.recycle();
+		}
+		mBitmaps.clear();
+		mBytes = 0;
+	}
+
+	/**
+	 * Returns {@code source} transformed by {@code matrix}, drawn into a
+	 * pooled bitmap, like Bitmap.createBitmap(source, 0, 0, width, height,
+	 * matrix, filter). The source is left alone.
+	 */
+	public Bitmap transform(Bitmap source, Matrix matrix, boolean filter) {
+		RectF bounds = new RectF(0, 0, source.getWidth(), source.getHeight());
+		matrix.mapRect(bounds);
+		int width = Math.round(bounds.width());
+		int height = Math.round(bounds.height());
+		boolean rectStaysRect = matrix.rectStaysRect();
+		Bitmap.Config config = source.getConfig();
+		if (config == null || !rectStaysRect) {
+			// Corners are left transparent, so alpha is needed.
+			config = Bitmap.Config.ARGB_8888;
+		}
+
+		Bitmap result = get(width, height, config);
+		if (!rectStaysRect) {
+			result.eraseColor(0);
+		}
+		result.setDensity(source.getDensity());
+		Canvas canvas = new Canvas(result);
+		canvas.translate(-bounds.left, -bounds.top);
+		canvas.concat(matrix);
+		canvas.drawBitmap(source, 0, 0, filter ? FILTER_PAINT : null);
+		return result;
+	}
+
+	/**
+	 * Returns the width x height area of {@code source} at (x, y), copied into
+	 * a pooled bitmap, like Bitmap.createBitmap(source, x, y, width, height).
+	 */
+	public Bitmap crop(Bitmap source, int x, int y, int width, int height) {
+		Bitmap.Config config = source.getConfig();
+		if (config == null) config = Bitmap.Config.ARGB_8888;
+		Bitmap result = get(width, height, config);
+		result.setDensity(source.getDensity());
+		Canvas canvas = new Canvas(result);
+		canvas.drawBitmap(source, new Rect(x, y, x + width, y + height),
+				new Rect(0, 0, width, height), null);
+		return result;
+	}
+
+	/**
+	 * Decodes an image like BitmapFactory.decodeByteArray() with the given
+	 * sample size, into a pooled bitmap of the right size if the platform
+	 * can: API level 11 for images which are not sampled, 19 for all.
+	 */
+	public Bitmap decodeByteArray(byte[] data, int offset, int length, int sampleSize) {
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inSampleSize = sampleSize;
+		if (Build.VERSION.SDK_INT >= 0x00000013
+				|| (Build.VERSION.SDK_INT >= 0x0000000B && sampleSize <= 1)) {
+			return decodeReusing(data, offset, length, options);
+		}
+		return BitmapFactory.decodeByteArray(data, offset, length, options);
+	}
+
+	// Only called on API level 11 and up.
+	private Bitmap decodeReusing(byte[] data, int offset, int length,
+			BitmapFactory.Options options) {
+		options.inJustDecodeBounds = true;
+		BitmapFactory.decodeByteArray(data, offset, length, options);
+		options.inJustDecodeBounds = false;
+		options.inMutable = true;
+		if (options.outWidth <= 0 || options.outHeight <= 0) {
+			return BitmapFactory.decodeByteArray(data, offset, length, options);
+		}
+
+		Bitmap reuse = take(options.outWidth, options.outHeight,
+				Bitmap.Config.ARGB_8888);
+		options.inBitmap = reuse;
+		Bitmap result;
+		try {
+			result = BitmapFactory.decodeByteArray(data, offset, length, options);
+		} catch (IllegalArgumentException e) {
+			// The decoder could not use the bitmap after all.
+			Log.w(TAG, "could not decode into a pooled bitmap", e);
+			options.inBitmap = null;
+			result = BitmapFactory.decodeByteArray(data, offset, length, options);
+		}
+		if (reuse != null && result != reuse) {
+			put(reuse);
+		}
+		return result;
+	}
+
+	public int getMaxBytes() {
+		return mMaxBytes;
+	}
+
+	/** The bytes held by the bitmaps in the pool. */
+	public synchronized int getByteCount() {
+		return mBytes;
+	}
+
+	public synchronized int getHitCount() {
+		return mHits;
+	}
+
+	public synchronized int getMissCount() {
+		return mMisses;
+	}
+
+	/** The number of bitmaps recycled to stay under the byte budget. */
+	public synchronized int getEvictionCount() {
+		return mEvictions;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "BitmapPool(" + mBitmaps.size() + " bitmaps, " + mBytes + "/"
+				+ mMaxBytes + " bytes, hits=" + mHits + ", misses=" + mMisses
+				+ ", evictions=" + mEvictions + ")";
+	}
+
+	// Removes and returns the most recently put matching bitmap, or null.
+	private synchronized Bitmap take(int width, int height, Bitmap.Config config) {
+		for (int i = mBitmaps.size() - 1; i >= 0; i--) {
+			Bitmap bitmap = mBitmaps.get(i);
+			if (bitmap.getWidth() == width && bitmap.getHeight() == height
+					&& bitmap.getConfig() == config) {
+				mBitmaps.remove(i);
+				mBytes -= byteCount(bitmap);
+				mHits++;
+				return bitmap;
+			}
+		}
+		mMisses++;
+		return null;
+	}
+
+	// Must hold the lock.
+	private void evict(int index) {
+		Bitmap bitmap = mBitmaps.remove(index);
+		mBytes -= byteCount(bitmap);
+		mEvictions++;
+		bitmap.recycle();
+	}
+
+	private static int byteCount(Bitmap bitmap) {
+		return bitmap.getRowBytes() * bitmap.getHeight();
+	}
+}
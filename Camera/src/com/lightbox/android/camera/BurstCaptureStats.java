@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2012 Lightbox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightbox.android.camera;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Timing of one burst: the sustained rate and the latency of each shot, from
+ * the takePicture() call to its JPEG callback. Only used on the main thread.
+ */
+public class BurstCaptureStats {
+	/** Used to tag logs */
+	private static final String TAG = "BurstCaptureStats";
+
+	private final long mStartTime;
+	private long mRequestTime;
+	private long mLastPictureTime;
+	private int mCount;
+	private long mTotalLatency;
+	private long mMinLatency = Long.MAX_VALUE;
+	private long mMaxLatency;
+
+	public BurstCaptureStats() {
+		mStartTime = SystemClock.uptimeMillis();
+		mLastPictureTime = mStartTime;
+	}
+
+	/** Call right before takePicture(). */
+	public void onPictureRequested() {
+		mRequestTime = SystemClock.uptimeMillis();
+	}
+
+	/** Call from the JPEG callback. */
+	public void onPictureTaken() {
+		long now = SystemClock.uptimeMillis();
+		long latency = now - mRequestTime;
+		mCount++;
+		mTotalLatency += latency;
+		mMinLatency = Math.min(mMinLatency, latency);
+		mMaxLatency = Math.max(mMaxLatency, latency);
+		mLastPictureTime = now;
+		Log.v(TAG, "shot " + mCount + ": latency = " + latency + "ms");
+	}
+
+	public int getCount() {
+		return mCount;
+	}
+
+	/** Pictures per second, from the start of the burst to the last JPEG. */
+	public float getFramesPerSecond() {
+		long elapsed = mLastPictureTime - mStartTime;
+		if (mCount == 0 || elapsed <= 0) return 0f;
+		return mCount * 1000f / elapsed;
+	}
+
+	public long getAverageLatency() {
+		return mCount == 0 ? 0 : mTotalLatency / mCount;
+	}
+
+	public void log(String stopReason) {
+		Log.v(TAG, "burst stopped (" + stopReason + "): " + mCount + " shots, "
+				+ getFramesPerSecond() + " fps, latency avg/min/max = "
+				+ getAverageLatency() + "/"
+				+ (mCount == 0 ? 0 : mMinLatency) + "/" + mMaxLatency + "ms");
+	}
+}
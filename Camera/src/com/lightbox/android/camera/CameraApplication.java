@@ -54,11 +54,18 @@ public class CameraApplication extends Application {
 	@Override
 	public void onCreate() {
 		super.onCreate();
+		CameraCapabilityRegistry.instance().init(this);
 				
 		mOrientationEventListener = new MyOrientationEventListener(getApplicationContext());
 		mOrientationEventListener.enable();
 	}
 	
+	@Override
+	public void onLowMemory() {
+		super.onLowMemory();
+		BitmapPool.instance().clear();
+	}
+	
 	public void registerOrientationChangeListener(OrientationChangeListener listener) {
 		mOrientationChangeListeners.add(listener);
 	}
@@ -0,0 +1,343 @@
+/*
+ * Copyright (C) 2012 Lightbox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightbox.android.camera;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import android.hardware.Camera.Parameters;
+import android.hardware.Camera.Size;
+
+/**
+ * What one camera of the device can do: its facing and sensor orientation,
+ * and the supported sizes, modes, zoom and exposure range. Parsed once from
+ * the camera Parameters, kept by {@link CameraCapabilityRegistry} so later
+ * launches do not derive it again. Immutable.
+ *
+ * <p>Sizes are stored as {width0, height0, width1, height1, ...}. Lists of
+ * modes are null when the driver does not report them, like the
+ * Parameters.getSupportedXxx() methods.
+ */
+public class CameraCapabilities {
+	private static final String KEY_ZOOM_SUPPORTED = "zoom-supported";
+	private static final String KEY_SMOOTH_ZOOM_SUPPORTED = "smooth-zoom-supported";
+	private static final String KEY_MAX_ZOOM = "max-zoom";
+	private static final String KEY_ZOOM_RATIOS = "zoom-ratios";
+	private static final String TRUE = "true";
+
+	private final int mCameraId;
+	private final boolean mFrontFacing;
+	private final int mOrientation;
+	private final int[] mPreviewSizes;
+	private final int[] mPictureSizes;
+	private final List<String> mSceneModes;
+	private final List<String> mFlashModes;
+	private final List<String> mFocusModes;
+	private final List<String> mWhiteBalances;
+	private final List<String> mColorEffects;
+	private final boolean mZoomSupported;
+	private final boolean mSmoothZoomSupported;
+	private final int mMaxZoom;
+	private final int[] mZoomRatios;
+	private final int mMinExposureCompensation;
+	private final int mMaxExposureCompensation;
+	private final float mExposureCompensationStep;
+
+	private CameraCapabilities(int cameraId, boolean frontFacing, int orientation,
+			int[] previewSizes, int[] pictureSizes, List<String> sceneModes,
+			List<String> flashModes, List<String> focusModes,
+			List<String> whiteBalances, List<String> colorEffects,
+			boolean zoomSupported, boolean smoothZoomSupported, int maxZoom,
+			int[] zoomRatios, int minExposureCompensation,
+			int maxExposureCompensation, float exposureCompensationStep) {
+		mCameraId = cameraId;
+		mFrontFacing = frontFacing;
+		mOrientation = orientation;
+		mPreviewSizes = previewSizes;
+		mPictureSizes = pictureSizes;
+		mSceneModes = sceneModes;
+		mFlashModes = flashModes;
+		mFocusModes = focusModes;
+		mWhiteBalances = whiteBalances;
+		mColorEffects = colorEffects;
+		mZoomSupported = zoomSupported;
+		mSmoothZoomSupported = smoothZoomSupported;
+		mMaxZoom = maxZoom;
+		mZoomRatios = zoomRatios;
+		mMinExposureCompensation = minExposureCompensation;
+		mMaxExposureCompensation = maxExposureCompensation;
+		mExposureCompensationStep = exposureCompensationStep;
+	}
+
+	/**
+	 * Reads the capabilities of camera cameraId from its parameters.
+	 * @param orientation the orientation of the camera sensor, in degrees
+	 */
+	public static CameraCapabilities fromParameters(int cameraId,
+			boolean frontFacing, int orientation, Parameters parameters) {
+		return new CameraCapabilities(cameraId, frontFacing, orientation,
+				toArray(parameters.getSupportedPreviewSizes()),
+				toArray(parameters.getSupportedPictureSizes()),
+				copyOf(parameters.getSupportedSceneModes()),
+				copyOf(parameters.getSupportedFlashModes()),
+				copyOf(parameters.getSupportedFocusModes()),
+				copyOf(parameters.getSupportedWhiteBalance()),
+				copyOf(parameters.getSupportedColorEffects()),
+				TRUE.equals(parameters.get(KEY_ZOOM_SUPPORTED)),
+				TRUE.equals(parameters.get(KEY_SMOOTH_ZOOM_SUPPORTED)),
+				parseInt(parameters.get(KEY_MAX_ZOOM)),
+				parseZoomRatios(parameters.get(KEY_ZOOM_RATIOS)),
+				ParameterUtils.getMinExposureCompensation(parameters),
+				ParameterUtils.getMaxExposureCompensation(parameters),
+				ParameterUtils.getExposureCompensationStep(parameters));
+	}
+
+	/**
+	 * Returns these capabilities with the zoom of parameters, which depends
+	 * on the preview size, or this if it is the same.
+	 */
+	public CameraCapabilities withZoomOf(Parameters parameters) {
+		int maxZoom = parseInt(parameters.get(KEY_MAX_ZOOM));
+		int[] zoomRatios = parseZoomRatios(parameters.get(KEY_ZOOM_RATIOS));
+		if (maxZoom == mMaxZoom && Arrays.equals(zoomRatios, mZoomRatios)) {
+			return this;
+		}
+		return new CameraCapabilities(mCameraId, mFrontFacing, mOrientation,
+				mPreviewSizes, mPictureSizes, mSceneModes, mFlashModes,
+				mFocusModes, mWhiteBalances, mColorEffects, mZoomSupported,
+				mSmoothZoomSupported, maxZoom, zoomRatios,
+				mMinExposureCompensation, mMaxExposureCompensation,
+				mExposureCompensationStep);
+	}
+
+	public int getCameraId() {
+		return mCameraId;
+	}
+
+	public boolean isFrontFacing() {
+		return mFrontFacing;
+	}
+
+	public int getOrientation() {
+		return mOrientation;
+	}
+
+	/** The supported preview sizes, as width, height pairs. Do not modify. */
+	public int[] getPreviewSizes() {
+		return mPreviewSizes;
+	}
+
+	/** The supported picture sizes, as width, height pairs. Do not modify. */
+	public int[] getPictureSizes() {
+		return mPictureSizes;
+	}
+
+	/** The supported picture sizes as "WIDTHxHEIGHT", as in the preferences. */
+	public List<String> getPictureSizeStrings() {
+		ArrayList<String> list = new ArrayList<String>(mPictureSizes.length / 2);
+		for (int i = 0; i < mPictureSizes.length; i += 2) {
+			list.add(mPictureSizes[i] + "x" + mPictureSizes[i + 1]);
+		}
+		return list;
+	}
+
+	public List<String> getSupportedSceneModes() {
+		return mSceneModes;
+	}
+
+	public List<String> getSupportedFlashModes() {
+		return mFlashModes;
+	}
+
+	public List<String> getSupportedFocusModes() {
+		return mFocusModes;
+	}
+
+	public List<String> getSupportedWhiteBalance() {
+		return mWhiteBalances;
+	}
+
+	public List<String> getSupportedColorEffects() {
+		return mColorEffects;
+	}
+
+	/** Whether the driver can zoom; never before API level 8. */
+	public boolean isZoomSupported() {
+		return mZoomSupported && mMaxZoom > 0;
+	}
+
+	public boolean isSmoothZoomSupported() {
+		return mSmoothZoomSupported;
+	}
+
+	public int getMaxZoom() {
+		return mMaxZoom;
+	}
+
+	/**
+	 * The zoom ratio of each zoom value, times 100, or null if zoom is not
+	 * supported. Do not modify.
+	 */
+	public int[] getZoomRatios() {
+		return mZoomRatios;
+	}
+
+	public int getMinExposureCompensation() {
+		return mMinExposureCompensation;
+	}
+
+	public int getMaxExposureCompensation() {
+		return mMaxExposureCompensation;
+	}
+
+	public float getExposureCompensationStep() {
+		return mExposureCompensationStep;
+	}
+
+	void writeTo(DataOutputStream out) throws IOException {
+		out.writeInt(mCameraId);
+		out.writeBoolean(mFrontFacing);
+		out.writeInt(mOrientation);
+		writeInts(out, mPreviewSizes);
+		writeInts(out, mPictureSizes);
+		writeStrings(out, mSceneModes);
+		writeStrings(out, mFlashModes);
+		writeStrings(out, mFocusModes);
+		writeStrings(out, mWhiteBalances);
+		writeStrings(out, mColorEffects);
+		out.writeBoolean(mZoomSupported);
+		out.writeBoolean(mSmoothZoomSupported);
+		out.writeInt(mMaxZoom);
+		writeInts(out, mZoomRatios);
+		out.writeInt(mMinExposureCompensation);
+		out.writeInt(mMaxExposureCompensation);
+		out.writeFloat(mExposureCompensationStep);
+	}
+
+	static CameraCapabilities readFrom(DataInputStream in) throws IOException {
+		int cameraId = in.readInt();
+		boolean frontFacing = in.readBoolean();
+		int orientation = in.readInt();
+		int[] previewSizes = readInts(in);
+		int[] pictureSizes = readInts(in);
+		List<String> sceneModes = readStrings(in);
+		List<String> flashModes = readStrings(in);
+		List<String> focusModes = readStrings(in);
+		List<String> whiteBalances = readStrings(in);
+		List<String> colorEffects = readStrings(in);
+		boolean zoomSupported = in.readBoolean();
+		boolean smoothZoomSupported = in.readBoolean();
+		int maxZoom = in.readInt();
+		int[] zoomRatios = readInts(in);
+		int minExposureCompensation = in.readInt();
+		int maxExposureCompensation = in.readInt();
+		float exposureCompensationStep = in.readFloat();
+		return new CameraCapabilities(cameraId, frontFacing, orientation,
+				previewSizes == null ? new int[0] : previewSizes,
+				pictureSizes == null ? new int[0] : pictureSizes,
+				sceneModes, flashModes, focusModes, whiteBalances,
+				colorEffects, zoomSupported, smoothZoomSupported, maxZoom,
+				zoomRatios, minExposureCompensation, maxExposureCompensation,
+				exposureCompensationStep);
+	}
+
+	// Arrays and lists are written as their length, or -1 for null.
+	private static void writeInts(DataOutputStream out, int[] values)
+			throws IOException {
+		if (values == null) {
+			out.writeShort(-1);
+			return;
+		}
+		out.writeShort(values.length);
+		for (int value : values) {
+			out.writeInt(value);
+		}
+	}
+
+	private static int[] readInts(DataInputStream in) throws IOException {
+		int length = in.readShort();
+		if (length < 0) return null;
+		int[] values = new int[length];
+		for (int i = 0; i < length; i++) {
+			values[i] = in.readInt();
+		}
+		return values;
+	}
+
+	private static void writeStrings(DataOutputStream out, List<String> values)
+			throws IOException {
+		if (values == null) {
+			out.writeShort(-1);
+			return;
+		}
+		out.writeShort(values.size());
+		for (String value : values) {
+			out.writeUTF(value);
+		}
+	}
+
+	private static List<String> readStrings(DataInputStream in) throws IOException {
+		int length = in.readShort();
+		if (length < 0) return null;
+		ArrayList<String> values = new ArrayList<String>(length);
+		for (int i = 0; i < length; i++) {
+			values.add(in.readUTF());
+		}
+		return Collections.unmodifiableList(values);
+	}
+
+	private static int[] toArray(List<Size> sizes) {
+		if (sizes == null) return new int[0];
+		int[] array = new int[sizes.size() * 2];
+		for (int i = 0, n = sizes.size(); i < n; i++) {
+			Size size = sizes.get(i);
+			array[2 * i] = size.width;
+			array[2 * i + 1] = size.height;
+		}
+		return array;
+	}
+
+	private static List<String> copyOf(List<String> list) {
+		return (list == null) ? null
+				: Collections.unmodifiableList(new ArrayList<String>(list));
+	}
+
+	private static int parseInt(String value) {
+		if (value == null) return 0;
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	// "100,110,120,...", or null.
+	private static int[] parseZoomRatios(String value) {
+		if (value == null || value.length() == 0) return null;
+		String[] parts = value.split(",");
+		int[] ratios = new int[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			ratios[i] = parseInt(parts[i].trim());
+		}
+		return ratios;
+	}
+}
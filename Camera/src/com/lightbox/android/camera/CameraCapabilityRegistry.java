@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2012 Lightbox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightbox.android.camera;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+import android.util.SparseArray;
+
+/**
+ * The {@link CameraCapabilities} of each camera of the device, saved to a
+ * small file the first time a camera is opened and loaded on the next
+ * launches. The file is only valid for the build it was written on
+ * (Build.FINGERPRINT), since an update can change what the driver supports.
+ * It is read lazily, the first time a camera is looked up. Thread safe.
+ */
+public class CameraCapabilityRegistry {
+	/** Used to tag logs */
+	private static final String TAG = "CameraCapabilityRegistry";
+
+	private static final String FILE_NAME = "camera_capabilities";
+	private static final int FILE_VERSION = 1;
+
+	private static CameraCapabilityRegistry sInstance;
+
+	private File mFile;
+	private boolean mLoaded;
+	private final SparseArray<CameraCapabilities> mCapabilities =
+			new SparseArray<CameraCapabilities>();
+
+	public static synchronized CameraCapabilityRegistry instance() {
+		if (sInstance == null) {
+			sInstance = new CameraCapabilityRegistry();
+		}
+		return sInstance;
+	}
+
+	/**
+	 * Saves the registry in the files directory of context. Until this is
+	 * called, it is only kept in memory.
+	 */
+	public synchronized void init(Context context) {
+		mFile = new File(context.getFilesDir(), FILE_NAME);
+	}
+
+	/** The capabilities of camera cameraId, or null if they are not known. */
+	public synchronized CameraCapabilities get(int cameraId) {
+		load();
+		return mCapabilities.get(cameraId);
+	}
+
+	/** Records capabilities, and saves the registry if they are new. */
+	public synchronized void put(CameraCapabilities capabilities) {
+		load();
+		int cameraId = capabilities.getCameraId();
+		if (mCapabilities.get(cameraId) == capabilities) return;
+		mCapabilities.put(cameraId, capabilities);
+		save();
+	}
+
+	private void load() {
+		if (mLoaded || mFile == null) return;
+		mLoaded = true;
+		if (!mFile.exists()) return;
+
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(mFile), 4096));
+			if (in.readInt() != FILE_VERSION
+					|| !Build.FINGERPRINT.equals(in.readUTF())) {
+				Log.v(TAG, "discarding capabilities of another build");
+				return;
+			}
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				CameraCapabilities capabilities = CameraCapabilities.readFrom(in);
+				mCapabilities.put(capabilities.getCameraId(), capabilities);
+			}
+		} catch (IOException e) {
+			Log.w(TAG, "cannot read " + mFile, e);
+			mCapabilities.clear();
+		} finally {
+			MenuHelper.closeSilently(in);
+		}
+	}
+
+	private void save() {
+		if (mFile == null) return;
+		File temp = new File(mFile.getPath() + ".tmp");
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(temp), 4096));
+			out.writeInt(FILE_VERSION);
+			out.writeUTF(Build.FINGERPRINT);
+			out.writeInt(mCapabilities.size());
+			for (int i = 0, n = mCapabilities.size(); i < n; i++) {
+				mCapabilities.valueAt(i).writeTo(out);
+			}
+			out.close();
+			out = null;
+			if (!temp.renameTo(mFile)) {
+				Log.w(TAG, "cannot rename " + temp);
+			}
+		} catch (IOException e) {
+			Log.w(TAG, "cannot write " + temp, e);
+		} finally {
+			MenuHelper.closeSilently(out);
+		}
+	}
+}
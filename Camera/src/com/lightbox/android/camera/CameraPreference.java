@@ -18,15 +18,12 @@ package com.lightbox.android.camera;
 
 import android.content.Context;
 import android.content.SharedPreferences;
-import android.content.res.TypedArray;
-import android.util.AttributeSet;
 
 import com.lightbox.android.camera.ComboPreferences;
-import com.lightbox.android.camera.R;
 
 /**
- * The base class of all Preferences used in Camera. The preferences can be
- * loaded from XML resource by <code>PreferenceInflater</code>.
+ * The base class of all Preferences used in Camera. The preference tree is
+ * built by <code>CameraPreferenceTree</code>.
  */
 public abstract class CameraPreference {
 
@@ -34,12 +31,9 @@ public abstract class CameraPreference {
     private SharedPreferences mSharedPreferences;
     private final Context mContext;
 
-    public CameraPreference(Context context, AttributeSet attrs) {
+    public CameraPreference(Context context, String title) {
         mContext = context;
-        TypedArray a = context.obtainStyledAttributes(
-                attrs, R.styleable.CameraPreference, 0, 0);
-        mTitle = a.getString(R.styleable.CameraPreference_title);
-        a.recycle();
+        mTitle = title;
     }
 
     public String getTitle() {
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2012 Lightbox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightbox.android.camera;
+
+import android.content.Context;
+import android.content.res.Resources;
+
+/**
+ * Builds the preferences shown in the head-up display. This used to be
+ * inflated from an XML resource, parsing it and creating each node by
+ * reflection on every camera switch; the tree is small and fixed, so it is
+ * now built directly.
+ */
+public class CameraPreferenceTree {
+
+	private CameraPreferenceTree() {
+	}
+
+	/**
+	 * Returns a new, unfiltered tree; see
+	 * {@link CameraSettings#initPreference(PreferenceGroup)}.
+	 */
+	public static PreferenceGroup create(Context context) {
+		Resources res = context.getResources();
+
+		PreferenceGroup settings = new PreferenceGroup(context,
+				res.getString(R.string.pref_camera_settings_category));
+		settings.addChild(new ListPreference(context,
+				res.getString(R.string.pref_camera_focusmode_title),
+				CameraSettings.KEY_FOCUS_MODE,
+				res.getString(R.string.pref_camera_focusmode_default),
+				res.getTextArray(R.array.pref_camera_focusmode_entries),
+				res.getTextArray(R.array.pref_camera_focusmode_entryvalues)));
+		// The entries are built from the supported range.
+		settings.addChild(new ListPreference(context,
+				res.getString(R.string.pref_exposure_title),
+				CameraSettings.KEY_EXPOSURE,
+				res.getString(R.string.pref_exposure_default),
+				null, null));
+		settings.addChild(new ListPreference(context,
+				res.getString(R.string.pref_camera_scenemode_title),
+				CameraSettings.KEY_SCENE_MODE,
+				res.getString(R.string.pref_camera_scenemode_default),
+				res.getTextArray(R.array.pref_camera_scenemode_entries),
+				res.getTextArray(R.array.pref_camera_scenemode_entryvalues)));
+		settings.addChild(new IconListPreference(context,
+				res.getString(R.string.pref_camera_whitebalance_title),
+				CameraSettings.KEY_WHITE_BALANCE,
+				res.getString(R.string.pref_camera_whitebalance_default),
+				res.getTextArray(R.array.pref_camera_whitebalance_entries),
+				res.getTextArray(R.array.pref_camera_whitebalance_entryvalues),
+				IconListPreference.getIconIds(res, R.array.pref_camera_whitebalance_icons),
+				IconListPreference.getIconIds(res, R.array.whitebalance_icons)));
+
+		PreferenceGroup root = new PreferenceGroup(context, null);
+		root.addChild(settings);
+		return root;
+	}
+}
@@ -16,7 +16,6 @@
 
 package com.lightbox.android.camera;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import android.app.Activity;
@@ -73,13 +72,13 @@ public class CameraSettings {
     private static final String TAG = "CameraSettings";
 
     public final Context mContext;
-    final Parameters mParameters;
+    final CameraCapabilities mCapabilities;
     final CameraHolder mCameraHolder;
 
-    public CameraSettings(Activity activity, Parameters parameters,
+    public CameraSettings(Activity activity, CameraCapabilities capabilities,
     		CameraHolder cameraHolder) {
         mContext = activity;
-        mParameters = parameters;
+        mCapabilities = capabilities;
         mCameraHolder = cameraHolder;
     }
 
@@ -161,32 +160,32 @@ public class CameraSettings {
 
         // Filter out unsupported settings / options
         if (pictureSize != null) {
-            group.filterUnsupportedOptions(this, pictureSize, sizeListToStringList(
-                    mParameters.getSupportedPictureSizes()));
+            group.filterUnsupportedOptions(this, pictureSize,
+                    mCapabilities.getPictureSizeStrings());
         }
         if (whiteBalance != null) {
             group.filterUnsupportedOptions(this,
-                    whiteBalance, mParameters.getSupportedWhiteBalance());
+                    whiteBalance, mCapabilities.getSupportedWhiteBalance());
         }
         if (colorEffect != null) {
             group.filterUnsupportedOptions(this,
-                    colorEffect, mParameters.getSupportedColorEffects());
+                    colorEffect, mCapabilities.getSupportedColorEffects());
         }
         if (sceneMode != null) {
             group.filterUnsupportedOptions(this,
-                    sceneMode, mParameters.getSupportedSceneModes());
+                    sceneMode, mCapabilities.getSupportedSceneModes());
         }
         if (flashMode != null) {
             group.filterUnsupportedOptions(this,
-                    flashMode, mParameters.getSupportedFlashModes());
+                    flashMode, mCapabilities.getSupportedFlashModes());
         }
         if (focusMode != null) {
             group.filterUnsupportedOptions(this,
-                    focusMode, mParameters.getSupportedFocusModes());
+                    focusMode, mCapabilities.getSupportedFocusModes());
         }
         if (videoFlashMode != null) {
             group.filterUnsupportedOptions(this,
-                    videoFlashMode, mParameters.getSupportedFlashModes());
+                    videoFlashMode, mCapabilities.getSupportedFlashModes());
         }
         if (exposure != null) group.buildExposureCompensation(this, exposure);
         if (cameraId != null) group.buildCameraId(this, cameraId);
@@ -209,14 +208,6 @@ public class CameraSettings {
         return false;
     }
 
-    private static List<String> sizeListToStringList(List<Size> sizes) {
-        ArrayList<String> list = new ArrayList<String>();
-        for (Size size : sizes) {
-            list.add(String.format("%dx%d", size.width, size.height));
-        }
-        return list;
-    }
-
     public static void upgradeLocalPreferences(SharedPreferences pref) {
         int version;
         try {
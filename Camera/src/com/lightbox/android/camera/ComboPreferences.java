@@ -32,6 +32,7 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.Editor;
 import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
+import android.content.res.Resources;
 import android.hardware.Camera.Parameters;
 import android.os.Build;
 import android.preference.PreferenceManager;
@@ -41,12 +42,17 @@ public class ComboPreferences implements SharedPreferences, OnSharedPreferenceCh
     private SharedPreferences mPrefGlobal;  // global preferences
     private SharedPreferences mPrefLocal;  // per-camera preferences
     private CopyOnWriteArrayList<OnSharedPreferenceChangeListener> mListeners;
+    private final Resources mResources;
+    // Rebuilt whenever a preference changes; read without locking.
+    private volatile SettingsSnapshot mSnapshot;
     private static WeakHashMap<Context, ComboPreferences> sMap =
             new WeakHashMap<Context, ComboPreferences>();
 
     public ComboPreferences(Context context) {
         mPrefGlobal = PreferenceManager.getDefaultSharedPreferences(context);
         mPrefGlobal.registerOnSharedPreferenceChangeListener(this);
+        mResources = context.getResources();
+        mSnapshot = SettingsSnapshot.read(mPrefGlobal, null, mResources);
         synchronized (sMap) {
             sMap.put(context, this);
         }
@@ -67,6 +73,12 @@ public class ComboPreferences implements SharedPreferences, OnSharedPreferenceCh
         mPrefLocal = context.getSharedPreferences(
                 prefName, Context.MODE_PRIVATE);
         mPrefLocal.registerOnSharedPreferenceChangeListener(this);
+        mSnapshot = SettingsSnapshot.read(mPrefGlobal, mPrefLocal, mResources);
+    }
+
+    /** The current settings, for the capture and camera parameter code. */
+    public SettingsSnapshot getSnapshot() {
+        return mSnapshot;
     }
 
     public SharedPreferences getGlobal() {
@@ -82,11 +94,13 @@ public class ComboPreferences implements SharedPreferences, OnSharedPreferenceCh
     }
 
     public String getString(String key, String defValue) {
-        if (key.equals(CameraSettings.KEY_CAMERA_ID) || !mPrefLocal.contains(key)) {
+        if (key.equals(CameraSettings.KEY_CAMERA_ID)) {
             return mPrefGlobal.getString(key, defValue);
-        } else {
-            return mPrefLocal.getString(key, defValue);
         }
+        // A stored string is never null, so one lookup tells whether the
+        // local preferences have it.
+        String value = mPrefLocal.getString(key, null);
+        return (value != null) ? value : mPrefGlobal.getString(key, defValue);
     }
 
     public int getInt(String key, int defValue) {
@@ -238,6 +252,7 @@ public class ComboPreferences implements SharedPreferences, OnSharedPreferenceCh
 
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences,
             String key) {
+        mSnapshot = SettingsSnapshot.read(mPrefGlobal, mPrefLocal, mResources);
         for (OnSharedPreferenceChangeListener listener : mListeners) {
             listener.onSharedPreferenceChanged(this, key);
         }
@@ -268,15 +283,16 @@ public class ComboPreferences implements SharedPreferences, OnSharedPreferenceCh
 	public void updateSceneModeInHud(Camera camera) {
 	    // If scene mode is set, we cannot set flash mode, white balance, and
 	    // focus mode, instead, we read it from driver
-	    if (!Parameters.SCENE_MODE_AUTO.equals(camera.mSceneMode)) {
-	        camera.mHeadUpDisplay.overrideHudSettings(camera.mParameters.getFlashMode(),
-	                camera.mParameters.getWhiteBalance(), camera.mParameters.getFocusMode());
+	    ParameterValues values = camera.mParameterValues;
+	    if (!Parameters.SCENE_MODE_AUTO.equals(camera.mSceneMode) && values != null) {
+	        camera.mHeadUpDisplay.overrideHudSettings(values.getFlashMode(),
+	                values.getWhiteBalance(), values.getFocusMode());
 	    } else {
 	        camera.mHeadUpDisplay.overrideHudSettings(null, null, null);
 	    }
 	}
 
-	public void restorePreferences(HeadUpDisplay headUpDisplay, final Parameters param) {
+	public void restorePreferences(HeadUpDisplay headUpDisplay) {
 	    // Do synchronization in "reloadPreferences()"
 	
 	    OnSharedPreferenceChangeListener l =
@@ -285,12 +301,12 @@ public class ComboPreferences implements SharedPreferences, OnSharedPreferenceCh
 	    // change bunch of preferences. We can handle them with one
 	    // onSharedPreferencesChanged();
 	    unregisterOnSharedPreferenceChangeListener(l);
-	    Context context = headUpDisplay.getGLRootView().getContext();
 	    Editor editor = edit();
 	    editor.clear();
 	    editor.commit();
 	    CameraSettings.upgradeAllPreferences(this);
-	    CameraSettings.initialCameraPictureSize(context, param);
+	    // With the picture size preference cleared, the update which follows
+	    // picks the initial size on the camera thread.
 	    headUpDisplay.reloadPreferences();
 	    if (headUpDisplay.mListener != null) {
 	        headUpDisplay.mListener.onSharedPreferencesChanged();
@@ -322,7 +338,7 @@ public class ComboPreferences implements SharedPreferences, OnSharedPreferenceCh
 	            || camera.mFocusState == Camera.FOCUS_SUCCESS || camera.mFocusState == Camera.FOCUS_FAIL)) {
 	        Log.v(Camera.TAG, "Cancel autofocus.");
 	        camera.mHeadUpDisplay.mSharedPrefs.setEnabled(camera.mHeadUpDisplay, true);
-	        camera.mCameraDevice.cancelAutoFocus();
+	        camera.cancelAutoFocus();
 	    }
 	    if (camera.mFocusState != Camera.FOCUSING_SNAP_ON_FINISH) {
 	        camera.clearFocusState();
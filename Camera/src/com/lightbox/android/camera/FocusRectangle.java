@@ -60,8 +60,7 @@ public class FocusRectangle extends View {
 			return false;
 		}
 		
-	    String str = camera.mParameters.get(Camera.KEY_SMOOTH_ZOOM_SUPPORTED);
-	    return (str != null && Camera.TRUE.equals(str));
+	    return camera.mCapabilities.isSmoothZoomSupported();
 	}
 
 	public void setupCaptureParams(Camera camera) {
@@ -74,25 +73,27 @@ public class FocusRectangle extends View {
 
 	public Bitmap loadPreviewBitmap(Camera camera, byte[] jpegData, int degree) {
 		//TODO use preview, so rotation is always correct?
-		Options opts = new Options();
-		opts.inJustDecodeBounds = true;
-		int sampleSize = 1;
-		opts.inSampleSize = sampleSize;
-		BitmapFactory.decodeByteArray(jpegData, 0, jpegData.length, opts);
-		int width = opts.outWidth;
-		int height = opts.outHeight;
+		// The size comes from the SOF marker, which saves a bounds decode.
+		JpegHeader header = JpegHeader.parse(jpegData);
+		int width = header.getWidth();
+		int height = header.getHeight();
+		if (width <= 0 || height <= 0) {
+			Options opts = new Options();
+			opts.inJustDecodeBounds = true;
+			BitmapFactory.decodeByteArray(jpegData, 0, jpegData.length, opts);
+			width = opts.outWidth;
+			height = opts.outHeight;
+		}
 		
 		int surfaceWidth = camera.mSurfaceView.getWidth();
 		int surfaceHeight = camera.mSurfaceView.getHeight();
 		
+		int sampleSize = 1;
 		while (width/sampleSize > surfaceWidth && height/sampleSize > surfaceHeight) {
 			sampleSize++;
 		}
 		
-		opts.inSampleSize = sampleSize;
-		opts.inJustDecodeBounds = false;
-		
-		return Util.rotate(BitmapFactory.decodeByteArray(jpegData, 0, jpegData.length, opts), degree);
+		return Util.rotate(Util.makeJpegThumbnail(jpegData, header, sampleSize), degree);
 	}
 
 	public void detachHeadUpDisplay(Camera camera) {
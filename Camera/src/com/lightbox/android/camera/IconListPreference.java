@@ -19,11 +19,9 @@ package com.lightbox.android.camera;
 import android.content.Context;
 import android.content.res.Resources;
 import android.content.res.TypedArray;
-import android.util.AttributeSet;
 
 import com.lightbox.android.camera.IntArray;
 import com.lightbox.android.camera.ListPreference;
-import com.lightbox.android.camera.R;
 
 import java.util.List;
 
@@ -33,16 +31,12 @@ public class IconListPreference extends ListPreference {
     private int mIconIds[];
     private int mLargeIconIds[];
 
-    public IconListPreference(Context context, AttributeSet attrs) {
-        super(context, attrs);
-        TypedArray a = context.obtainStyledAttributes(
-                attrs, R.styleable.IconListPreference, 0, 0);
-        Resources res = context.getResources();
-        mIconIds = getIconIds(res, a.getResourceId(
-                R.styleable.IconListPreference_icons, 0));
-        mLargeIconIds = getIconIds(res, a.getResourceId(
-                R.styleable.IconListPreference_largeIcons, 0));
-        a.recycle();
+    public IconListPreference(Context context, String title, String key,
+            String defaultValue, CharSequence[] entries,
+            CharSequence[] entryValues, int[] iconIds, int[] largeIconIds) {
+        super(context, title, key, defaultValue, entries, entryValues);
+        mIconIds = iconIds;
+        mLargeIconIds = largeIconIds;
     }
 
     public int[] getLargeIconIds() {
@@ -61,7 +55,11 @@ public class IconListPreference extends ListPreference {
         mIconIds = iconIds;
     }
 
-    private int[] getIconIds(Resources res, int iconsRes) {
+    /**
+     * Reads the drawable ids of an array resource, or returns null if
+     * iconsRes is 0.
+     */
+    public static int[] getIconIds(Resources res, int iconsRes) {
         if (iconsRes == 0) return null;
         TypedArray array = res.obtainTypedArray(iconsRes);
         int n = array.length();
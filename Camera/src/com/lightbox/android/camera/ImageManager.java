@@ -32,6 +32,7 @@ import android.graphics.Bitmap.CompressFormat;
 import android.location.Location;
 import android.media.ExifInterface;
 import android.net.Uri;
+import android.os.Build;
 import android.os.Environment;
 import android.os.Parcel;
 import android.os.Parcelable;
@@ -58,6 +59,10 @@ public class ImageManager {
     private static final Uri VIDEO_STORAGE_URI =
             Uri.parse("content://media/external/video/media");
 
+    // MediaStore.MediaColumns.WIDTH and HEIGHT, which need API level 16.
+    private static final String COLUMN_WIDTH = "width";
+    private static final String COLUMN_HEIGHT = "height";
+
     private ImageManager() {
     }
 
@@ -165,8 +170,46 @@ public class ImageManager {
     public static Uri addImage(ContentResolver cr, String title, long dateTaken,
             Location location, String directory, String filename,
             Bitmap source, byte[] jpegData, int[] degree) {
+        return addImage(cr, title, dateTaken, location, directory, filename,
+                source, jpegData, -1, degree);
+    }
+
+    //
+    // Same as above, but if orientation is not -1 it is stored as the
+    // orientation of a jpeg byte array instead of reading it from the EXIF
+    // header. Used for jpegs encoded from preview frames, which have none.
+    //
+    public static Uri addImage(ContentResolver cr, String title, long dateTaken,
+            Location location, String directory, String filename,
+            Bitmap source, byte[] jpegData, int orientation, int[] degree) {
+        int width = 0;
+        int height = 0;
+        if (source != null) {
+            width = source.getWidth();
+            height = source.getHeight();
+        } else {
+            JpegHeader header = JpegHeader.parse(jpegData);
+            if (orientation == -1) orientation = header.getOrientation();
+            width = header.getWidth();
+            height = header.getHeight();
+        }
+
         // We should store image data earlier than insert it to ContentProvider,
         // otherwise we may not be able to generate thumbnail in time.
+        if (!writeImage(directory, filename, source, jpegData, orientation,
+                degree)) {
+            return null;
+        }
+        return insertImage(cr, title, dateTaken, location, directory, filename,
+                degree[0], width, height);
+    }
+
+    //
+    // The two halves of addImage(), for callers which time them separately.
+    // writeImage() stores the picture and returns false if it could not.
+    //
+    public static boolean writeImage(String directory, String filename,
+            Bitmap source, byte[] jpegData, int orientation, int[] degree) {
         OutputStream outputStream = null;
         String filePath = directory + "/" + filename;
         try {
@@ -179,17 +222,31 @@ public class ImageManager {
                 degree[0] = 0;
             } else {
                 outputStream.write(jpegData);
-                degree[0] = getExifOrientation(filePath);
+                // The header is parsed from memory rather than reading the
+                // file back with ExifInterface.
+                degree[0] = (orientation != -1)
+                        ? orientation
+                        : JpegHeader.parse(jpegData).getOrientation();
             }
         } catch (FileNotFoundException ex) {
             Log.w(TAG, ex);
-            return null;
+            return false;
         } catch (IOException ex) {
             Log.w(TAG, ex);
-            return null;
+            return false;
         } finally {
             Util.closeSilently(outputStream);
         }
+        return true;
+    }
+
+    //
+    // width and height are those of the stored image, or 0 if unknown.
+    //
+    public static Uri insertImage(ContentResolver cr, String title,
+            long dateTaken, Location location, String directory,
+            String filename, int degree, int width, int height) {
+        String filePath = directory + "/" + filename;
 
         // Read back the compressed file size.
         long size = new File(directory, filename).length();
@@ -203,10 +260,17 @@ public class ImageManager {
         values.put(Images.Media.DISPLAY_NAME, filename);
         values.put(Images.Media.DATE_TAKEN, dateTaken);
         values.put(Images.Media.MIME_TYPE, "image/jpeg");
-        values.put(Images.Media.ORIENTATION, degree[0]);
+        values.put(Images.Media.ORIENTATION, degree);
         values.put(Images.Media.DATA, filePath);
         values.put(Images.Media.SIZE, size);
 
+        // The width and height columns are only public from API level 16;
+        // older media providers may not have them.
+        if (Build.VERSION.SDK_INT >= 0x00000010 && width > 0 && height > 0) {
+            values.put(COLUMN_WIDTH, width);
+            values.put(COLUMN_HEIGHT, height);
+        }
+
         if (location != null) {
             values.put(Images.Media.LATITUDE, location.getLatitude());
             values.put(Images.Media.LONGITUDE, location.getLongitude());
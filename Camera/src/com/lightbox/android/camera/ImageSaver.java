@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2012 Lightbox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightbox.android.camera;
+
+import java.util.ArrayList;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.location.Location;
+import android.net.Uri;
+import android.os.Handler;
+import android.util.Log;
+
+import com.lightbox.android.camera.util.CaptureTracer;
+
+/**
+ * Writes captured JPEGs to storage and the media store on a worker thread, so
+ * the JPEG callback can return (and the preview restart) without waiting for
+ * the file system.
+ *
+ * <p>The queue is bounded by {@link #QUEUE_LIMIT}. The owner is told through
+ * {@link Listener#onQueueFullChanged(boolean)} when the queue fills up or
+ * drains, and is expected to stop accepting shutter presses while it is full.
+ * All listener callbacks run on the thread that created the saver.
+ */
+public class ImageSaver extends Thread {
+    private static final String TAG = "ImageSaver";
+
+    // The number of images which can be waiting to be saved, including the
+    // one currently being written.
+    public static final int QUEUE_LIMIT = 3;
+
+    // The sample size used to decode the thumbnail for the review button,
+    // when the embedded EXIF thumbnail cannot be used.
+    private static final int THUMBNAIL_SAMPLE_SIZE = 16;
+
+    public interface Listener {
+        /**
+         * Called when an image has been written. {@code uri} is null if the
+         * image could not be saved. {@code thumbnail} is only set if it was
+         * requested in {@link ImageSaver#addImage}.
+         */
+        public void onImageSaved(Uri uri, Bitmap thumbnail);
+
+        /** Called when the queue becomes full or has a free slot again. */
+        public void onQueueFullChanged(boolean full);
+    }
+
+    private static class SaveRequest {
+        byte[] data;
+        String title;
+        long dateTaken;
+        Location location;
+        boolean makeThumbnail;
+        int orientation;
+        int traceShot;
+
+        // Results, set by the worker thread.
+        Uri uri;
+        Bitmap thumbnail;
+    }
+
+    private final ContentResolver mResolver;
+    private final Listener mListener;
+    private final Handler mHandler;
+
+    // Guarded by "this". The request being saved stays at the head of
+    // mQueue until it is done, so it counts against QUEUE_LIMIT.
+    private final ArrayList<SaveRequest> mQueue = new ArrayList<SaveRequest>();
+    private final ArrayList<SaveRequest> mDone = new ArrayList<SaveRequest>();
+    private boolean mStop;
+
+    // Only accessed on the owner thread.
+    private boolean mFull;
+
+    private final Runnable mDeliverResults = new Runnable() {
+        public void run() {
+            deliverResults();
+        }
+    };
+
+    public ImageSaver(ContentResolver resolver, Listener listener) {
+        super(TAG);
+        mResolver = resolver;
+        mListener = listener;
+        mHandler = new Handler();
+        start();
+    }
+
+    public synchronized boolean isFull() {
+        return mQueue.size() >= QUEUE_LIMIT;
+    }
+
+    public synchronized int getPendingCount() {
+        return mQueue.size();
+    }
+
+    /**
+     * Queues a JPEG to be saved. The caller is expected to check
+     * {@link #isFull()} before taking a picture; if a JPEG arrives while the
+     * queue is full anyway, this blocks until a slot is free rather than
+     * dropping the picture.
+     */
+    public void addImage(byte[] data, String title, long dateTaken,
+            Location location, boolean makeThumbnail) {
+        addImage(data, title, dateTaken, location, makeThumbnail, -1);
+    }
+
+    /**
+     * Same as above, for a JPEG without an EXIF orientation. If
+     * {@code orientation} is not -1 it is stored in the media store and used
+     * for the thumbnail.
+     */
+    public void addImage(byte[] data, String title, long dateTaken,
+            Location location, boolean makeThumbnail, int orientation) {
+        addImage(data, title, dateTaken, location, makeThumbnail, orientation,
+                CaptureTracer.NO_SHOT);
+    }
+
+    /**
+     * Same as above. The saving stages are recorded for {@code traceShot},
+     * which is ended once the listener has been told.
+     */
+    public void addImage(byte[] data, String title, long dateTaken,
+            Location location, boolean makeThumbnail, int orientation,
+            int traceShot) {
+        SaveRequest r = new SaveRequest();
+        r.data = data;
+        r.title = title;
+        r.dateTaken = dateTaken;
+        r.location = location;
+        r.makeThumbnail = makeThumbnail;
+        r.orientation = orientation;
+        r.traceShot = traceShot;
+        synchronized (this) {
+            while (mQueue.size() >= QUEUE_LIMIT) {
+                Log.w(TAG, "save queue full, waiting");
+                try {
+                    wait();
+                } catch (InterruptedException ex) {
+                    // ignore.
+                }
+            }
+            mQueue.add(r);
+            notifyAll();  // Tell the worker there is new work.
+        }
+        updateFullState();
+    }
+
+    /**
+     * Waits until every queued image has been saved, delivers the pending
+     * results and stops the worker thread. Must be called on the owner
+     * thread; the saver cannot be used afterwards.
+     */
+    public void finish() {
+        synchronized (this) {
+            mStop = true;
+            notifyAll();
+        }
+        try {
+            join();
+        } catch (InterruptedException ex) {
+            // ignore.
+        }
+        mHandler.removeCallbacks(mDeliverResults);
+        deliverResults();
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            SaveRequest r;
+            synchronized (this) {
+                if (mQueue.isEmpty()) {
+                    if (mStop) break;
+                    try {
+                        wait();
+                    } catch (InterruptedException ex) {
+                        // ignore.
+                    }
+                    continue;
+                }
+                r = mQueue.get(0);
+            }
+            store(r);
+            synchronized (this) {
+                mQueue.remove(0);
+                mDone.add(r);
+                notifyAll();  // addImage() may be waiting for a free slot.
+            }
+            mHandler.post(mDeliverResults);
+        }
+    }
+
+    private void store(SaveRequest r) {
+        try {
+            int[] degree = new int[1];
+            String directory = ImageManager.CAMERA_IMAGE_BUCKET_NAME;
+            String filename = r.title + ".jpg";
+            JpegHeader header = JpegHeader.parse(r.data);
+            int orientation = (r.orientation != -1)
+                    ? r.orientation
+                    : header.getOrientation();
+            if (ImageManager.writeImage(directory, filename, null, r.data,
+                    orientation, degree)) {
+                CaptureTracer.record(r.traceShot, CaptureTracer.STAGE_FILE_WRITTEN);
+                r.uri = ImageManager.insertImage(mResolver, r.title,
+                        r.dateTaken, r.location, directory, filename, degree[0],
+                        header.getWidth(), header.getHeight());
+                CaptureTracer.record(r.traceShot, CaptureTracer.STAGE_INSERTED);
+            }
+            if (r.makeThumbnail && r.uri != null) {
+                Bitmap thumb = Util.makeJpegThumbnail(
+                        r.data, header, THUMBNAIL_SAMPLE_SIZE);
+                r.thumbnail = Util.rotate(thumb, degree[0]);
+            }
+        } catch (Exception ex) {
+            Log.e(TAG, "Exception while saving image.", ex);
+        }
+        // Let the JPEG buffer go as soon as it is on disk.
+        r.data = null;
+    }
+
+    private void deliverResults() {
+        SaveRequest[] done;
+        synchronized (this) {
+            done = mDone.toArray(new SaveRequest[mDone.size()]);
+            mDone.clear();
+        }
+        for (SaveRequest r : done) {
+            mListener.onImageSaved(r.uri, r.thumbnail);
+            CaptureTracer.record(r.traceShot, CaptureTracer.STAGE_THUMBNAIL);
+            CaptureTracer.endShot(r.traceShot);
+        }
+        updateFullState();
+    }
+
+    private void updateFullState() {
+        boolean full = isFull();
+        if (mFull != full) {
+            mFull = full;
+            mListener.onQueueFullChanged(full);
+        }
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2012 Lightbox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightbox.android.camera;
+
+/**
+ * The parts of a JPEG header the camera needs, read in one pass over the
+ * in-memory data: the EXIF orientation, date and embedded thumbnail, and the
+ * image size from the SOF marker. Parsing stops at the start of the scan, so
+ * the compressed image data is never touched.
+ *
+ * <p>Malformed or truncated data never throws; whatever could not be found is
+ * left at its default. This class has no Android dependencies.
+ */
+public class JpegHeader {
+	private static final int MARKER_SOI = 0xD8;
+	private static final int MARKER_EOI = 0xD9;
+	private static final int MARKER_SOS = 0xDA;
+	private static final int MARKER_APP1 = 0xE1;
+
+	private static final int TAG_ORIENTATION = 0x0112;
+	private static final int TAG_DATE_TIME = 0x0132;
+	private static final int TAG_EXIF_IFD = 0x8769;
+	private static final int TAG_DATE_TIME_ORIGINAL = 0x9003;
+	private static final int TAG_THUMBNAIL_OFFSET = 0x0201;
+	private static final int TAG_THUMBNAIL_LENGTH = 0x0202;
+
+	private static final int TYPE_SHORT = 3;
+	private static final int TYPE_LONG = 4;
+
+	// IFDs claiming more entries than this are treated as corrupt.
+	private static final int MAX_IFD_ENTRIES = 512;
+
+	// Which IFD parseIfd() is reading. The thumbnail tags are only valid in
+	// IFD1, the others only in IFD0 and its EXIF sub-IFD.
+	private static final int IFD_0 = 0;
+	private static final int IFD_EXIF = 1;
+	private static final int IFD_1 = 2;
+
+	private int mOrientation;
+	private int mWidth;
+	private int mHeight;
+	private int mThumbnailOffset = -1;
+	private int mThumbnailLength;
+	private String mDateTime;
+
+	private JpegHeader() {
+	}
+
+	/** Parses the header of {@code data}, which holds a whole JPEG file. */
+	public static JpegHeader parse(byte[] data) {
+		JpegHeader header = new JpegHeader();
+		header.parseMarkers(data);
+		return header;
+	}
+
+	/** The rotation in degrees (0, 90, 180 or 270) given by the EXIF orientation. */
+	public int getOrientation() {
+		return mOrientation;
+	}
+
+	/** The image width from the SOF marker, or 0 if there was none. */
+	public int getWidth() {
+		return mWidth;
+	}
+
+	/** The image height from the SOF marker, or 0 if there was none. */
+	public int getHeight() {
+		return mHeight;
+	}
+
+	public boolean hasThumbnail() {
+		return mThumbnailOffset >= 0 && mThumbnailLength > 0;
+	}
+
+	/** The offset of the embedded JPEG thumbnail in the data, or -1. */
+	public int getThumbnailOffset() {
+		return mThumbnailOffset;
+	}
+
+	public int getThumbnailLength() {
+		return mThumbnailLength;
+	}
+
+	/**
+	 * The EXIF date the picture was taken, as "yyyy:MM:dd HH:mm:ss", or null.
+	 * DateTimeOriginal is preferred over DateTime.
+	 */
+	public String getDateTime() {
+		return mDateTime;
+	}
+
+	private void parseMarkers(byte[] data) {
+		int length = data.length;
+		if (length < 4 || u8(data, 0) != 0xFF || u8(data, 1) != MARKER_SOI) {
+			return;
+		}
+		int pos = 2;
+		while (pos + 4 <= length) {
+			if (u8(data, pos) != 0xFF) return;
+			int marker = u8(data, pos + 1);
+			if (marker == 0xFF) {
+				// Fill byte.
+				pos++;
+				continue;
+			}
+			if (marker == MARKER_SOS || marker == MARKER_EOI) return;
+			int segmentLength = u16(data, pos + 2, false);
+			int segment = pos + 4;
+			int end = pos + 2 + segmentLength;
+			if (segmentLength < 2 || end > length) return;
+
+			if (marker == MARKER_APP1) {
+				parseApp1(data, segment, end);
+			} else if (isStartOfFrame(marker) && segment + 5 <= end) {
+				mHeight = u16(data, segment + 1, false);
+				mWidth = u16(data, segment + 3, false);
+			}
+			pos = end;
+		}
+	}
+
+	// SOF0-SOF15, except DHT (C4), JPG (C8) and DAC (CC).
+	private static boolean isStartOfFrame(int marker) {
+		return marker >= 0xC0 && marker <= 0xCF
+				&& marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+	}
+
+	private void parseApp1(byte[] data, int start, int end) {
+		// "Exif\0\0" followed by a TIFF header.
+		if (end - start < 14
+				|| data[start] != 'E' || data[start + 1] != 'x'
+				|| data[start + 2] != 'i' || data[start + 3] != 'f'
+				|| data[start + 4] != 0 || data[start + 5] != 0) {
+			return;
+		}
+		int tiff = start + 6;
+		boolean littleEndian;
+		if (data[tiff] == 'I' && data[tiff + 1] == 'I') {
+			littleEndian = true;
+		} else if (data[tiff] == 'M' && data[tiff + 1] == 'M') {
+			littleEndian = false;
+		} else {
+			return;
+		}
+		if (u16(data, tiff + 2, littleEndian) != 42) return;
+
+		int ifd0 = offsetOf(tiff, u32(data, tiff + 4, littleEndian));
+		int ifd1 = parseIfd(data, tiff, end, ifd0, littleEndian, IFD_0);
+		if (ifd1 > tiff) {
+			parseIfd(data, tiff, end, ifd1, littleEndian, IFD_1);
+		}
+	}
+
+	// Reads the tags we want from the IFD at ifd, which is of the given kind.
+	// Returns the absolute offset of the next IFD, or -1.
+	private int parseIfd(byte[] data, int tiff, int end, int ifd,
+			boolean littleEndian, int kind) {
+		if (ifd < tiff || ifd + 2 > end) return -1;
+		int count = u16(data, ifd, littleEndian);
+		if (count > MAX_IFD_ENTRIES || ifd + 2 + count * 12 + 4 > end) return -1;
+
+		for (int i = 0; i < count; i++) {
+			int entry = ifd + 2 + i * 12;
+			int tag = u16(data, entry, littleEndian);
+			int type = u16(data, entry + 2, littleEndian);
+			int components = (int) u32(data, entry + 4, littleEndian);
+			int value = entry + 8;
+			if (kind == IFD_1) {
+				if (tag == TAG_THUMBNAIL_OFFSET) {
+					mThumbnailOffset = offsetOf(tiff, readUnsigned(data, value, type, littleEndian));
+				} else if (tag == TAG_THUMBNAIL_LENGTH) {
+					mThumbnailLength = (int) readUnsigned(data, value, type, littleEndian);
+				}
+				continue;
+			}
+			switch (tag) {
+				case TAG_ORIENTATION:
+					if (type == TYPE_SHORT) {
+						mOrientation = degreesOf(u16(data, value, littleEndian));
+					}
+					break;
+				case TAG_DATE_TIME:
+					if (mDateTime == null) {
+						mDateTime = readAscii(data, tiff, end, value, components, littleEndian);
+					}
+					break;
+				case TAG_EXIF_IFD:
+					if (kind == IFD_0) {
+						parseIfd(data, tiff, end,
+								offsetOf(tiff, readUnsigned(data, value, type, littleEndian)),
+								littleEndian, IFD_EXIF);
+					}
+					break;
+				case TAG_DATE_TIME_ORIGINAL: {
+					String original = readAscii(data, tiff, end, value, components, littleEndian);
+					if (original != null) mDateTime = original;
+					break;
+				}
+			}
+		}
+		if (mThumbnailOffset >= 0
+				&& (mThumbnailLength < 0
+						|| (long) mThumbnailOffset + mThumbnailLength > end)) {
+			// Points outside the EXIF segment.
+			mThumbnailOffset = -1;
+			mThumbnailLength = 0;
+		}
+
+		long next = u32(data, ifd + 2 + count * 12, littleEndian);
+		return next == 0 ? -1 : offsetOf(tiff, next);
+	}
+
+	// Turns an offset from the TIFF header into an index in the data, or -1
+	// if it cannot be one.
+	private static int offsetOf(int tiff, long offset) {
+		long pos = tiff + offset;
+		return (pos > Integer.MAX_VALUE) ? -1 : (int) pos;
+	}
+
+	private static long readUnsigned(byte[] data, int pos, int type,
+			boolean littleEndian) {
+		if (type == TYPE_SHORT) return u16(data, pos, littleEndian);
+		if (type == TYPE_LONG) return u32(data, pos, littleEndian);
+		return 0;
+	}
+
+	// ASCII values longer than 4 bytes are stored at an offset.
+	private static String readAscii(byte[] data, int tiff, int end, int value,
+			int components, boolean littleEndian) {
+		int pos = (components <= 4)
+				? value
+				: offsetOf(tiff, u32(data, value, littleEndian));
+		if (components <= 0 || pos < tiff || (long) pos + components > end) {
+			return null;
+		}
+		int length = 0;
+		while (length < components && data[pos + length] != 0) {
+			length++;
+		}
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			chars[i] = (char) (data[pos + i] & 0xFF);
+		}
+		return new String(chars);
+	}
+
+	// We only recognise a subset of orientation tag values, like
+	// ImageManager.getExifOrientation().
+	private static int degreesOf(int orientation) {
+		switch (orientation) {
+			case 3: return 180;
+			case 6: return 90;
+			case 8: return 270;
+			default: return 0;
+		}
+	}
+
+	private static int u8(byte[] data, int pos) {
+		return data[pos] & 0xFF;
+	}
+
+	private static int u16(byte[] data, int pos, boolean littleEndian) {
+		if (pos < 0 || pos + 2 > data.length) return 0;
+		int a = data[pos] & 0xFF;
+		int b = data[pos + 1] & 0xFF;
+		return littleEndian ? (b << 8) | a : (a << 8) | b;
+	}
+
+	private static long u32(byte[] data, int pos, boolean littleEndian) {
+		if (pos < 0 || pos + 4 > data.length) return 0;
+		long a = data[pos] & 0xFF;
+		long b = data[pos + 1] & 0xFF;
+		long c = data[pos + 2] & 0xFF;
+		long d = data[pos + 3] & 0xFF;
+		return littleEndian
+				? (d << 24) | (c << 16) | (b << 8) | a
+				: (a << 24) | (b << 16) | (c << 8) | d;
+	}
+}
@@ -18,12 +18,9 @@ package com.lightbox.android.camera;
 
 import android.content.Context;
 import android.content.SharedPreferences;
-import android.content.res.TypedArray;
-import android.util.AttributeSet;
 
 import com.lightbox.android.camera.CameraPreference;
 import com.lightbox.android.camera.Util;
-import com.lightbox.android.camera.R;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -42,20 +39,14 @@ public class ListPreference extends CameraPreference {
     private CharSequence[] mEntryValues;
     private boolean mLoaded = false;
 
-    public ListPreference(Context context, AttributeSet attrs) {
-        super(context, attrs);
-
-        TypedArray a = context.obtainStyledAttributes(
-                attrs, R.styleable.ListPreference, 0, 0);
-
-        mKey = Util.checkNotNull(
-                a.getString(R.styleable.ListPreference_key));
-        mDefaultValue = a.getString(R.styleable.ListPreference_defaultValue);
-
-        setEntries(a.getTextArray(R.styleable.ListPreference_entries));
-        setEntryValues(a.getTextArray(
-                R.styleable.ListPreference_entryValues));
-        a.recycle();
+    public ListPreference(Context context, String title, String key,
+            String defaultValue, CharSequence[] entries,
+            CharSequence[] entryValues) {
+        super(context, title);
+        mKey = Util.checkNotNull(key);
+        mDefaultValue = defaultValue;
+        setEntries(entries);
+        setEntryValues(entryValues);
     }
 
     public String getKey() {
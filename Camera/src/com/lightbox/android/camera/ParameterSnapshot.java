@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2012 Lightbox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightbox.android.camera;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import android.hardware.Camera.Parameters;
+import android.util.Log;
+
+/**
+ * The parameters of an open camera, kept between updates so they are not read
+ * back from the driver every time. Every getParameters() and setParameters()
+ * flattens or parses the whole parameter string across the HAL boundary, so
+ * this pushes only when something changed and reads back only when asked to,
+ * as after a scene mode change.
+ *
+ * <p>Change the Parameters returned by {@link #getParameters()}, then call
+ * {@link #commit()}. The keys which differ from what the driver was last told
+ * are dirty. The number of HAL calls is counted per update, between
+ * {@link #beginUpdate()} and {@link #endUpdate(String)}. Only used on the
+ * camera thread, which owns the device; other threads read the copy made by
+ * {@link #getValues()}.
+ */
+public class ParameterSnapshot {
+	/** Used to tag logs */
+	private static final String TAG = "ParameterSnapshot";
+
+	public static final String KEY_ZOOM = "zoom";
+
+	private final android.hardware.Camera mDevice;
+	private Parameters mParameters;
+	// What the driver holds, as far as we know.
+	private Map<String, String> mDeviceState;
+	// Made from mDeviceState when first asked for after it changed.
+	private ParameterValues mValues;
+
+	private int mGetCount;
+	private int mSetCount;
+	private int mUpdateGetCount;
+	private int mUpdateSetCount;
+
+	/**
+	 * @param parameters the parameters just read from device, which become
+	 *            the working copy, or null to read them when first needed
+	 */
+	public ParameterSnapshot(android.hardware.Camera device, Parameters parameters) {
+		mDevice = device;
+		if (parameters != null) {
+			mParameters = parameters;
+			mDeviceState = parse(parameters.flatten());
+		}
+	}
+
+	/** The working copy of the parameters. */
+	public Parameters getParameters() {
+		if (mParameters == null) {
+			read();
+		}
+		return mParameters;
+	}
+
+	/** The keys changed in the working copy since it was last pushed or read. */
+	public Set<String> getDirtyKeys() {
+		if (mParameters == null) return new TreeSet<String>();
+		return diff(mDeviceState, parse(mParameters.flatten()));
+	}
+
+	/**
+	 * Pushes the working copy to the driver if any key is dirty. Returns
+	 * whether it did. Throws IllegalArgumentException like setParameters()
+	 * if the driver refuses them; see {@link #revert()}.
+	 */
+	public boolean commit() {
+		if (mParameters == null) return false;
+		Map<String, String> state = parse(mParameters.flatten());
+		if (state.equals(mDeviceState)) return false;
+		if (Log.isLoggable(TAG, Log.VERBOSE)) {
+			Log.v(TAG, "pushing " + diff(mDeviceState, state));
+		}
+		mSetCount++;
+		mUpdateSetCount++;
+		mDevice.setParameters(mParameters);
+		mDeviceState = state;
+		mValues = null;
+		return true;
+	}
+
+	/**
+	 * Pushes the working copy if it is dirty, then reads the parameters back,
+	 * for changes which make the driver change other values (the preview size
+	 * changes the zoom ratios, the scene mode the flash, white balance and
+	 * focus modes). Returns the new working copy. Nothing is read if nothing
+	 * was pushed.
+	 */
+	public Parameters commitAndRead() {
+		if (commit()) {
+			read();
+		}
+		return getParameters();
+	}
+
+	/** Reads the parameters from the driver into a new working copy. */
+	public Parameters read() {
+		mGetCount++;
+		mUpdateGetCount++;
+		mParameters = mDevice.getParameters();
+		mDeviceState = parse(mParameters.flatten());
+		mValues = null;
+		return mParameters;
+	}
+
+	/**
+	 * After commit() failed, pushes what the driver held before and makes it
+	 * the working copy again. Returns the working copy.
+	 */
+	public Parameters revert() {
+		if (mDeviceState == null) return read();
+		mParameters.unflatten(flatten(mDeviceState));
+		mSetCount++;
+		mUpdateSetCount++;
+		mDevice.setParameters(mParameters);
+		return mParameters;
+	}
+
+	/**
+	 * Records that the driver already holds the working copy's value for
+	 * key, as when it changed the zoom itself during a smooth zoom.
+	 */
+	public void markClean(String key) {
+		if (mParameters == null) return;
+		String value = mParameters.get(key);
+		if (value == null) {
+			mDeviceState.remove(key);
+		} else {
+			mDeviceState.put(key, value);
+		}
+		mValues = null;
+	}
+
+	/**
+	 * An immutable copy of what the driver holds, for the threads which must
+	 * not touch the Parameters, or null if nothing was read yet.
+	 */
+	public ParameterValues getValues() {
+		if (mValues == null && mDeviceState != null) {
+			mValues = new ParameterValues(mDeviceState);
+		}
+		return mValues;
+	}
+
+	/** Starts counting the HAL calls of one update. */
+	public void beginUpdate() {
+		mUpdateGetCount = 0;
+		mUpdateSetCount = 0;
+	}
+
+	/** Logs and returns the number of HAL calls since beginUpdate(). */
+	public int endUpdate(String what) {
+		Log.v(TAG, what + ": " + mUpdateGetCount + " get, " + mUpdateSetCount
+				+ " set (total " + mGetCount + " get, " + mSetCount + " set)");
+		return mUpdateGetCount + mUpdateSetCount;
+	}
+
+	public int getGetCount() {
+		return mGetCount;
+	}
+
+	public int getSetCount() {
+		return mSetCount;
+	}
+
+	/** The keys added, removed or changed from one parameter map to another. */
+	static Set<String> diff(Map<String, String> before, Map<String, String> after) {
+		Set<String> keys = new TreeSet<String>();
+		for (Map.Entry<String, String> entry : after.entrySet()) {
+			if (!entry.getValue().equals(before.get(entry.getKey()))) {
+				keys.add(entry.getKey());
+			}
+		}
+		for (String key : before.keySet()) {
+			if (!after.containsKey(key)) keys.add(key);
+		}
+		return keys;
+	}
+
+	// Parameters.flatten() is "key1=value1;key2=value2;...".
+	static Map<String, String> parse(String flattened) {
+		Map<String, String> map = new HashMap<String, String>();
+		int start = 0;
+		int length = flattened.length();
+		while (start < length) {
+			int end = flattened.indexOf(';', start);
+			if (end < 0) end = length;
+			int equals = flattened.indexOf('=', start);
+			if (equals > start && equals < end) {
+				map.put(flattened.substring(start, equals),
+						flattened.substring(equals + 1, end));
+			}
+			start = end + 1;
+		}
+		return map;
+	}
+
+	static String flatten(Map<String, String> map) {
+		StringBuilder builder = new StringBuilder();
+		for (Map.Entry<String, String> entry : map.entrySet()) {
+			if (builder.length() > 0) builder.append(';');
+			builder.append(entry.getKey()).append('=').append(entry.getValue());
+		}
+		return builder.toString();
+	}
+}
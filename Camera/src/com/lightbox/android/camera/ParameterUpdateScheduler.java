@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2012 Lightbox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightbox.android.camera;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Applies camera parameter updates once the camera is idle, instead of
+ * polling for it. Requests are bit sets of what to update; those made while
+ * an update is pending are merged into it. The owner calls
+ * {@link #notifyIdle()} when focus or a snapshot finishes, and the pending
+ * update is applied then. Updates are never applied closer together than
+ * the minimum interval, so a burst of HUD edits or zoom steps costs a few
+ * HAL round trips rather than one each.
+ *
+ * <p>Updates are applied on the thread of the Looper given to the
+ * constructor. Requests can come from any thread.
+ */
+public class ParameterUpdateScheduler {
+	/** Used to tag logs */
+	private static final String TAG = "ParameterUpdateScheduler";
+
+	/** The shortest time between two updates, in milliseconds. */
+	public static final long DEFAULT_MIN_INTERVAL = 100;
+
+	public interface Target {
+		/** Whether an update can be applied now. */
+		boolean isReadyForUpdate();
+
+		/** Applies the parameters in updateSet. */
+		void applyUpdate(int updateSet);
+	}
+
+	private final Target mTarget;
+	private final Handler mHandler;
+	private final long mMinInterval;
+
+	private int mPending;
+	private long mLastApplyTime = -1;
+	private boolean mPosted;
+
+	private int mRequestCount;
+	private int mCoalescedCount;
+	private int mApplyCount;
+
+	private final Runnable mApplyIfReady = new Runnable() {
+		public void run() {
+			synchronized (ParameterUpdateScheduler.this) {
+				mPosted = false;
+			}
+			applyIfReady();
+		}
+	};
+
+	public ParameterUpdateScheduler(Target target, Looper looper) {
+		this(target, looper, DEFAULT_MIN_INTERVAL);
+	}
+
+	public ParameterUpdateScheduler(Target target, Looper looper, long minInterval) {
+		mTarget = target;
+		mHandler = new Handler(looper);
+		mMinInterval = minInterval;
+	}
+
+	/**
+	 * Asks for the parameters in updateSet to be applied. On the scheduler's
+	 * thread, they are applied at once if the camera is idle and the last
+	 * update is old enough.
+	 */
+	public void request(int updateSet) {
+		synchronized (this) {
+			mRequestCount++;
+			if (mPending != 0) mCoalescedCount++;
+			mPending |= updateSet;
+		}
+		if (Looper.myLooper() == mHandler.getLooper()) {
+			applyIfReady();
+		} else {
+			post(0);
+		}
+	}
+
+	/**
+	 * Tells the scheduler the camera may have become idle. The check runs on
+	 * the next turn of the Looper, after the caller has finished changing
+	 * its state.
+	 */
+	public void notifyIdle() {
+		if (hasPending()) post(0);
+	}
+
+	/** Drops the pending update, as when the camera is closed. */
+	public void cancel() {
+		synchronized (this) {
+			mPending = 0;
+			mPosted = false;
+		}
+		mHandler.removeCallbacks(mApplyIfReady);
+	}
+
+	public synchronized boolean hasPending() {
+		return mPending != 0;
+	}
+
+	public synchronized int getRequestCount() {
+		return mRequestCount;
+	}
+
+	/** The number of requests merged into an update which was pending. */
+	public synchronized int getCoalescedCount() {
+		return mCoalescedCount;
+	}
+
+	public synchronized int getApplyCount() {
+		return mApplyCount;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "ParameterUpdateScheduler(" + mRequestCount + " requested, "
+				+ mCoalescedCount + " coalesced, " + mApplyCount + " applied)";
+	}
+
+	private void applyIfReady() {
+		if (!hasPending() || !mTarget.isReadyForUpdate()) {
+			// notifyIdle() brings us back.
+			return;
+		}
+		long now = SystemClock.uptimeMillis();
+		int updateSet;
+		synchronized (this) {
+			if (mLastApplyTime >= 0 && now - mLastApplyTime < mMinInterval) {
+				postLocked(mLastApplyTime + mMinInterval - now);
+				return;
+			}
+			updateSet = mPending;
+			mPending = 0;
+			mApplyCount++;
+			mLastApplyTime = now;
+		}
+		if (Log.isLoggable(TAG, Log.VERBOSE)) {
+			Log.v(TAG, "applying " + updateSet + ", " + this);
+		}
+		mTarget.applyUpdate(updateSet);
+	}
+
+	private synchronized void post(long delay) {
+		postLocked(delay);
+	}
+
+	private void postLocked(long delay) {
+		if (mPosted) return;
+		mPosted = true;
+		mHandler.postDelayed(mApplyIfReady, delay);
+	}
+}
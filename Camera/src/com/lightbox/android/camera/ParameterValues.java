@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2012 Lightbox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightbox.android.camera;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A copy of the parameters the camera driver holds, made by
+ * {@link ParameterSnapshot#getValues()}. The Parameters themselves belong to
+ * the camera thread; the main thread reads these instead. Immutable, so it
+ * can be read from any thread.
+ */
+public class ParameterValues {
+	// The keys of android.hardware.Camera.Parameters.
+	private static final String KEY_FLASH_MODE = "flash-mode";
+	private static final String KEY_FLASH_MODE_VALUES = "flash-mode-values";
+	private static final String KEY_WHITE_BALANCE = "whitebalance";
+	private static final String KEY_FOCUS_MODE = "focus-mode";
+	private static final String KEY_PREVIEW_SIZE = "preview-size";
+
+	private final Map<String, String> mValues;
+
+	ParameterValues(Map<String, String> values) {
+		mValues = new HashMap<String, String>(values);
+	}
+
+	public String get(String key) {
+		return mValues.get(key);
+	}
+
+	public String getFlashMode() {
+		return get(KEY_FLASH_MODE);
+	}
+
+	/** Like Parameters.getSupportedFlashModes(): null if there is no flash. */
+	public List<String> getSupportedFlashModes() {
+		String values = get(KEY_FLASH_MODE_VALUES);
+		if (values == null) return null;
+		List<String> modes = new ArrayList<String>();
+		int start = 0;
+		int length = values.length();
+		while (start < length) {
+			int end = values.indexOf(',', start);
+			if (end < 0) end = length;
+			modes.add(values.substring(start, end));
+			start = end + 1;
+		}
+		return modes;
+	}
+
+	public String getWhiteBalance() {
+		return get(KEY_WHITE_BALANCE);
+	}
+
+	public String getFocusMode() {
+		return get(KEY_FOCUS_MODE);
+	}
+
+	public int getPreviewWidth() {
+		return getPreviewDimension(0);
+	}
+
+	public int getPreviewHeight() {
+		return getPreviewDimension(1);
+	}
+
+	// "preview-size" is "widthxheight"; returns 0 if it is missing.
+	private int getPreviewDimension(int index) {
+		String size = get(KEY_PREVIEW_SIZE);
+		if (size == null) return 0;
+		int x = size.indexOf('x');
+		if (x < 0) return 0;
+		try {
+			return Integer.parseInt(index == 0 ? size.substring(0, x) : size.substring(x + 1));
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+}
@@ -27,7 +27,6 @@ import com.lightbox.android.camera.R.string;
 import com.lightbox.android.camera.ui.HeadUpDisplay;
 
 import android.content.Context;
-import android.util.AttributeSet;
 import android.util.FloatMath;
 
 /**
@@ -38,8 +37,8 @@ public class PreferenceGroup extends CameraPreference {
     private ArrayList<CameraPreference> list =
             new ArrayList<CameraPreference>();
 
-    public PreferenceGroup(Context context, AttributeSet attrs) {
-        super(context, attrs);
+    public PreferenceGroup(Context context, String title) {
+        super(context, title);
     }
 
     public void addChild(CameraPreference child) {
@@ -88,13 +87,13 @@ public class PreferenceGroup extends CameraPreference {
 
 	void buildExposureCompensation(
 	        CameraSettings cameraSettings, ListPreference exposure) {
-	    int max = ParameterUtils.getMaxExposureCompensation(cameraSettings.mParameters);
-	    int min = ParameterUtils.getMinExposureCompensation(cameraSettings.mParameters);
+	    int max = cameraSettings.mCapabilities.getMaxExposureCompensation();
+	    int min = cameraSettings.mCapabilities.getMinExposureCompensation();
 	    if (max == 0 && min == 0) {
 	        CameraSettings.removePreference(this, exposure.getKey());
 	        return;
 	    }
-	    float step = ParameterUtils.getExposureCompensationStep(cameraSettings.mParameters);
+	    float step = cameraSettings.mCapabilities.getExposureCompensationStep();
 	
 	    // show only integer values for exposure compensation
 	    int maxValue = (int) FloatMath.floor(max * step);
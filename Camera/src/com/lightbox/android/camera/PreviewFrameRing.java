@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2012 Lightbox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightbox.android.camera;
+
+import android.graphics.ImageFormat;
+import android.hardware.Camera.Parameters;
+import android.hardware.Camera.PreviewCallback;
+import android.hardware.Camera.Size;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Keeps the most recent preview frames in buffers which are allocated once
+ * and handed to the camera with addCallbackBuffer(), so the preview path does
+ * not allocate a byte[] per frame and the shutter can use a frame which has
+ * already arrived instead of waiting for the next one.
+ *
+ * <p>Needs API level 8, see {@link #isSupported()}. The preview callback
+ * runs on the camera thread, which opened the camera, and the other methods
+ * on either thread, so they are synchronized.
+ */
+public class PreviewFrameRing implements PreviewCallback {
+	/** Used to tag logs */
+	private static final String TAG = "PreviewFrameRing";
+
+	// Buffers left queued in the camera while we hold the recent frames, so
+	// it does not have to drop frames.
+	private static final int CAMERA_BUFFERS = 2;
+
+	private final int mHistory;
+
+	// The recent frames, oldest first, and the uptime at which each arrived.
+	private final byte[][] mFrames;
+	private final long[] mFrameTimes;
+	private int mFrameCount;
+
+	// Every buffer, whether it is queued in the camera, in mFrames or
+	// acquired.
+	private byte[][] mBuffers;
+	private int mBufferSize;
+	private int mWidth;
+	private int mHeight;
+	private int mFormat;
+
+	// The frame handed out by acquireFrame(), if any.
+	private byte[] mAcquired;
+
+	private android.hardware.Camera mCamera;
+
+	public static boolean isSupported() {
+		return Build.VERSION.SDK_INT >= 0x00000008;
+	}
+
+	/**
+	 * @param history the number of recent frames to keep.
+	 */
+	public PreviewFrameRing(int history) {
+		mHistory = history;
+		mFrames = new byte[history][];
+		mFrameTimes = new long[history];
+	}
+
+	/**
+	 * Installs the ring as the preview callback of {@code camera}. Must be
+	 * called again each time the preview is started, as taking a picture
+	 * drops the buffers queued in the camera. The frames from the previous
+	 * preview are discarded.
+	 */
+	public synchronized void attach(android.hardware.Camera camera, Parameters parameters) {
+		Size size = parameters.getPreviewSize();
+		int format = parameters.getPreviewFormat();
+		int bufferSize = size.width * size.height
+				* ImageFormat.getBitsPerPixel(format) / 8;
+
+		// Clears whatever buffers the camera still has.
+		camera.setPreviewCallbackWithBuffer(null);
+		mCamera = camera;
+		mFrameCount = 0;
+
+		if (bufferSize != mBufferSize || mBuffers == null) {
+			mBufferSize = bufferSize;
+			mBuffers = new byte[mHistory + CAMERA_BUFFERS + 1][];
+			for (int i = 0; i < mBuffers.length; i++) {
+				mBuffers[i] = new byte[bufferSize];
+			}
+			Log.v(TAG, "allocated " + mBuffers.length + " buffers of "
+					+ bufferSize + " bytes");
+		}
+		mWidth = size.width;
+		mHeight = size.height;
+		mFormat = format;
+
+		for (byte[] buffer : mBuffers) {
+			if (buffer != mAcquired) camera.addCallbackBuffer(buffer);
+		}
+		camera.setPreviewCallbackWithBuffer(this);
+	}
+
+	/** Stops receiving frames. Must be called before the camera is released. */
+	public synchronized void detach() {
+		if (mCamera != null) {
+			mCamera.setPreviewCallbackWithBuffer(null);
+			mCamera = null;
+		}
+		mFrameCount = 0;
+	}
+
+	/** Detaches and frees the buffers. */
+	public synchronized void release() {
+		detach();
+		mBuffers = null;
+		mBufferSize = 0;
+		mAcquired = null;
+	}
+
+	public synchronized void onPreviewFrame(byte[] data, android.hardware.Camera camera) {
+		if (data == null || camera != mCamera) return;
+		if (data.length != mBufferSize) {
+			// Left over from before a preview size change.
+			return;
+		}
+		if (mFrameCount == mHistory) {
+			byte[] oldest = removeFrame(0);
+			recycle(oldest);
+		}
+		mFrames[mFrameCount] = data;
+		mFrameTimes[mFrameCount] = SystemClock.uptimeMillis();
+		mFrameCount++;
+	}
+
+	public synchronized int getWidth() {
+		return mWidth;
+	}
+
+	public synchronized int getHeight() {
+		return mHeight;
+	}
+
+	public synchronized int getPreviewFormat() {
+		return mFormat;
+	}
+
+	/**
+	 * Takes the frame which arrived closest to {@code uptime} out of the ring,
+	 * or returns null if there is none. It is not reused until it is given
+	 * back with {@link #releaseFrame(byte[])}, so it can be read on another
+	 * thread than the camera's. Only one frame can be acquired at a time.
+	 */
+	public synchronized byte[] acquireFrame(long uptime) {
+		if (mFrameCount == 0 || mAcquired != null) return null;
+		int best = 0;
+		for (int i = 1; i < mFrameCount; i++) {
+			if (Math.abs(mFrameTimes[i] - uptime)
+					< Math.abs(mFrameTimes[best] - uptime)) {
+				best = i;
+			}
+		}
+		mAcquired = removeFrame(best);
+		return mAcquired;
+	}
+
+	public synchronized void releaseFrame(byte[] frame) {
+		if (frame != mAcquired) return;
+		mAcquired = null;
+		recycle(frame);
+	}
+
+	private byte[] removeFrame(int index) {
+		byte[] frame = mFrames[index];
+		for (int i = index + 1; i < mFrameCount; i++) {
+			mFrames[i - 1] = mFrames[i];
+			mFrameTimes[i - 1] = mFrameTimes[i];
+		}
+		mFrameCount--;
+		mFrames[mFrameCount] = null;
+		return frame;
+	}
+
+	// Gives a buffer back to the camera, unless it no longer fits.
+	private void recycle(byte[] buffer) {
+		if (mCamera != null && buffer.length == mBufferSize) {
+			mCamera.addCallbackBuffer(buffer);
+		}
+	}
+}
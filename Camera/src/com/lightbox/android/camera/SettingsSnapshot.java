@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2012 Lightbox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightbox.android.camera;
+
+import android.content.SharedPreferences;
+import android.content.res.Resources;
+
+/**
+ * The settings read by the capture and camera parameter code, with their
+ * defaults applied. Built by {@link ComboPreferences} when a preference
+ * changes, so those paths read fields instead of looking the preferences up
+ * on every shot. Immutable, so it can be read from any thread.
+ */
+public class SettingsSnapshot {
+	// Global settings, from the settings screen.
+	public static final String KEY_DISABLE_SHUTTER_SOUND = "disable_shutter_sound";
+	public static final String KEY_DISABLE_PREVIEW_ANIMATION = "disable_preview_animation";
+	public static final String KEY_ZERO_SHUTTER_LAG = "zero_shutter_lag";
+	public static final String KEY_BURST_MODE = "burst_mode";
+
+	private final boolean mShutterSoundDisabled;
+	private final boolean mPreviewAnimationDisabled;
+	private final boolean mZeroShutterLagEnabled;
+	private final boolean mBurstModeEnabled;
+
+	private final String mPictureSize;
+	private final String mSceneMode;
+	private final String mJpegQuality;
+	private final String mColorEffect;
+	private final String mExposure;
+	private final String mFlashMode;
+	private final String mWhiteBalance;
+	private final String mFocusMode;
+
+	private SettingsSnapshot(SharedPreferences global, SharedPreferences local,
+			Resources res) {
+		mShutterSoundDisabled = global.getBoolean(KEY_DISABLE_SHUTTER_SOUND, true);
+		mPreviewAnimationDisabled = global.getBoolean(KEY_DISABLE_PREVIEW_ANIMATION, true);
+		mZeroShutterLagEnabled = global.getBoolean(KEY_ZERO_SHUTTER_LAG, false);
+		mBurstModeEnabled = global.getBoolean(KEY_BURST_MODE, false);
+
+		mPictureSize = getString(global, local, CameraSettings.KEY_PICTURE_SIZE, null);
+		mSceneMode = getString(global, local, CameraSettings.KEY_SCENE_MODE,
+				res.getString(R.string.pref_camera_scenemode_default));
+		mJpegQuality = getString(global, local, CameraSettings.KEY_JPEG_QUALITY,
+				res.getString(R.string.pref_camera_jpegquality_default));
+		mColorEffect = getString(global, local, CameraSettings.KEY_COLOR_EFFECT,
+				res.getString(R.string.pref_camera_coloreffect_default));
+		mExposure = getString(global, local, CameraSettings.KEY_EXPOSURE,
+				res.getString(R.string.pref_exposure_default));
+		mFlashMode = getString(global, local, CameraSettings.KEY_FLASH_MODE,
+				res.getString(R.string.pref_camera_flashmode_default));
+		mWhiteBalance = getString(global, local, CameraSettings.KEY_WHITE_BALANCE,
+				res.getString(R.string.pref_camera_whitebalance_default));
+		mFocusMode = getString(global, local, CameraSettings.KEY_FOCUS_MODE,
+				res.getString(R.string.pref_camera_focusmode_default));
+	}
+
+	/**
+	 * Reads the settings of one camera.
+	 * @param local the preferences of the camera, which override global, or
+	 *            null if no camera is selected yet
+	 */
+	public static SettingsSnapshot read(SharedPreferences global,
+			SharedPreferences local, Resources res) {
+		return new SettingsSnapshot(global, local, res);
+	}
+
+	// The per-camera value if there is one, else the global one, in one
+	// lookup each.
+	private static String getString(SharedPreferences global,
+			SharedPreferences local, String key, String defValue) {
+		String value = (local == null) ? null : local.getString(key, null);
+		return (value != null) ? value : global.getString(key, defValue);
+	}
+
+	public boolean isShutterSoundDisabled() {
+		return mShutterSoundDisabled;
+	}
+
+	public boolean isPreviewAnimationDisabled() {
+		return mPreviewAnimationDisabled;
+	}
+
+	public boolean isZeroShutterLagEnabled() {
+		return mZeroShutterLagEnabled;
+	}
+
+	public boolean isBurstModeEnabled() {
+		return mBurstModeEnabled;
+	}
+
+	/** The picture size as "WIDTHxHEIGHT", or null if none was chosen yet. */
+	public String getPictureSize() {
+		return mPictureSize;
+	}
+
+	public String getSceneMode() {
+		return mSceneMode;
+	}
+
+	public String getJpegQuality() {
+		return mJpegQuality;
+	}
+
+	public String getColorEffect() {
+		return mColorEffect;
+	}
+
+	public String getExposure() {
+		return mExposure;
+	}
+
+	public String getFlashMode() {
+		return mFlashMode;
+	}
+
+	public String getWhiteBalance() {
+		return mWhiteBalance;
+	}
+
+	public String getFocusMode() {
+		return mFocusMode;
+	}
+}
@@ -18,6 +18,7 @@ package com.lightbox.android.camera;
 
 import com.lightbox.android.camera.ShutterButton;
 import com.lightbox.android.camera.activities.Camera;
+import com.lightbox.android.camera.util.CaptureTracer;
 
 import android.content.Context;
 import android.os.Build;
@@ -130,8 +131,7 @@ public class ShutterButton extends ImageView {
 			return false;
 		}
 		
-		String str = camera.mParameters.get(Camera.KEY_ZOOM_SUPPORTED);
-		return (str != null && Camera.TRUE.equals(str) && camera.getMaxZoom() > 0);
+		return camera.mCapabilities.isZoomSupported();
 	}
 
 	public void autoFocus(Camera camera) {
@@ -141,9 +141,10 @@ public class ShutterButton extends ImageView {
 	        camera.mHeadUpDisplay.mSharedPrefs.setEnabled(camera.mHeadUpDisplay, false);
 	        Log.v(Camera.TAG, "Start autofocus.");
 	        camera.mFocusStartTime = System.currentTimeMillis();
+	        CaptureTracer.record(camera.mTraceShot, CaptureTracer.STAGE_FOCUS_START);
 	        camera.mFocusState = Camera.FOCUSING;
 	        camera.updateFocusIndicator();
-	        camera.mCameraDevice.autoFocus(camera.mAutoFocusCallback);
+	        camera.startAutoFocus();
 	    }
 	}
 
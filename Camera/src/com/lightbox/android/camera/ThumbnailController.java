@@ -23,7 +23,7 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Matrix;
-import android.graphics.Rect;
+import android.graphics.Paint;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.TransitionDrawable;
@@ -42,11 +42,9 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.List;
 
 import com.lightbox.android.camera.MenuHelper;
 import com.lightbox.android.camera.R.drawable;
-import com.lightbox.android.camera.R.xml;
 import com.lightbox.android.camera.activities.Camera;
 import com.lightbox.android.camera.device.CameraHolder;
 import com.lightbox.android.camera.ui.ZoomControllerListener;
@@ -59,6 +57,7 @@ import com.lightbox.android.camera.ui.ZoomControllerListener;
 public class ThumbnailController {
 
     private static final String TAG = "ThumbnailController";
+    private static final Paint THUMBNAIL_PAINT = new Paint(Paint.FILTER_BITMAP_FLAG);
     private final ContentResolver mContentResolver;
     private Uri mUri;
     private Bitmap mThumb;
@@ -95,6 +94,11 @@ public class ThumbnailController {
         return mUri;
     }
 
+    // The bitmap shown on the button, which must not be recycled.
+    public Bitmap getThumb() {
+        return mThumb;
+    }
+
     private static final int BUFSIZE = 4096;
 
     // Stores the data from the specified file.
@@ -200,133 +204,69 @@ public class ThumbnailController {
     }
 
     private static final int OPTIONS_NONE = 0x0;
-    private static final int OPTIONS_SCALE_UP = 0x1;
+    public static final int OPTIONS_RECYCLE_INPUT = 0x2;
+
     public static Bitmap extractThumbnail(
             Bitmap source, int width, int height, int degrees) {
-        return extractThumbnail(source, width, height, OPTIONS_NONE, degrees);
+        return extractThumbnail(source, width, height, OPTIONS_NONE, degrees, false);
     }
 
-    public static Bitmap extractThumbnail(
-            Bitmap source, int width, int height, int options, int degrees) {
+    /**
+     * Scales source to cover width x height, crops the center, then rotates
+     * it by degrees and mirrors it if asked. The size is before rotation, so
+     * for 90 and 270 degrees the result is height x width. All of it is done
+     * in one draw into one bitmap from the BitmapPool; with
+     * OPTIONS_RECYCLE_INPUT the source is given back to the pool.
+     */
+    public static Bitmap extractThumbnail(Bitmap source, int width, int height,
+            int options, int degrees, boolean mirror) {
         if (source == null) {
             return null;
         }
 
-        float scale;
-        if (source.getWidth() < source.getHeight()) {
-            scale = width / (float) source.getWidth();
+        ThumbnailTransform transform =
+                new ThumbnailTransform(source.getWidth(), source.getHeight())
+                .rotate(degrees)
+                .mirror(mirror);
+        if (degrees % 180 == 0) {
+            transform.centerCrop(width, height);
         } else {
-            scale = height / (float) source.getHeight();
+            transform.centerCrop(height, width);
+        }
+
+        BitmapPool pool = BitmapPool.instance();
+        Bitmap thumbnail = createThumbnail(source, transform, pool);
+        if ((options & OPTIONS_RECYCLE_INPUT) != 0) {
+            pool.put(source);
         }
-        
-        Matrix matrix = new Matrix();
-        matrix.setScale(scale, scale);
-        
-        Bitmap thumbnail = transform(matrix, source, width, height,
-                OPTIONS_SCALE_UP | options);
-        thumbnail = Util.rotate(thumbnail, degrees);
         return thumbnail;
     }
-    
+
     /**
-     * Transform source Bitmap to targeted width and height.
+     * Draws source through transform into a new bitmap of the output size,
+     * taken from pool unless it is null.
      */
-    public static final int OPTIONS_RECYCLE_INPUT = 0x2;
-    private static Bitmap transform(Matrix scaler,
-            Bitmap source,
-            int targetWidth,
-            int targetHeight,
-            int options) {
-        boolean scaleUp = (options & OPTIONS_SCALE_UP) != 0;
-        boolean recycle = (options & OPTIONS_RECYCLE_INPUT) != 0;
-
-        int deltaX = source.getWidth() - targetWidth;
-        int deltaY = source.getHeight() - targetHeight;
-        if (!scaleUp && (deltaX < 0 || deltaY < 0)) {
-            /*
-            * In this case the bitmap is smaller, at least in one dimension,
-            * than the target.  Transform it by placing as much of the image
-            * as possible into the target and leaving the top/bottom or
-            * left/right (or both) black.
-            */
-            Bitmap b2 = Bitmap.createBitmap(targetWidth, targetHeight,
-            Bitmap.Config.ARGB_8888);
-            Canvas c = new Canvas(b2);
-
-            int deltaXHalf = Math.max(0, deltaX / 2);
-            int deltaYHalf = Math.max(0, deltaY / 2);
-            Rect src = new Rect(
-            deltaXHalf,
-            deltaYHalf,
-            deltaXHalf + Math.min(targetWidth, source.getWidth()),
-            deltaYHalf + Math.min(targetHeight, source.getHeight()));
-            int dstX = (targetWidth  - src.width())  / 2;
-            int dstY = (targetHeight - src.height()) / 2;
-            Rect dst = new Rect(
-                    dstX,
-                    dstY,
-                    targetWidth - dstX,
-                    targetHeight - dstY);
-            c.drawBitmap(source, src, dst, null);
-            if (recycle) {
-                source.recycle();
-            }
-            return b2;
-        }
-        float bitmapWidthF = source.getWidth();
-        float bitmapHeightF = source.getHeight();
-
-        float bitmapAspect = bitmapWidthF / bitmapHeightF;
-        float viewAspect   = (float) targetWidth / targetHeight;
-
-        if (bitmapAspect > viewAspect) {
-            float scale = targetHeight / bitmapHeightF;
-            if (scale < .9F || scale > 1F) {
-                scaler.setScale(scale, scale);
-            } else {
-                scaler = null;
-            }
-        } else {
-            float scale = targetWidth / bitmapWidthF;
-            if (scale < .9F || scale > 1F) {
-                scaler.setScale(scale, scale);
-            } else {
-                scaler = null;
-            }
-        }
-
-        Bitmap b1;
-        if (scaler != null) {
-            // this is used for minithumb and crop, so we want to filter here.
-            b1 = Bitmap.createBitmap(source, 0, 0,
-            source.getWidth(), source.getHeight(), scaler, true);
+    public static Bitmap createThumbnail(Bitmap source,
+            ThumbnailTransform transform, BitmapPool pool) {
+        int width = transform.getOutputWidth();
+        int height = transform.getOutputHeight();
+        Bitmap result;
+        if (pool != null) {
+            result = pool.get(width, height, Bitmap.Config.ARGB_8888);
+            result.eraseColor(0);
         } else {
-            b1 = source;
-        }
-
-        if (recycle && b1 != source) {
-            source.recycle();
-        }
-
-        int dx1 = Math.max(0, b1.getWidth() - targetWidth);
-        int dy1 = Math.max(0, b1.getHeight() - targetHeight);
-
-        Bitmap b2 = Bitmap.createBitmap(
-                b1,
-                dx1 / 2,
-                dy1 / 2,
-                targetWidth,
-                targetHeight);
-
-        if (b2 != b1) {
-            if (recycle || b1 != source) {
-                b1.recycle();
-            }
+            result = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
         }
+        result.setDensity(source.getDensity());
 
-        return b2;
+        Matrix matrix = new Matrix();
+        matrix.setValues(transform.getMatrixValues());
+        // This is used for minithumb and crop, so we want to filter here.
+        Canvas canvas = new Canvas(result);
+        canvas.drawBitmap(source, matrix, THUMBNAIL_PAINT);
+        return result;
     }
-    
+
     public boolean isUriValid() {
         if (mUri == null) {
             return false;
@@ -384,10 +324,18 @@ public class ThumbnailController {
 	}
 
 	public void initializeHeadUpDisplay(final Camera camera) {
-	    CameraSettings settings = new CameraSettings(camera, camera.mInitialParams,
-	            CameraHolder.instance());
-	    camera.mHeadUpDisplay.initialize(camera,
-	            settings.mCameraHolder.getPreferenceGroup(settings, xml.camera_preferences),
+	    // The filtered preferences only depend on the camera, so switching
+	    // back to one reuses them.
+	    PreferenceGroup group = camera.mPreferenceGroups.get(camera.mCameraId);
+	    if (group == null) {
+	        CameraSettings settings = new CameraSettings(camera, camera.mCapabilities,
+	                CameraHolder.instance());
+	        group = settings.mCameraHolder.getPreferenceGroup(settings);
+	        camera.mPreferenceGroups.put(camera.mCameraId, group);
+	    } else {
+	        group.reloadValue();
+	    }
+	    camera.mHeadUpDisplay.initialize(camera, group,
 	            camera.mThumbController.getZoomRatios(camera), camera.mOrientationCompensation);
 	    if (camera.mShutterButton.isZoomSupported(camera)) {
 	        camera.mHeadUpDisplay.setZoomListener(new ZoomControllerListener() {
@@ -420,7 +368,7 @@ public class ThumbnailController {
 	    }
 	}
 
-	public void switchCameraId(Camera camera, int cameraId) {
+	public void switchCameraId(final Camera camera, int cameraId) {
 	    if (camera.mPausing || !camera.isCameraIdle()) return;
 	    camera.mCameraId = cameraId;
 	    CameraSettings.writePreferredCameraId(camera.mPreferences, cameraId);
@@ -447,22 +395,25 @@ public class ThumbnailController {
 	
 	    // Restart the preview.
 	    camera.resetExposureCompensation();
-	    if (!camera.restartPreview()) return;
+	    camera.restartPreview(new Runnable() {
+	        public void run() {
+	            camera.initializeZoom();
 	
-	    camera.initializeZoom();
-	
-	    // Reload the UI.
-	    if (camera.mFirstTimeInitialized) {
-	        initializeHeadUpDisplay(camera);
-	    }
+	            // Reload the UI.
+	            if (camera.mFirstTimeInitialized) {
+	                initializeHeadUpDisplay(camera);
+	            }
+	        }
+	    });
 	}
 
 	public float[] getZoomRatios(Camera camera) {
 	    if(!camera.mShutterButton.isZoomSupported(camera)) return null;
-	    List<Integer> zoomRatios = camera.mParameters.getZoomRatios();
-	    float result[] = new float[zoomRatios.size()];
+	    int[] zoomRatios = camera.mCapabilities.getZoomRatios();
+	    if (zoomRatios == null) return null;
+	    float result[] = new float[zoomRatios.length];
 	    for (int i = 0, n = result.length; i < n; ++i) {
-	        result[i] = (float) zoomRatios.get(i) / 100f;
+	        result[i] = zoomRatios[i] / 100f;
 	    }
 	    return result;
 	}
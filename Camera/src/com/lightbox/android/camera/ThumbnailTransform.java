@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2012 Lightbox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightbox.android.camera;
+
+/**
+ * The geometry of a thumbnail: the source is rotated clockwise, optionally
+ * mirrored, then scaled to fill the output size and cropped to its center.
+ * All of it is composed into one affine matrix, so the thumbnail can be drawn
+ * in a single pass (see ThumbnailController.createThumbnail()).
+ *
+ * <pre>
+ * ThumbnailTransform t = new ThumbnailTransform(width, height)
+ *         .rotate(90).mirror(true).centerCrop(96, 96);
+ * </pre>
+ *
+ * <p>{@link #apply(int[], int[])} runs the same transform over pixel arrays,
+ * so the geometry can be checked without a device. This class has no Android
+ * dependencies.
+ */
+public class ThumbnailTransform {
+	private final int mSourceWidth;
+	private final int mSourceHeight;
+	private int mDegrees;
+	private boolean mMirror;
+	private int mOutputWidth;
+	private int mOutputHeight;
+
+	public ThumbnailTransform(int sourceWidth, int sourceHeight) {
+		if (sourceWidth <= 0 || sourceHeight <= 0) {
+			throw new IllegalArgumentException("bad source size "
+					+ sourceWidth + "x" + sourceHeight);
+		}
+		mSourceWidth = sourceWidth;
+		mSourceHeight = sourceHeight;
+	}
+
+	/** Rotates clockwise by {@code degrees}, a multiple of 90. */
+	public ThumbnailTransform rotate(int degrees) {
+		if (degrees % 90 != 0) {
+			throw new IllegalArgumentException("bad rotation " + degrees);
+		}
+		mDegrees = ((degrees % 360) + 360) % 360;
+		return this;
+	}
+
+	/** Flips the rotated image horizontally. */
+	public ThumbnailTransform mirror(boolean mirror) {
+		mMirror = mirror;
+		return this;
+	}
+
+	/**
+	 * Scales the rotated image so that it covers width x height and crops
+	 * what is left over equally on both sides. Without it the output has the
+	 * size of the rotated source.
+	 */
+	public ThumbnailTransform centerCrop(int width, int height) {
+		if (width <= 0 || height <= 0) {
+			throw new IllegalArgumentException("bad output size " + width + "x" + height);
+		}
+		mOutputWidth = width;
+		mOutputHeight = height;
+		return this;
+	}
+
+	public int getSourceWidth() {
+		return mSourceWidth;
+	}
+
+	public int getSourceHeight() {
+		return mSourceHeight;
+	}
+
+	public int getOutputWidth() {
+		if (mOutputWidth > 0) return mOutputWidth;
+		return isSwapped() ? mSourceHeight : mSourceWidth;
+	}
+
+	public int getOutputHeight() {
+		if (mOutputHeight > 0) return mOutputHeight;
+		return isSwapped() ? mSourceWidth : mSourceHeight;
+	}
+
+	/**
+	 * Returns the matrix from source to output coordinates, in the order of
+	 * android.graphics.Matrix.getValues(): scale x, skew x, translate x,
+	 * skew y, scale y, translate y, 0, 0, 1.
+	 */
+	public float[] getMatrixValues() {
+		double[] m = getMatrix();
+		return new float[] {
+				(float) m[0], (float) m[1], (float) m[2],
+				(float) m[3], (float) m[4], (float) m[5],
+				0, 0, 1};
+	}
+
+	/**
+	 * Maps the point (x, y) of the source to the output, into
+	 * {@code out[0]} and {@code out[1]}.
+	 */
+	public void mapPoint(float x, float y, float[] out) {
+		double[] m = getMatrix();
+		out[0] = (float) (m[0] * x + m[1] * y + m[2]);
+		out[1] = (float) (m[3] * x + m[4] * y + m[5]);
+	}
+
+	/**
+	 * Draws {@code source}, of the source size, into {@code output}, of the
+	 * output size, taking the nearest source pixel for each output pixel.
+	 */
+	public void apply(int[] source, int[] output) {
+		int outputWidth = getOutputWidth();
+		int outputHeight = getOutputHeight();
+		if (source.length < mSourceWidth * mSourceHeight
+				|| output.length < outputWidth * outputHeight) {
+			throw new IllegalArgumentException("arrays too small");
+		}
+		double[] m = getMatrix();
+		// The rotation and mirror are exact, so the inverse is too.
+		double det = m[0] * m[4] - m[1] * m[3];
+		double ia = m[4] / det;
+		double ib = -m[1] / det;
+		double id = -m[3] / det;
+		double ie = m[0] / det;
+		int i = 0;
+		for (int y = 0; y < outputHeight; y++) {
+			double oy = y + 0.5 - m[5];
+			for (int x = 0; x < outputWidth; x++) {
+				double ox = x + 0.5 - m[2];
+				int sx = clamp((int) Math.floor(ia * ox + ib * oy), mSourceWidth);
+				int sy = clamp((int) Math.floor(id * ox + ie * oy), mSourceHeight);
+				output[i++] = source[sy * mSourceWidth + sx];
+			}
+		}
+	}
+
+	// a, b, c, d, e, f of x' = a x + b y + c, y' = d x + e y + f.
+	private double[] getMatrix() {
+		int w = mSourceWidth;
+		int h = mSourceHeight;
+		int rotatedWidth = isSwapped() ? h : w;
+		int rotatedHeight = isSwapped() ? w : h;
+
+		// Rotate, keeping the image in the positive quadrant.
+		double a, b, c, d, e, f;
+		switch (mDegrees) {
+			case 90:  a = 0;  b = -1; c = h; d = 1;  e = 0;  f = 0; break;
+			case 180: a = -1; b = 0;  c = w; d = 0;  e = -1; f = h; break;
+			case 270: a = 0;  b = 1;  c = 0; d = -1; e = 0;  f = w; break;
+			default:  a = 1;  b = 0;  c = 0; d = 0;  e = 1;  f = 0; break;
+		}
+		if (mMirror) {
+			a = -a;
+			b = -b;
+			c = rotatedWidth - c;
+		}
+
+		// Scale to cover the output, and center.
+		int outputWidth = getOutputWidth();
+		int outputHeight = getOutputHeight();
+		double scale = Math.max((double) outputWidth / rotatedWidth,
+				(double) outputHeight / rotatedHeight);
+		double dx = (outputWidth - rotatedWidth * scale) / 2;
+		double dy = (outputHeight - rotatedHeight * scale) / 2;
+		return new double[] {
+				a * scale, b * scale, c * scale + dx,
+				d * scale, e * scale, f * scale + dy};
+	}
+
+	private boolean isSwapped() {
+		return mDegrees == 90 || mDegrees == 270;
+	}
+
+	private static int clamp(int value, int size) {
+		return (value < 0) ? 0 : (value >= size) ? size - 1 : value;
+	}
+}
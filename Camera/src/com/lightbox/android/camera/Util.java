@@ -51,13 +51,14 @@ public class Util {
     }
 
     // Rotates the bitmap by the specified degree.
-    // If a new bitmap is created, the original bitmap is recycled.
+    // If a new bitmap is created, it comes from the BitmapPool and the
+    // original bitmap is given back to it.
     public static Bitmap rotate(Bitmap b, int degrees) {
         return rotateAndMirror(b, degrees, false);
     }
 
-    // Rotates and/or mirrors the bitmap. If a new bitmap is created, the
-    // original bitmap is recycled.
+    // Rotates and/or mirrors the bitmap. If a new bitmap is created, it comes
+    // from the BitmapPool and the original bitmap is given back to it.
     public static Bitmap rotateAndMirror(Bitmap b, int degrees, boolean mirror) {
         if ((degrees != 0 || mirror) && b != null) {
             Matrix m = new Matrix();
@@ -76,12 +77,10 @@ public class Util {
             }
 
             try {
-                Bitmap b2 = Bitmap.createBitmap(
-                        b, 0, 0, b.getWidth(), b.getHeight(), m, true);
-                if (b != b2) {
-                    b.recycle();
-                    b = b2;
-                }
+                BitmapPool pool = BitmapPool.instance();
+                Bitmap b2 = pool.transform(b, m, true);
+                pool.put(b);
+                b = b2;
             } catch (OutOfMemoryError ex) {
                 // We have no memory to rotate. Return the original bitmap.
             }
@@ -90,19 +89,7 @@ public class Util {
     }
     
     public static Bitmap flipHorizontally(Bitmap b) {
-    	Matrix m = new Matrix();
-    	m.postScale(-1, 1);
-    	try {
-            Bitmap b2 = Bitmap.createBitmap(
-                    b, 0, 0, b.getWidth(), b.getHeight(), m, true);
-            if (b != b2) {
-                b.recycle();
-                b = b2;
-            }
-        } catch (OutOfMemoryError ex) {
-            // We have no memory to rotate. Return the original bitmap.
-        }
-    	return b;
+    	return rotateAndMirror(b, 0, true);
     }
 
     /*
@@ -126,7 +113,17 @@ public class Util {
      */
     public static int computeSampleSize(BitmapFactory.Options options,
             int minSideLength, int maxNumOfPixels) {
-        int initialSize = computeInitialSampleSize(options, minSideLength,
+        return computeSampleSize(options.outWidth, options.outHeight,
+                minSideLength, maxNumOfPixels);
+    }
+
+    /**
+     * Like {@link #computeSampleSize(BitmapFactory.Options, int, int)}, for
+     * an image of the given size.
+     */
+    public static int computeSampleSize(int width, int height,
+            int minSideLength, int maxNumOfPixels) {
+        int initialSize = computeInitialSampleSize(width, height, minSideLength,
                 maxNumOfPixels);
 
         int roundedSize;
@@ -142,10 +139,10 @@ public class Util {
         return roundedSize;
     }
 
-    private static int computeInitialSampleSize(BitmapFactory.Options options,
+    private static int computeInitialSampleSize(int width, int height,
             int minSideLength, int maxNumOfPixels) {
-        double w = options.outWidth;
-        double h = options.outHeight;
+        double w = width;
+        double h = height;
 
         int lowerBound = (maxNumOfPixels == IImage.UNCONSTRAINED) ? 1 :
                 (int) Math.ceil(Math.sqrt(w * h / maxNumOfPixels));
@@ -210,6 +207,49 @@ public class Util {
         }
     }
 
+    /**
+     * Decodes a small version of a JPEG: the embedded EXIF thumbnail if it
+     * has the same shape as the image and is no less than half the size a
+     * decode with the given sample size would be, otherwise a decode of the
+     * whole image with that sample size. The result is not rotated.
+     */
+    public static Bitmap makeJpegThumbnail(byte[] jpegData, JpegHeader header,
+            int sampleSize) {
+        try {
+            if (header.hasThumbnail()) {
+                // The embedded thumbnail is the same size from shot to
+                // shot, so it can be decoded into a pooled bitmap.
+                BitmapPool pool = BitmapPool.instance();
+                Bitmap thumb = pool.decodeByteArray(jpegData,
+                        header.getThumbnailOffset(), header.getThumbnailLength(), 1);
+                if (thumb != null && isThumbnailUsable(thumb, header, sampleSize)) {
+                    return thumb;
+                }
+                pool.put(thumb);
+            }
+            return BitmapPool.instance().decodeByteArray(jpegData, 0,
+                    jpegData.length, sampleSize);
+        } catch (OutOfMemoryError ex) {
+            Log.e(TAG, "Got oom exception ", ex);
+            return null;
+        }
+    }
+
+    private static boolean isThumbnailUsable(Bitmap thumb, JpegHeader header,
+            int sampleSize) {
+        int width = header.getWidth();
+        int height = header.getHeight();
+        if (width <= 0 || height <= 0) return true;
+        if (thumb.getWidth() * 2 < width / sampleSize
+                || thumb.getHeight() * 2 < height / sampleSize) {
+            return false;
+        }
+        // Some cameras put a 4:3 thumbnail, letterboxed, in wide pictures.
+        float ratio = (float) width / height;
+        float thumbRatio = (float) thumb.getWidth() / thumb.getHeight();
+        return Math.abs(ratio - thumbRatio) < 0.05f * ratio;
+    }
+
     public static void Assert(boolean cond) {
         if (!cond) {
             throw new AssertionError();
@@ -350,7 +390,7 @@ public class Util {
     }
     
 	// decode Y, U, and V values on the YUV 420 buffer described as YCbCr_422_SP
-	// by Android
+	// by Android, to ARGB colors, with YuvConverter's tables.
 	public static void decodeYUV(int[] out, byte[] fg, int width, int height)
 			throws NullPointerException, IllegalArgumentException {
 		int sz = width * height;
@@ -361,49 +401,12 @@ public class Util {
 					+ " < minimum " + sz);
 		if (fg == null)
 			throw new NullPointerException("buffer 'fg' is null");
-		if (fg.length < sz)
+		if (fg.length < sz * 3 / 2)
 			throw new IllegalArgumentException("buffer fg size " + fg.length
 					+ " < minimum " + sz * 3 / 2);
-		int i, j;
-		int Y, Cr = 0, Cb = 0;
-		for (j = 0; j < height; j++) {
-			int pixPtr = j * width;
-			final int jDiv2 = j >> 1;
-			for (i = 0; i < width; i++) {
-				Y = fg[pixPtr];
-				if (Y < 0)
-					Y += 255;
-				if ((i & 0x1) != 1) {
-					final int cOff = sz + jDiv2 * width + (i >> 1) * 2;
-					Cb = fg[cOff];
-					if (Cb < 0)
-						Cb += 127;
-					else
-						Cb -= 128;
-					Cr = fg[cOff + 1];
-					if (Cr < 0)
-						Cr += 127;
-					else
-						Cr -= 128;
-				}
-				int R = Y + Cr + (Cr >> 2) + (Cr >> 3) + (Cr >> 5);
-				if (R < 0)
-					R = 0;
-				else if (R > 255)
-					R = 255;
-				int G = Y - (Cb >> 2) + (Cb >> 4) + (Cb >> 5) - (Cr >> 1)
-						+ (Cr >> 3) + (Cr >> 4) + (Cr >> 5);
-				if (G < 0)
-					G = 0;
-				else if (G > 255)
-					G = 255;
-				int B = Y + Cb + (Cb >> 1) + (Cb >> 2) + (Cb >> 6);
-				if (B < 0)
-					B = 0;
-				else if (B > 255)
-					B = 255;
-				out[pixPtr++] = 0xff000000 + (B << 16) + (G << 8) + R;
-			}
-		}
+		if ((width & 1) != 0)
+			throw new IllegalArgumentException("width " + width + " is odd");
+		YuvConverter.convertRows(fg, width, height, 0, height,
+				YuvConverter.tablesFor(YuvConverter.RANGE_FULL), out);
 	}
 }
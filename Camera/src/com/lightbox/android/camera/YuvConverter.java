@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2012 Lightbox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightbox.android.camera;
+
+/**
+ * Converts NV21 (YCbCr 420 SP) frames, as delivered by the preview, to RGB,
+ * on the calling thread. This class has no Android dependencies.
+ *
+ * <p>The BT.601 equations are applied with lookup tables, for either full
+ * range (JFIF, which is what the camera produces) or limited range (Y in
+ * 16-235, chroma in 16-240) input.
+ *
+ * <p>The app takes its small thumbnails with {@link #convertScaled}, which
+ * samples straight down from the frame; {@link Util#decodeYUV} converts whole
+ * frames with {@link #convertRows}.
+ */
+public class YuvConverter {
+	/** Y, U and V use all of 0-255, as in JFIF. */
+	public static final int RANGE_FULL = 0;
+	/** Y is in 16-235 and U and V in 16-240, as in video. */
+	public static final int RANGE_LIMITED = 1;
+
+	// The channels below are in 16.16 fixed point, indexed by the unsigned
+	// sample. The rounding constant is folded into the Y table.
+	private static final Tables FULL_RANGE_TABLES = new Tables(0, 255.0, 255.0);
+	private static final Tables LIMITED_RANGE_TABLES = new Tables(16, 219.0, 224.0);
+
+	// Maps (channel >> 16) + CLAMP_OFFSET to the channel clamped to 0-255.
+	// Limited range Y and chroma can take a channel to about -300 and 560.
+	private static final int CLAMP_OFFSET = 512;
+	private static final int[] CLAMP = new int[3 * CLAMP_OFFSET];
+
+	static {
+		for (int i = 0; i < CLAMP.length; i++) {
+			CLAMP[i] = Math.max(0, Math.min(255, i - CLAMP_OFFSET));
+		}
+	}
+
+	private YuvConverter() {
+	}
+
+	/** Converts rows [top, bottom) of an NV21 frame to ARGB_8888 colors. */
+	static void convertRows(byte[] yuv, int width, int height, int top,
+			int bottom, Tables tables, int[] argb) {
+		int[] yTable = tables.mY;
+		int[] rvTable = tables.mRv;
+		int[] guTable = tables.mGu;
+		int[] gvTable = tables.mGv;
+		int[] buTable = tables.mBu;
+		int[] clamp = CLAMP;
+		int chromaStart = width * height;
+		for (int row = top; row < bottom; row++) {
+			int pixel = row * width;
+			int chroma = chromaStart + (row >> 1) * width;
+			for (int col = 0; col < width; col += 2) {
+				// NV21 stores V before U.
+				int v = yuv[chroma++] & 0xFF;
+				int u = yuv[chroma++] & 0xFF;
+				int dr = rvTable[v];
+				int dg = guTable[u] + gvTable[v];
+				int db = buTable[u];
+
+				int y = yTable[yuv[pixel] & 0xFF];
+				argb[pixel++] = 0xFF000000
+						| (clamp[((y + dr) >> 16) + CLAMP_OFFSET] << 16)
+						| (clamp[((y + dg) >> 16) + CLAMP_OFFSET] << 8)
+						| clamp[((y + db) >> 16) + CLAMP_OFFSET];
+				y = yTable[yuv[pixel] & 0xFF];
+				argb[pixel++] = 0xFF000000
+						| (clamp[((y + dr) >> 16) + CLAMP_OFFSET] << 16)
+						| (clamp[((y + dg) >> 16) + CLAMP_OFFSET] << 8)
+						| clamp[((y + db) >> 16) + CLAMP_OFFSET];
+			}
+		}
+	}
+
+	/**
+	 * Samples an NV21 frame of width x height straight down to outWidth x
+	 * outHeight, with no full size image in between. The frame is rotated
+	 * clockwise by {@code rotation} degrees (0, 90, 180 or 270) and then, if
+	 * {@code mirror}, flipped horizontally, so the output size should have the
+	 * shape of the rotated frame. Writes to whichever of {@code argb} and
+	 * {@code rgb565} is not null, row after row from index 0.
+	 *
+	 * <p>Each output pixel takes the nearest input pixel, which is good enough
+	 * for thumbnails but aliases when only shrinking a little.
+	 */
+	public static void convertScaled(byte[] yuv, int width, int height,
+			int rotation, boolean mirror, int outWidth, int outHeight,
+			int[] argb, short[] rgb565) {
+		convertScaled(yuv, width, height, RANGE_FULL, rotation, mirror,
+				outWidth, outHeight, argb, rgb565);
+	}
+
+	/** Like the above, for input of the given range. */
+	public static void convertScaled(byte[] yuv, int width, int height,
+			int range, int rotation, boolean mirror, int outWidth, int outHeight,
+			int[] argb, short[] rgb565) {
+		Tables tables = tablesFor(range);
+		if (rotation != 0 && rotation != 90 && rotation != 180 && rotation != 270) {
+			throw new IllegalArgumentException("bad rotation " + rotation);
+		}
+		if (outWidth <= 0 || outHeight <= 0) {
+			throw new IllegalArgumentException("bad output size " + outWidth + "x" + outHeight);
+		}
+		int outSize = outWidth * outHeight;
+		if ((argb != null ? argb.length : rgb565.length) < outSize) {
+			throw new IllegalArgumentException("output size < minimum " + outSize);
+		}
+		int chromaStart = width * height;
+		if (yuv.length < chromaStart + chromaStart / 2) {
+			throw new IllegalArgumentException("input size " + yuv.length
+					+ " < minimum " + (chromaStart + chromaStart / 2));
+		}
+
+		boolean swap = (rotation == 90 || rotation == 270);
+		int rotatedWidth = swap ? height : width;
+		int rotatedHeight = swap ? width : height;
+		int out = 0;
+		for (int oy = 0; oy < outHeight; oy++) {
+			// Output pixels sample the rotated frame at their centers.
+			int ry = ((2 * oy + 1) * rotatedHeight) / (2 * outHeight);
+			for (int ox = 0; ox < outWidth; ox++, out++) {
+				int mx = mirror ? outWidth - 1 - ox : ox;
+				int rx = ((2 * mx + 1) * rotatedWidth) / (2 * outWidth);
+				int sx;
+				int sy;
+				switch (rotation) {
+					case 90: sx = ry; sy = height - 1 - rx; break;
+					case 180: sx = width - 1 - rx; sy = height - 1 - ry; break;
+					case 270: sx = width - 1 - ry; sy = rx; break;
+					default: sx = rx; sy = ry; break;
+				}
+				int chroma = chromaStart + (sy >> 1) * width + (sx & ~1);
+				int v = yuv[chroma] & 0xFF;
+				int u = yuv[chroma + 1] & 0xFF;
+				int y = tables.mY[yuv[sy * width + sx] & 0xFF];
+				int r = CLAMP[((y + tables.mRv[v]) >> 16) + CLAMP_OFFSET];
+				int g = CLAMP[((y + tables.mGu[u] + tables.mGv[v]) >> 16) + CLAMP_OFFSET];
+				int b = CLAMP[((y + tables.mBu[u]) >> 16) + CLAMP_OFFSET];
+				if (argb != null) {
+					argb[out] = 0xFF000000 | (r << 16) | (g << 8) | b;
+				} else {
+					rgb565[out] = (short) (((r >> 3) << 11) | ((g >> 2) << 5) | (b >> 3));
+				}
+			}
+		}
+	}
+
+	static Tables tablesFor(int range) {
+		switch (range) {
+			case RANGE_FULL: return FULL_RANGE_TABLES;
+			case RANGE_LIMITED: return LIMITED_RANGE_TABLES;
+			default: throw new IllegalArgumentException("bad range " + range);
+		}
+	}
+
+	/** The BT.601 terms for every sample value, for one range. */
+	static final class Tables {
+		// Kr = 0.299 and Kb = 0.114.
+		private static final double RV = 2 * (1 - 0.299);
+		private static final double GU = -2 * (1 - 0.114) * 0.114 / 0.587;
+		private static final double GV = -2 * (1 - 0.299) * 0.299 / 0.587;
+		private static final double BU = 2 * (1 - 0.114);
+
+		final int[] mY = new int[256];
+		final int[] mRv = new int[256];
+		final int[] mGu = new int[256];
+		final int[] mGv = new int[256];
+		final int[] mBu = new int[256];
+
+		/**
+		 * @param yBlack the Y of black.
+		 * @param yScale the Y range, from black to white.
+		 * @param cScale the U and V range.
+		 */
+		Tables(int yBlack, double yScale, double cScale) {
+			double ys = 255.0 / yScale;
+			double cs = 255.0 / cScale;
+			for (int i = 0; i < 256; i++) {
+				mY[i] = fixed((i - yBlack) * ys) + 0x8000;
+				mRv[i] = fixed((i - 128) * cs * RV);
+				mGu[i] = fixed((i - 128) * cs * GU);
+				mGv[i] = fixed((i - 128) * cs * GV);
+				mBu[i] = fixed((i - 128) * cs * BU);
+			}
+		}
+
+		private static int fixed(double value) {
+			return (int) Math.round(value * 65536);
+		}
+	}
+}
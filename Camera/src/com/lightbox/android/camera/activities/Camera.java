@@ -16,16 +16,21 @@
 
 package com.lightbox.android.camera.activities;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ShortBuffer;
 import java.text.SimpleDateFormat;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import android.app.Activity;
 import android.content.BroadcastReceiver;
@@ -33,14 +38,15 @@ import android.content.ContentProviderClient;
 import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.content.SharedPreferences.Editor;
 import android.content.pm.ActivityInfo;
 import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.Bitmap.Config;
-import android.graphics.BitmapFactory;
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.hardware.Camera.Parameters;
@@ -53,15 +59,16 @@ import android.media.ToneGenerator;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.Debug;
 import android.os.Environment;
 import android.os.Handler;
+import android.os.Looper;
 import android.os.Message;
-import android.preference.PreferenceManager;
+import android.os.SystemClock;
 import android.provider.MediaStore;
 import android.provider.Settings;
 import android.util.DisplayMetrics;
 import android.util.Log;
+import android.util.SparseArray;
 import android.util.TypedValue;
 import android.view.Display;
 import android.view.GestureDetector;
@@ -84,29 +91,45 @@ import android.view.animation.ScaleAnimation;
 import android.widget.FrameLayout;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
+import android.widget.Toast;
 
+import com.lightbox.android.camera.BitmapPool;
+import com.lightbox.android.camera.BurstCaptureStats;
 import com.lightbox.android.camera.CameraApplication;
 import com.lightbox.android.camera.CameraApplication.OrientationChangeListener;
+import com.lightbox.android.camera.CameraCapabilities;
+import com.lightbox.android.camera.CameraCapabilityRegistry;
 import com.lightbox.android.camera.CameraHardwareException;
 import com.lightbox.android.camera.CameraSettings;
 import com.lightbox.android.camera.ComboPreferences;
 import com.lightbox.android.camera.FocusRectangle;
 import com.lightbox.android.camera.ImageManager;
+import com.lightbox.android.camera.ImageSaver;
 import com.lightbox.android.camera.MenuHelper;
 import com.lightbox.android.camera.NoSearchActivity;
 import com.lightbox.android.camera.OnScreenHint;
+import com.lightbox.android.camera.ParameterSnapshot;
+import com.lightbox.android.camera.ParameterValues;
+import com.lightbox.android.camera.ParameterUpdateScheduler;
 import com.lightbox.android.camera.ParameterUtils;
+import com.lightbox.android.camera.PreferenceGroup;
 import com.lightbox.android.camera.PreviewFrameLayout;
+import com.lightbox.android.camera.PreviewFrameRing;
 import com.lightbox.android.camera.R;
+import com.lightbox.android.camera.SettingsSnapshot;
 import com.lightbox.android.camera.RotateImageView;
 import com.lightbox.android.camera.ShutterButton;
 import com.lightbox.android.camera.Switcher;
 import com.lightbox.android.camera.ThumbnailController;
 import com.lightbox.android.camera.Util;
+import com.lightbox.android.camera.YuvConverter;
+import com.lightbox.android.camera.device.CameraExecutor;
 import com.lightbox.android.camera.device.CameraHolder;
 import com.lightbox.android.camera.ui.CameraHeadUpDisplay;
 import com.lightbox.android.camera.ui.GLRootView;
 import com.lightbox.android.camera.ui.HeadUpDisplay;
+import com.lightbox.android.camera.util.CaptureTracer;
+import com.lightbox.android.camera.util.Profiler;
 
 /** The Camera activity which can preview and take pictures. */
 public class Camera extends NoSearchActivity implements View.OnClickListener,
@@ -119,7 +142,6 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
     public static final int FIRST_TIME_INIT = 2;
     public static final int RESTART_PREVIEW = 3;
     public static final int CLEAR_SCREEN_DELAY = 4;
-    private static final int SET_CAMERA_PARAMETERS_WHEN_IDLE = 5;
 
     // The subset of parameters we need to update in setCameraParameters().
     private static final int UPDATE_PARAM_INITIALIZE = 1;
@@ -127,9 +149,26 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
     public static final int UPDATE_PARAM_PREFERENCE = 4;
     private static final int UPDATE_PARAM_ALL = -1;
 
-    // When setCameraParametersWhenIdle() is called, we accumulate the subsets
-    // needed to be updated in mUpdateSet.
-    private int mUpdateSet;
+    // When setCameraParametersWhenIdle() is called, the subsets needed to be
+    // updated are merged here and applied once the camera is idle.
+    private final ParameterUpdateScheduler mParameterScheduler =
+            new ParameterUpdateScheduler(new ParameterUpdateScheduler.Target() {
+                public boolean isReadyForUpdate() {
+                    return mCameraExecutor.getCamera() != null && mStartPreviewFuture == null
+                            && isCameraIdle();
+                }
+
+                public void applyUpdate(final int updateSet) {
+                    // The parameters belong to the camera thread.
+                    mCameraExecutor.submit(new Runnable() {
+                        public void run() {
+                            if (mParameterSnapshot != null) {
+                                setCameraParameters(updateSet);
+                            }
+                        }
+                    });
+                }
+            }, Looper.getMainLooper());
 
     // The brightness settings used when it is set to automatic in the system.
     // The reason why it is set to 0.7 is just because 1.0 is too bright.
@@ -144,29 +183,47 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
 
     private int mZoomState = ZOOM_STOPPED;
     private boolean mSmoothZoomSupported = false;
-    public int mZoomValue;  // The current zoom value.
+    public volatile int mZoomValue;  // The current zoom value.
     private int mZoomMax;
     private int mTargetZoomValue;
 
+    // These three are only used on the camera thread, which owns the
+    // device. The main thread reads mParameterValues instead.
     public Parameters mParameters;
     public Parameters mInitialParams;
+    // Our view of the parameters of the camera, made when it is opened.
+    public ParameterSnapshot mParameterSnapshot;
+    // What the driver held after the last parameter update, published by the
+    // camera thread.
+    public volatile ParameterValues mParameterValues;
+    // What the open camera supports, from CameraCapabilityRegistry.
+    public volatile CameraCapabilities mCapabilities;
 
     // The device orientation in degrees. Default is unknown.
     private int mOrientation = OrientationEventListener.ORIENTATION_UNKNOWN;
     // The orientation compensation for icons and thumbnails.
     public int mOrientationCompensation = 0;
     public ComboPreferences mPreferences;
+    // The HUD preferences of each camera, filtered by what it supports.
+    public final SparseArray<PreferenceGroup> mPreferenceGroups =
+            new SparseArray<PreferenceGroup>();
 
     private static final int IDLE = 1;
     public static final int SNAPSHOT_IN_PROGRESS = 2;
 
+    // A burst stops after this many pictures.
+    private static final int BURST_MAX_PICTURES = 30;
+
+    // A burst stops when less heap is left than this many times the size of
+    // the last JPEG.
+    private static final int BURST_HEAP_MARGIN = ImageSaver.QUEUE_LIMIT + 2;
+
     private static final boolean SWITCH_CAMERA = true;
     private static final boolean SWITCH_VIDEO = false;
 
     public int mStatus = IDLE;
     private static final String sTempCropFilename = "crop-temp";
 
-    public android.hardware.Camera mCameraDevice;
     private ContentProviderClient mMediaProviderClient;
     public SurfaceView mSurfaceView;
     private SurfaceHolder mSurfaceHolder = null;
@@ -175,6 +232,13 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
     private ToneGenerator mFocusToneGenerator;
     private GestureDetector mGestureDetector;
     private boolean mStartPreviewFail = false;
+    // Opens, configures, starts and releases the camera, off the main thread.
+    private final CameraExecutor mCameraExecutor = CameraExecutor.instance();
+    // Non-null while the camera thread is starting the preview.
+    private Future<Void> mStartPreviewFuture;
+    // Whether to run the first or second time initialization once the
+    // pending preview start is done.
+    private boolean mInitializeAfterStart;
 
     public GLRootView mGLRootView;
 
@@ -190,9 +254,11 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
     public Uri mSaveUri;
 
     public ImageCapture mImageCapture = null;
+    private ImageSaver mImageSaver;
 
     public boolean mPreviewing;
-    public boolean mPausing;
+    // Read by the commands on the camera thread.
+    public volatile boolean mPausing;
     public boolean mFirstTimeInitialized;
     public boolean mIsImageCaptureIntent;
 
@@ -239,8 +305,9 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
     public static boolean mMediaServerDied = false;
 
     // Focus mode. Options are pref_camera_focusmode_entryvalues.
-    public String mFocusMode;
-    public String mSceneMode;
+    // Set by the parameter updates on the camera thread.
+    public volatile String mFocusMode;
+    public volatile String mSceneMode;
 
     public final Handler mHandler = new MainHandler();
     public CameraHeadUpDisplay mHeadUpDisplay;
@@ -284,17 +351,12 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
                     break;
                 }
 
-                case SET_CAMERA_PARAMETERS_WHEN_IDLE: {
-                    setCameraParametersWhenIdle(0);
-                    break;
-                }
             }
         }
     }
 
     public void resetExposureCompensation() {
-        String value = mPreferences.getString(CameraSettings.KEY_EXPOSURE,
-                CameraSettings.EXPOSURE_DEFAULT_VALUE);
+        String value = mPreferences.getSnapshot().getExposure();
         if (!CameraSettings.EXPOSURE_DEFAULT_VALUE.equals(value)) {
             Editor editor = mPreferences.edit();
             editor.putString(CameraSettings.KEY_EXPOSURE, "0");
@@ -424,15 +486,14 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
         mSmoothZoomSupported = mFocusRectangle.isSmoothZoomSupported(this);
         mGestureDetector = new GestureDetector(this, new ZoomGestureListener());
 
-        mCameraDevice.setZoomChangeListener(mZoomListener);
+        mCameraExecutor.setZoomChangeListener(mZoomListener);
     }
 
     public static final String KEY_ZOOM_SUPPORTED = "zoom-supported";
     public static final String KEY_SMOOTH_ZOOM_SUPPORTED = "smooth-zoom-supported";
-    private static final String KEY_MAX_ZOOM = "max-zoom";
     public static final String TRUE = "true";
     public int getMaxZoom() {
-        return mParameters.getInt(KEY_MAX_ZOOM);
+        return mCapabilities.getMaxZoom();
     }
     
     public void onZoomValueChanged(int index) {
@@ -441,11 +502,11 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
                 mTargetZoomValue = index;
                 if (mZoomState == ZOOM_START) {
                     mZoomState = ZOOM_STOPPING;
-                    mCameraDevice.stopSmoothZoom();
+                    mCameraExecutor.stopSmoothZoom();
                 }
             } else if (mZoomState == ZOOM_STOPPED && mZoomValue != index) {
                 mTargetZoomValue = index;
-                mCameraDevice.startSmoothZoom(index);
+                mCameraExecutor.startSmoothZoom(index);
                 mZoomState = ZOOM_START;
             }
         } else {
@@ -454,6 +515,15 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
         }
     }
 
+    /** Starts autofocus; the callback arrives on the main thread. */
+    public void startAutoFocus() {
+        mCameraExecutor.autoFocus(mAutoFocusCallback);
+    }
+
+    public void cancelAutoFocus() {
+        mCameraExecutor.cancelAutoFocus();
+    }
+
     private class ZoomGestureListener extends
             GestureDetector.SimpleOnGestureListener {
 
@@ -509,6 +579,7 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
             implements android.hardware.Camera.ShutterCallback {
         public void onShutter() {
             mShutterCallbackTime = System.currentTimeMillis();
+            CaptureTracer.record(mTraceShot, CaptureTracer.STAGE_SHUTTER);
             mShutterLag = mShutterCallbackTime - mCaptureStartTime;
             Log.v(TAG, "mShutterLag = " + mShutterLag + "ms");
             clearFocusState();
@@ -519,6 +590,7 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
         public void onPictureTaken(
                 byte [] data, android.hardware.Camera camera) {
             mPostViewPictureCallbackTime = System.currentTimeMillis();
+            CaptureTracer.record(mTraceShot, CaptureTracer.STAGE_POSTVIEW);
             Log.v(TAG, "mShutterToPostViewCallbackTime = "
                     + (mPostViewPictureCallbackTime - mShutterCallbackTime)
                     + "ms");
@@ -529,6 +601,7 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
         public void onPictureTaken(
                 byte [] rawData, android.hardware.Camera camera) {
             mRawPictureCallbackTime = System.currentTimeMillis();
+            CaptureTracer.record(mTraceShot, CaptureTracer.STAGE_RAW);
             Log.v(TAG, "mShutterToRawCallbackTime = "
                     + (mRawPictureCallbackTime - mShutterCallbackTime) + "ms");
         }
@@ -548,9 +621,10 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
             if (mPausing) {
                 return;
             }
+            long section = Profiler.begin();
 
-        	
             mJpegPictureCallbackTime = System.currentTimeMillis();
+            CaptureTracer.record(mTraceShot, CaptureTracer.STAGE_JPEG);
             
             // If postview callback has arrived, the captured image is displayed
             // in postview callback. If not, the captured image is displayed in
@@ -568,9 +642,16 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
             }
             Log.v(TAG, "mPictureDisplayedToJpegCallbackTime = "
                     + mPictureDisplayedToJpegCallbackTime + "ms");
-            mHeadUpDisplay.mSharedPrefs.setEnabled(mHeadUpDisplay, true);
+            boolean bursting = mImageCapture.isBursting();
+            if (!bursting) {
+                mHeadUpDisplay.mSharedPrefs.setEnabled(mHeadUpDisplay, true);
+            }
 
-            if (!mIsImageCaptureIntent) {
+            if (bursting) {
+                // The next shot of the burst needs the preview, so bring it
+                // back right away instead of showing the picture.
+                mImageCapture.resumeBurstPreview();
+            } else if (!mIsImageCaptureIntent) {
                 // We want to show the taken picture for a while, so we wait
                 // for at least 1.2 second before restarting the preview.
                 long delay = ((CameraHolder.instance().isFrontFacing(mCameraId)) ? 1200 : 400) - mPictureDisplayedToJpegCallbackTime;
@@ -601,6 +682,7 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
             }
             
             if (mIsImageCaptureIntent) {
+            	CaptureTracer.endShot(mTraceShot);
             	doAttach();
             }
             
@@ -608,10 +690,28 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
             	Log.d(TAG, "BUG: updating after capture");
             	mThumbController.updateDisplayIfNeeded(0);
             }
+
+            if (bursting) {
+                mImageCapture.continueBurst(jpegData.length);
+            }
+            Profiler.end(Profiler.SECTION_JPEG, section);
         }
     }
 
     private byte[] mPreviewData;
+
+    // The number of recent preview frames kept for zero shutter lag.
+    private static final int PREVIEW_FRAME_HISTORY = 3;
+
+    // Null if preview callback buffers are not supported.
+    private PreviewFrameRing mPreviewFrameRing;
+
+    // Uptime of the last shutter press; the zero shutter lag mode saves the
+    // preview frame closest to it.
+    private long mShutterDownTime;
+
+    // The CaptureTracer shot of the picture being taken.
+    public int mTraceShot = CaptureTracer.NO_SHOT;
     private final class PreviewFrameCallback implements PreviewCallback {
     	public PreviewFrameCallback() {}
     	
@@ -619,19 +719,26 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
 		public void onPreviewFrame(byte[] data, android.hardware.Camera camera) {
 			Log.d(TAG, "onPreviewFrame");
 			
-            mImageCapture.capture();
-            if (!isPreviewAnimationDisable()) {
-            	animatePreviewToThumb(data);
-            }
+            captureWithPreviewFrame(data);
 		}
     	
     }
+
+    // Takes the picture, and animates the given preview frame to the
+    // thumbnail.
+    private void captureWithPreviewFrame(byte[] data) {
+        mImageCapture.capture();
+        if (!isPreviewAnimationDisable()) {
+        	animatePreviewToThumb(data);
+        }
+    }
     
     private final class AutoFocusCallback
             implements android.hardware.Camera.AutoFocusCallback {
         public void onAutoFocus(
                 boolean focused, android.hardware.Camera camera) {
             mFocusCallbackTime = System.currentTimeMillis();
+            CaptureTracer.record(mTraceShot, CaptureTracer.STAGE_FOCUS_END);
             mAutoFocusTime = mFocusCallbackTime - mFocusStartTime;
             Log.v(TAG, "mAutoFocusTime = " + mAutoFocusTime + "ms");
             if (mFocusState == FOCUSING_SNAP_ON_FINISH) {
@@ -676,24 +783,40 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
         }
     }
 
+    // Runs on the camera thread, which owns the parameters, and passes the
+    // zoom state on to the main thread.
     private final class ZoomListener
             implements android.hardware.Camera.OnZoomChangeListener {
-        public void onZoomChange(
-                int value, boolean stopped, android.hardware.Camera camera) {
+        public void onZoomChange(final int value, final boolean stopped,
+                android.hardware.Camera camera) {
             Log.v(TAG, "Zoom changed: value=" + value + ". stopped="+ stopped);
-            mZoomValue = value;
+            ParameterSnapshot snapshot = mParameterSnapshot;
+            if (camera != mCameraExecutor.getCamera() || snapshot == null) return;
             // Keep mParameters up to date. We do not getParameter again in
             // takePicture. If we do not do this, wrong zoom value will be set.
-            mParameters.setZoom(value);
-            // We only care if the zoom is stopped. mZooming is set to true when
-            // we start smooth zoom.
-            if (stopped && mZoomState != ZOOM_STOPPED) {
-                if (value != mTargetZoomValue) {
-                    mCameraDevice.startSmoothZoom(mTargetZoomValue);
-                    mZoomState = ZOOM_START;
-                } else {
-                    mZoomState = ZOOM_STOPPED;
+            snapshot.getParameters().setZoom(value);
+            snapshot.markClean(ParameterSnapshot.KEY_ZOOM);
+            mHandler.post(new Runnable() {
+                public void run() {
+                    onZoomChanged(value, stopped);
                 }
+            });
+        }
+    }
+
+    private void onZoomChanged(int value, boolean stopped) {
+        // Posted from the camera thread, so this may arrive after the camera
+        // was closed.
+        if (mPausing || mCameraExecutor.getCamera() == null) return;
+        mZoomValue = value;
+        // We only care if the zoom is stopped. mZooming is set to true when
+        // we start smooth zoom.
+        if (stopped && mZoomState != ZOOM_STOPPED) {
+            if (value != mTargetZoomValue) {
+                mCameraExecutor.startSmoothZoom(mTargetZoomValue);
+                mZoomState = ZOOM_START;
+            } else {
+                mZoomState = ZOOM_STOPPED;
             }
         }
     }
@@ -704,59 +827,118 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
 
         byte[] mCaptureOnlyData;
 
-        // Returns the rotation degree in the jpeg header.
-        private int storeImage(byte[] data) {
-            try {
-                long dateTaken = System.currentTimeMillis();
-                String title = createName(dateTaken);
-                String filename = title + ".jpg";
-                int[] degree = new int[1];
-                mLastContentUri = ImageManager.addImage(
-                        mContentResolver,
-                        title,
-                        dateTaken,
-                        null, // location from gps/network
-                        ImageManager.CAMERA_IMAGE_BUCKET_NAME, filename,
-                        null, data,
-                        degree);
-                return degree[0];
-            } catch (Exception ex) {
-                Log.e(TAG, "Exception while compressing image.", ex);
-                return 0;
-            }
-        }
+        // Pictures taken within the same second get the same name from
+        // createName(), so later ones are given a numeric suffix.
+        private String mLastTitle;
+        private int mTitleSuffix;
 
-        public int storeImage(final byte[] data,
+        // Non-null while a burst is running.
+        private BurstCaptureStats mBurst;
+        private String mBurstStopReason;
+        private boolean mBurstWaitingForSaver;
+
+        public void storeImage(final byte[] data,
                 android.hardware.Camera camera) {
             if (!mIsImageCaptureIntent) {
-                int degree = storeImage(data);
-                sendBroadcast(new Intent(
-                        "com.android.camera.NEW_PICTURE", mLastContentUri));
-                if (isPreviewAnimationDisable()) {
-                	setLastPictureThumb(data, degree,
-                            mImageCapture.getLastCaptureUri());
-                	mThumbController.updateDisplayIfNeeded(500);
-                } else {
-                	mThumbController.setUri(mImageCapture.getLastCaptureUri());
-                }
-                return degree;
+                // The file and the media store entry are written by
+                // mImageSaver; the thumbnail and broadcast are updated in
+                // onImageSaved() once it is done.
+                long dateTaken = System.currentTimeMillis();
+                mImageSaver.addImage(data, createUniqueName(dateTaken), dateTaken,
+                        null, // location from gps/network
+                        isPreviewAnimationDisable(), -1, mTraceShot);
             } else {
                 mCaptureOnlyData = data;
                 //showPostCaptureAlert();
             }
-            return 0;
+        }
+
+        private String createUniqueName(long dateTaken) {
+            String title = createName(dateTaken);
+            if (title.equals(mLastTitle)) {
+                return title + "_" + (++mTitleSuffix);
+            }
+            mLastTitle = title;
+            mTitleSuffix = 0;
+            return title;
         }
 
         /**
          * Initiate the capture of an image.
          */
         public void initiate() {
-            if (mCameraDevice == null) {
+            if (mCameraExecutor.getCamera() == null) {
                 return;
             }
 
         	mDoAnimation = true;
-            mCameraDevice.setOneShotPreviewCallback(mPreviewFrameCallback);
+        	PreviewFrameRing ring = mPreviewFrameRing;
+        	byte[] frame = (ring != null)
+        	        ? ring.acquireFrame(SystemClock.uptimeMillis())
+        	        : null;
+        	if (frame != null) {
+        	    // A recent frame has already arrived; no need to wait for
+        	    // the next one. Acquired, so the camera thread does not hand
+        	    // it back to the camera while it is decoded.
+        	    try {
+        	        captureWithPreviewFrame(frame);
+        	    } finally {
+        	        ring.releaseFrame(frame);
+        	    }
+        	} else {
+        	    mCameraExecutor.setOneShotPreviewCallback(mPreviewFrameCallback);
+        	}
+        }
+
+        /**
+         * Saves the preview frame which arrived closest to the shutter press
+         * instead of taking a picture. Returns false if there is no usable
+         * frame, in which case a picture should be taken as usual.
+         */
+        private boolean captureFromPreviewFrame() {
+            PreviewFrameRing ring = mPreviewFrameRing;
+            // YuvImage only takes NV21 and YUY2; we only ask for NV21.
+            if (ring == null || ring.getPreviewFormat() != ImageFormat.NV21) {
+                return false;
+            }
+            long pressTime = (mShutterDownTime != 0)
+                    ? mShutterDownTime
+                    : SystemClock.uptimeMillis();
+            byte[] frame = ring.acquireFrame(pressTime);
+            if (frame == null) return false;
+            beginTraceShotIfNeeded();
+
+            byte[] jpeg;
+            try {
+                int width = ring.getWidth();
+                int height = ring.getHeight();
+                YuvImage image = new YuvImage(
+                        frame, ImageFormat.NV21, width, height, null);
+                ByteArrayOutputStream out =
+                        new ByteArrayOutputStream(frame.length / 4);
+                if (!image.compressToJpeg(new Rect(0, 0, width, height),
+                        CameraApplication.JPEG_HIGH_QUALITY, out)) {
+                    return false;
+                }
+                jpeg = out.toByteArray();
+
+                if (!isPreviewAnimationDisable()) {
+                    mDoAnimation = true;
+                    animatePreviewToThumb(frame);
+                }
+            } finally {
+                ring.releaseFrame(frame);
+            }
+
+            long dateTaken = System.currentTimeMillis();
+            mImageSaver.addImage(jpeg, createUniqueName(dateTaken), dateTaken,
+                    null, // location from gps/network
+                    isPreviewAnimationDisable(), getJpegRotation(), mTraceShot);
+            calculatePicturesRemaining();
+            if (mPicturesRemaining < 1) {
+                updateStorageHint(mPicturesRemaining);
+            }
+            return true;
         }
 
         public Uri getLastCaptureUri() {
@@ -767,11 +949,18 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
             return mCaptureOnlyData;
         }
 
-        private void capture() {
-            mCaptureOnlyData = null;
-            
-            // See android.hardware.Camera.Parameters.setRotation for
-            // documentation.
+        // Shots are normally started when the shutter is pressed, but burst
+        // shots after the first one are started here.
+        private void beginTraceShotIfNeeded() {
+            if (!CaptureTracer.isPending(mTraceShot)) {
+                mTraceShot = CaptureTracer.beginShot();
+            }
+            CaptureTracer.record(mTraceShot, CaptureTracer.STAGE_CAPTURE);
+        }
+
+        // See android.hardware.Camera.Parameters.setRotation for
+        // documentation.
+        private int getJpegRotation() {
             int rotation = 0;
             if (mOrientation != OrientationEventListener.ORIENTATION_UNKNOWN) {
             	CameraHolder holder = CameraHolder.instance();
@@ -781,28 +970,61 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
             		rotation = (holder.getCameraOrientation(mCameraId, mOrientation) + mOrientation) % 360;
             	}
             }
-            mParameters.setRotation(rotation);
-
-            // Clear previous GPS location from the parameters.
-            mParameters.removeGpsData();
-
-            // We always encode GpsTimeStamp
-            mParameters.setGpsTimestamp(System.currentTimeMillis() / 1000);
+            return rotation;
+        }
 
-            mCameraDevice.setParameters(mParameters);
+        private void capture() {
+            mCaptureOnlyData = null;
+            final int rotation = getJpegRotation();
+            final long gpsTimestamp = System.currentTimeMillis() / 1000;
             
             if (isSoundFXDisabled()) {
             	mAudioManager.setStreamMute(AudioManager.STREAM_SYSTEM, true);
             }
 
-            mCameraDevice.takePicture(mShutterCallback, mRawPictureCallback,
+            if (mBurst != null) {
+                mBurst.onPictureRequested();
+            }
+            beginTraceShotIfNeeded();
+            long section = Profiler.begin();
+            // The parameters belong to the camera thread, so they are set
+            // there, just before the picture is taken.
+            Runnable setUp = new Runnable() {
+                public void run() {
+                    if (mParameterSnapshot == null) return;
+                    mParameters.setRotation(rotation);
+
+                    // Clear previous GPS location from the parameters.
+                    mParameters.removeGpsData();
+
+                    // We always encode GpsTimeStamp
+                    mParameters.setGpsTimestamp(gpsTimestamp);
+
+                    try {
+                        mParameterSnapshot.commit();
+                    } catch (IllegalArgumentException e) {
+                        mParameters = mParameterSnapshot.revert();
+                        Log.w(TAG, e);
+                    }
+                }
+            };
+            mCameraExecutor.takePicture(setUp, mShutterCallback, mRawPictureCallback,
                     mPostViewPictureCallback, new JpegPictureCallback());
             mPreviewing = false;
+            Profiler.end(Profiler.SECTION_CAPTURE, section);
         }
 
         public void onSnap() {
             // If we are already in the middle of taking a snapshot then ignore.
-            if (mPausing || mStatus == SNAPSHOT_IN_PROGRESS) {
+            if (mPausing || mStatus == SNAPSHOT_IN_PROGRESS || mBurst != null) {
+                return;
+            }
+            // Or if the save queue has no room for another picture.
+            if (mImageSaver != null && mImageSaver.isFull()) {
+                return;
+            }
+            if (!mIsImageCaptureIntent && isZeroShutterLagEnabled()
+                    && !isBurstModeEnabled() && captureFromPreviewFrame()) {
                 return;
             }
             mCaptureStartTime = System.currentTimeMillis();
@@ -810,32 +1032,158 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
             mHeadUpDisplay.mSharedPrefs.setEnabled(mHeadUpDisplay, false);
             mStatus = SNAPSHOT_IN_PROGRESS;
 
+            if (!mIsImageCaptureIntent && isBurstModeEnabled()) {
+                mBurst = new BurstCaptureStats();
+                mBurstStopReason = null;
+                mBurstWaitingForSaver = false;
+            }
             mImageCapture.initiate();
         }
 
+        public boolean isBursting() {
+            return mBurst != null;
+        }
+
+        /**
+         * Asks the running burst to stop. If a picture is being taken, the
+         * burst ends when its JPEG arrives.
+         */
+        public void stopBurst(String reason) {
+            if (mBurst == null) return;
+            if (mBurstStopReason == null) {
+                mBurstStopReason = reason;
+            }
+            if (mBurstWaitingForSaver) {
+                finishBurst();
+            }
+        }
+
+        // Restarts the preview between two shots of a burst. The parameters
+        // have not changed since the previous shot, so unlike startPreview()
+        // this does not set them again. The next shot is queued behind it,
+        // so the preview counts as started until the camera thread fails.
+        private void resumeBurstPreview() {
+            mPreviewing = true;
+            mCameraExecutor.startPreview(mAttachPreviewFrameRing,
+                    new CameraExecutor.Listener<Void>() {
+                public void onDone(Future<Void> future) {
+                    try {
+                        future.get();
+                    } catch (Exception ex) {
+                        Log.e(TAG, "startPreview failed during burst", ex);
+                        mPreviewing = false;
+                    }
+                }
+            });
+        }
+
+        // Called after each JPEG of a burst has been queued for saving.
+        private void continueBurst(int jpegLength) {
+            mBurst.onPictureTaken();
+            if (!mPreviewing) {
+                stopBurst("preview");
+            } else if (mBurst.getCount() >= BURST_MAX_PICTURES) {
+                stopBurst("limit");
+            } else if (mPicturesRemaining <= mImageSaver.getPendingCount()) {
+                // The pending pictures are not on the card yet.
+                stopBurst("storage");
+            } else if (getAvailableHeap() < (long) BURST_HEAP_MARGIN * jpegLength) {
+                stopBurst("memory");
+            }
+
+            if (mBurstStopReason != null) {
+                finishBurst();
+            } else if (mImageSaver.isFull()) {
+                // Resumed by onSaverReady().
+                mBurstWaitingForSaver = true;
+            } else {
+                capture();
+            }
+        }
+
+        // Called when the save queue has room again.
+        private void onSaverReady() {
+            if (mBurst == null || !mBurstWaitingForSaver) return;
+            mBurstWaitingForSaver = false;
+            capture();
+        }
+
+        private void finishBurst() {
+            BurstCaptureStats burst = mBurst;
+            mBurst = null;
+            mBurstWaitingForSaver = false;
+            burst.log(mBurstStopReason);
+            if (mPausing) return;
+
+            if (mPreviewing) {
+                mStatus = IDLE;
+                mParameterScheduler.notifyIdle();
+            } else {
+                restartPreview();
+            }
+            mHeadUpDisplay.mSharedPrefs.setEnabled(mHeadUpDisplay, true);
+            mShutterButton.setEnabled(!mImageSaver.isFull());
+            Toast.makeText(Camera.this, getString(R.string.burst_finished,
+                    burst.getCount(), burst.getFramesPerSecond()),
+                    Toast.LENGTH_SHORT).show();
+        }
+
         private void clearLastData() {
             mCaptureOnlyData = null;
         }
     }
     
     public boolean isSoundFXDisabled() {
-		SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
-		return prefs.getBoolean("disable_shutter_sound", true);
+		return mPreferences.getSnapshot().isShutterSoundDisabled();
 	}
 
+    public boolean isZeroShutterLagEnabled() {
+		return mPreferences.getSnapshot().isZeroShutterLagEnabled();
+    }
+
+    public boolean isBurstModeEnabled() {
+		return mPreferences.getSnapshot().isBurstModeEnabled();
+    }
+
+    private static long getAvailableHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+    }
+
     public boolean isPreviewAnimationDisable() {
-    	SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
-		return prefs.getBoolean("disable_preview_animation", true);
+		return mPreferences.getSnapshot().isPreviewAnimationDisabled();
     }
     
-    private void setLastPictureThumb(byte[] data, int degree, Uri uri) {
-        BitmapFactory.Options options = new BitmapFactory.Options();
-        options.inSampleSize = 16;
-        Bitmap lastPictureThumb =
-                BitmapFactory.decodeByteArray(data, 0, data.length, options);
-        lastPictureThumb = Util.rotate(lastPictureThumb, degree);
-        mThumbController.setData(uri, lastPictureThumb);
-    }
+    private final ImageSaver.Listener mImageSaverListener =
+            new ImageSaver.Listener() {
+        public void onImageSaved(Uri uri, Bitmap thumbnail) {
+            if (uri == null) return;
+            if (mImageCapture != null) {
+                mImageCapture.mLastContentUri = uri;
+            }
+            sendBroadcast(new Intent("com.android.camera.NEW_PICTURE", uri));
+            if (thumbnail != null) {
+                mThumbController.setData(uri, thumbnail);
+                mThumbController.updateDisplayIfNeeded(500);
+                if (thumbnail != mThumbController.getThumb()) {
+                    BitmapPool.instance().put(thumbnail);
+                }
+            } else {
+                mThumbController.setUri(uri);
+            }
+        }
+
+        public void onQueueFullChanged(boolean full) {
+            if (mImageCapture != null && mImageCapture.isBursting()) {
+                // Keep the shutter button enabled so the burst can be
+                // stopped; the burst itself waits for the saver.
+                if (!full) mImageCapture.onSaverReady();
+                return;
+            }
+            // Do not take more pictures until the saver catches up.
+            mShutterButton.setEnabled(!full);
+        }
+    };
 
     private String createName(long dateTaken) {
         Date date = new Date(dateTaken);
@@ -847,8 +1195,8 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
 
     @Override
     public void onCreate(Bundle icicle) {
-    	Debug.startMethodTracing("/mnt/sdcard/traces/appName", 500000000);
         super.onCreate(icicle);
+        Profiler.startIfEnabled(this, getIntent());
         setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_PORTRAIT);
         
         mAudioManager = (AudioManager) getSystemService(AUDIO_SERVICE);
@@ -866,26 +1214,17 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
 
         // we need to reset exposure for the preview
         resetExposureCompensation();
+
+        if (PreviewFrameRing.isSupported()) {
+            mPreviewFrameRing = new PreviewFrameRing(PREVIEW_FRAME_HISTORY);
+        }
         /*
-         * To reduce startup time, we start the preview in another thread.
-         * We make sure the preview is started at the end of onCreate.
+         * To reduce startup time, we start the preview on the camera thread
+         * and do not wait for it. onPreviewStarted() shows the error and
+         * finishes if the camera cannot be opened.
          */
-        Thread startPreviewThread = new Thread(new Runnable() {
-            public void run() {
-                try {
-                    mStartPreviewFail = false;
-                    startPreview();
-                } catch (CameraHardwareException e) {
-                    // In eng build, we throw the exception so that test tool
-                    // can detect it and report it
-                    if ("eng".equals(Build.TYPE)) {
-                        throw new RuntimeException(e);
-                    }
-                    mStartPreviewFail = true;
-                }
-            }
-        });
-        startPreviewThread.start();
+        mStartPreviewFail = false;
+        restartPreview();
 
         // don't set mSurfaceHolder here. We have it set ONLY within
         // surfaceChanged / surfaceDestroyed, other parts of the code
@@ -914,17 +1253,6 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
             //mSwitcher.setOnSwitchListener(this);
             //mSwitcher.addTouchView(findViewById(R.id.camera_switch_set));
         //}
-
-        // Make sure preview is started.
-        try {
-            startPreviewThread.join();
-            if (mStartPreviewFail) {
-                showCameraErrorAndFinish();
-                return;
-            }
-        } catch (InterruptedException ex) {
-            // ignore
-        }
     }
 
     public void changeHeadUpDisplayState() {
@@ -934,24 +1262,34 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
         // we delayed initialization of HeadUpDisplay until the orientation
         // becomes landscape.
         Configuration config = getResources().getConfiguration();
-        if (config.orientation == Configuration.ORIENTATION_PORTRAIT
-                && !mPausing && mFirstTimeInitialized) {
-            if (mGLRootView == null) attachHeadUpDisplay();
+        boolean portrait = config.orientation == Configuration.ORIENTATION_PORTRAIT;
+        if (portrait && mPausing && mGLRootView != null) {
+            // Keep the view, and its GL context where the platform allows it,
+            // so the HUD textures need not be uploaded again on resume.
+            mHeadUpDisplay.collapse();
+            mGLRootView.onPause();
+        } else if (portrait && mFirstTimeInitialized) {
+            if (mGLRootView == null) {
+                attachHeadUpDisplay();
+            } else if (mGLRootView.isPaused()) {
+                mGLRootView.onResume();
+            }
         } else if (mGLRootView != null) {
             mFocusRectangle.detachHeadUpDisplay(this);
         }
     }
 
     public void initControlButtons() {
-    	String flashMode = mParameters.getFlashMode();
-    	List<String> supportedFlashModes = mParameters.getSupportedFlashModes();
+    	ParameterValues values = mParameterValues;
+    	String flashMode = (values != null) ? values.getFlashMode() : null;
+    	List<String> supportedFlashModes =
+    	        (values != null) ? values.getSupportedFlashModes() : null;
     	if (mFlashButton == null) {
     		mFlashButton = (RotateImageView)findViewById(R.id.btn_flash);
     	}
         if (flashMode == null || supportedFlashModes == null) {
         	mFlashButton.setVisibility(View.GONE);
         } else if (supportedFlashModes.size() == 1) {
-        	mParameters.setFlashMode(supportedFlashModes.get(0));
         	mFlashButton.setVisibility(View.GONE);
         } else {
         	mFlashButton.setVisibility(View.VISIBLE);
@@ -1050,7 +1388,7 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
 
     @Override
     public void onStop() {
-    	Debug.stopMethodTracing();
+        Profiler.stop();
         super.onStop();
         if (mMediaProviderClient != null) {
             mMediaProviderClient.release();
@@ -1152,6 +1490,10 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
         }
         switch (button.getId()) {
             case R.id.shutter_button:
+                if (pressed && !mImageCapture.isBursting()) {
+                    mShutterDownTime = SystemClock.uptimeMillis();
+                    mTraceShot = CaptureTracer.beginShot();
+                }
                 mThumbController.doFocus(this, pressed);
                 break;
         }
@@ -1163,7 +1505,11 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
         }
         switch (button.getId()) {
             case R.id.shutter_button:
-                mHeadUpDisplay.doSnap(this);
+                if (mImageCapture.isBursting()) {
+                    mImageCapture.stopBurst("user");
+                } else {
+                    mHeadUpDisplay.doSnap(this);
+                }
                 break;
         }
     }
@@ -1245,25 +1591,25 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
         super.onResume();
         ((CameraApplication)getApplication()).requestLocationUpdate(false);
         
+        // The profiler preference may have changed in the settings.
+        Profiler.startIfEnabled(this, getIntent());
+
         mPausing = false;
         mJpegPictureCallbackTime = 0;
         mZoomValue = 0;
         mImageCapture = new ImageCapture();
+        mImageSaver = new ImageSaver(getContentResolver(), mImageSaverListener);
 
         // Start the preview if it is not started.
-        if (!mPreviewing && !mStartPreviewFail) {
+        if (!mPreviewing && !mStartPreviewFail && mStartPreviewFuture == null) {
             resetExposureCompensation();
-            if (!restartPreview()) return;
+            restartPreview();
         }
 
-        if (mSurfaceHolder != null) {
-            // If first time initialization is not finished, put it in the
-            // message queue.
-            if (!mFirstTimeInitialized) {
-                mHandler.sendEmptyMessage(FIRST_TIME_INIT);
-            } else {
-                mPreferences.initializeSecondTime(this);
-            }
+        if (mStartPreviewFuture != null) {
+            mInitializeAfterStart = true;
+        } else {
+            initializeIfSurfaceReady();
         }
         keepScreenOnAwhile();
     }
@@ -1274,6 +1620,12 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
         changeHeadUpDisplayState();
     }
 
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        if (mGLRootView != null) mGLRootView.onLowMemory();
+    }
+
     private static ImageManager.DataLocation dataLocation() {
         return ImageManager.DataLocation.EXTERNAL;
     }
@@ -1285,11 +1637,32 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
         mAudioManager.setStreamMute(AudioManager.STREAM_SYSTEM, false);
         
         stopPreview();
-        // Close the camera now because other activities may need to use it.
+        // Close the camera now because other activities may need to use it,
+        // and wait for the camera thread to release it. The release is
+        // queued behind any preview start, so it also closes a camera which
+        // that start opens after this point.
         mHeadUpDisplay.closeCamera(this);
+        mStartPreviewFuture = null;
+        mInitializeAfterStart = false;
+        mCameraExecutor.waitDone();
+        if (mPreviewFrameRing != null) {
+            // Already detached by the release.
+            mPreviewFrameRing.release();
+        }
+        mParameterScheduler.cancel();
+        Log.v(TAG, "onPause: " + mParameterScheduler);
         mGLRootView.resetScreenOn(this);
         changeHeadUpDisplayState();
 
+        // Let the pending pictures reach storage before the thumbnail is
+        // saved below.
+        if (mImageSaver != null) {
+            mImageSaver.finish();
+            mImageSaver = null;
+        }
+        Log.v(TAG, "onPause: " + BitmapPool.instance());
+        BitmapPool.instance().clear();
+
         if (mFirstTimeInitialized) {
             if (!mIsImageCaptureIntent) {
             	String lastPhotoThumbPath = getLastPhotoThumbPath();
@@ -1315,6 +1688,12 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
             mStorageHint = null;
         }
 
+        // A burst cannot go on without the camera.
+        mImageCapture.stopBurst("pause");
+        if (mImageCapture.isBursting()) {
+            mImageCapture.finishBurst();
+        }
+
         // If we are in an image capture intent and has taken
         // a picture, we just clear it in onPause.
         mImageCapture.clearLastData();
@@ -1350,6 +1729,7 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
     public void clearFocusState() {
         mFocusState = FOCUS_NOT_STARTED;
         updateFocusIndicator();
+        mParameterScheduler.notifyIdle();
     }
 
     public void updateFocusIndicator() {
@@ -1387,7 +1767,13 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
                 return true;
             case KeyEvent.KEYCODE_CAMERA:
                 if (mFirstTimeInitialized && event.getRepeatCount() == 0) {
-                    mHeadUpDisplay.doSnap(this);
+                    mShutterDownTime = event.getDownTime();
+                    if (mImageCapture.isBursting()) {
+                        mImageCapture.stopBurst("user");
+                    } else {
+                        mTraceShot = CaptureTracer.beginShot();
+                        mHeadUpDisplay.doSnap(this);
+                    }
                 }
                 return true;
             case KeyEvent.KEYCODE_DPAD_CENTER:
@@ -1430,15 +1816,24 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
             return;
         }
 
-        // We need to save the holder for later use, even when the mCameraDevice
-        // is null. This could happen if onResume() is invoked after this
+        // We need to save the holder for later use, even when the camera is
+        // closed. This could happen if onResume() is invoked after this
         // function.
         mSurfaceHolder = holder;
 
-        // The mCameraDevice will be null if it fails to connect to the camera
+        if (mStartPreviewFuture != null) {
+            // The camera thread is still starting the preview, maybe without
+            // a surface. Give it this one after that, and initialize once the
+            // preview has started.
+            setPreviewDisplayAsync(holder);
+            mInitializeAfterStart = true;
+            return;
+        }
+
+        // The camera will be closed if it fails to connect to the camera
         // hardware. In this case we will show a dialog and then finish the
         // activity, so it's OK to ignore it.
-        if (mCameraDevice == null) return;
+        if (mCameraExecutor.getCamera() == null) return;
 
         // Sometimes surfaceChanged is called after onPause or before onResume.
         // Ignore it.
@@ -1448,7 +1843,7 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
             // Set preview display if the surface is being created and preview
             // was already started. That means preview display was set to null
             // and we need to set it now.
-            setPreviewDisplay(holder);
+            setPreviewDisplayAsync(holder);
         } else {
             // 1. Restart the preview if the size of surface was changed. The
             // framework may not support changing preview display on the fly.
@@ -1462,6 +1857,14 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
         // If first time initialization is not finished, send a message to do
         // it later. We want to finish surfaceChanged as soon as possible to let
         // user see preview first.
+        initializeIfSurfaceReady();
+    }
+
+    // Runs the first or second time initialization if there is a surface.
+    private void initializeIfSurfaceReady() {
+        if (mSurfaceHolder == null) return;
+        // If first time initialization is not finished, put it in the
+        // message queue.
         if (!mFirstTimeInitialized) {
             mHandler.sendEmptyMessage(FIRST_TIME_INIT);
         } else {
@@ -1474,16 +1877,64 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
 
     public void surfaceDestroyed(SurfaceHolder holder) {
         stopPreview();
+        // The surface must not be used once this returns.
+        mCameraExecutor.waitDone();
         mSurfaceHolder = null;
     }
 
-    private void ensureCameraDevice() throws CameraHardwareException {
-        if (mCameraDevice == null) {
-            mCameraDevice = CameraHolder.instance().open(mCameraId);
-            mInitialParams = mCameraDevice.getParameters();
+    private android.hardware.Camera ensureCameraDevice() throws CameraHardwareException {
+        android.hardware.Camera device = mCameraExecutor.getCamera();
+        if (device == null) {
+            device = mCameraExecutor.open(mCameraId);
+            mInitialParams = device.getParameters();
+            // CameraSettings only reads the supported values from
+            // mInitialParams, so it can be the first working copy too.
+            mParameterSnapshot = new ParameterSnapshot(device, mInitialParams);
+
+            CameraCapabilityRegistry registry = CameraCapabilityRegistry.instance();
+            mCapabilities = registry.get(mCameraId);
+            if (mCapabilities == null) {
+                CameraHolder holder = CameraHolder.instance();
+                mCapabilities = CameraCapabilities.fromParameters(mCameraId,
+                        holder.isFrontFacing(mCameraId),
+                        holder.getSensorOrientation(mCameraId), mInitialParams);
+                registry.put(mCapabilities);
+            }
+        }
+        return device;
+    }
+
+    /**
+     * Releases the camera on the camera thread, after the commands submitted
+     * before, and whichever camera is open by then. Runs at once when called
+     * on the camera thread.
+     */
+    public void closeCamera() {
+        if (!mCameraExecutor.isExecutorThread()) {
+            mPreviewing = false;
         }
+        mCameraExecutor.release(mBeforeCameraRelease);
     }
 
+    // Run on the camera thread, with the camera still open.
+    private final Runnable mBeforeCameraRelease = new Runnable() {
+        public void run() {
+            if (mPreviewFrameRing != null) {
+                mPreviewFrameRing.detach();
+            }
+            mParameterSnapshot = null;
+        }
+    };
+
+    // Run on the camera thread before the preview is started again.
+    private final Runnable mAttachPreviewFrameRing = new Runnable() {
+        public void run() {
+            if (mPreviewFrameRing != null) {
+                mPreviewFrameRing.attach(mCameraExecutor.getCamera(), mParameters);
+            }
+        }
+    };
+
     private void showCameraErrorAndFinish() {
         Resources ress = getResources();
         Util.showFatalErrorAndFinish(Camera.this,
@@ -1491,18 +1942,75 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
                 ress.getString(R.string.cannot_connect_camera));
     }
 
-    public boolean restartPreview() {
+    /**
+     * Stops the preview if needed and starts it again on the camera thread,
+     * opening the camera first if it is closed. Does not wait; the preview
+     * state is updated by onPreviewStarted() on the main thread.
+     */
+    public void restartPreview() {
+        restartPreview(null);
+    }
+
+    /**
+     * Like {@link #restartPreview()}, and then runs onStarted on the main
+     * thread if the preview did start.
+     */
+    public void restartPreview(final Runnable onStarted) {
+        if (mPausing || isFinishing()) return;
+        // If we're previewing already, stop the preview first (this will blank
+        // the screen). The stop is queued before the start.
+        stopPreview();
+        mStartPreviewFuture = mCameraExecutor.submit(new Callable<Void>() {
+            public Void call() throws CameraHardwareException {
+                startPreview();
+                return null;
+            }
+        }, new CameraExecutor.Listener<Void>() {
+            public void onDone(Future<Void> future) {
+                onPreviewStarted(future, onStarted);
+            }
+        });
+    }
+
+    private void onPreviewStarted(Future<Void> future, Runnable onStarted) {
+        // Only the latest start counts.
+        if (future != mStartPreviewFuture) return;
+        mStartPreviewFuture = null;
         try {
-            startPreview();
-        } catch (CameraHardwareException e) {
-            showCameraErrorAndFinish();
-            return false;
+            future.get();
+        } catch (InterruptedException e) {
+            // Cannot happen, the task is done.
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof CameraHardwareException) {
+                // In eng build, we throw the exception so that test tool
+                // can detect it and report it
+                if ("eng".equals(Build.TYPE)) {
+                    throw new RuntimeException(cause);
+                }
+                mStartPreviewFail = true;
+                showCameraErrorAndFinish();
+                return;
+            }
+            throw new RuntimeException(cause);
         }
-        return true;
+        if (mPausing || mCameraExecutor.getCamera() == null) return;
+
+        mPreviewing = true;
+        mZoomState = ZOOM_STOPPED;
+        mStatus = IDLE;
+        mParameterScheduler.notifyIdle();
+        if (mInitializeAfterStart) {
+            mInitializeAfterStart = false;
+            initializeIfSurfaceReady();
+        }
+        if (onStarted != null) onStarted.run();
     }
 
     private boolean mDoAnimation = false;
     private boolean mAnimationDone = false;
+    // Kept across captures; only grows when a bigger frame is needed.
+    private short[] mPreviewThumbPixels;
     private void animatePreviewToThumb(byte[] data) {
     	if (!mDoAnimation || mLastPictureButton == null || data == null) {
     		return;
@@ -1513,14 +2021,33 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
 		//mPreviewFrameData = new byte[data.length];
 		//System.arraycopy(data, 0, mPreviewFrameData, 0, data.length);
 		//Log.d(TAG, "data="+mPreviewFrameData);
-		int width = mParameters.getPreviewSize().width;
-		int height = mParameters.getPreviewSize().height;
-		int[] pixels = new int[width*height];
-		Util.decodeYUV(pixels, data, width,height);
-		Bitmap bitmap = Bitmap.createBitmap(pixels, width, height, Config.RGB_565);
-		if (CameraHolder.instance().isFrontFacing(mCameraId)) {
-			bitmap = Util.flipHorizontally(bitmap);
+		ParameterValues values = mParameterValues;
+		int width = (values != null) ? values.getPreviewWidth() : 0;
+		int height = (values != null) ? values.getPreviewHeight() : 0;
+		if (width == 0 || height == 0 || width * height * 3 / 2 > data.length) {
+			// The preview size changed since the frame arrived.
+			return;
 		}
+		// The frame shrinks to the thumbnail button as soon as it is shown,
+		// so it is decoded at twice the button's size rather than in full.
+		int shortSide = Math.min(width, height);
+		int target = 2 * Math.max(mLastPictureButton.getWidth(), mLastPictureButton.getHeight());
+		if (target > 0 && target < shortSide) {
+			shortSide = target;
+		}
+		int outWidth = (width <= height) ? shortSide : width * shortSide / height;
+		int outHeight = (width <= height) ? height * shortSide / width : shortSide;
+		int size = outWidth * outHeight;
+		if (mPreviewThumbPixels == null || mPreviewThumbPixels.length < size) {
+			mPreviewThumbPixels = new short[size];
+		}
+		YuvConverter.convertScaled(data, width, height, 0,
+				CameraHolder.instance().isFrontFacing(mCameraId),
+				outWidth, outHeight, null, mPreviewThumbPixels);
+		// The size is the same every time, so this is normally the bitmap
+		// of the previous animation.
+		Bitmap bitmap = BitmapPool.instance().get(outWidth, outHeight, Config.RGB_565);
+		bitmap.copyPixelsFromBuffer(ShortBuffer.wrap(mPreviewThumbPixels, 0, size));
     	
     	final ImageView previewImage = (ImageView)findViewById(R.id.imageViewPreview);
     	
@@ -1590,8 +2117,10 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
 				if (drawable != null) {
 					Bitmap bitmap = ((BitmapDrawable)drawable).getBitmap();
 					previewImage.setImageBitmap(null);
-					if (bitmap != null && !bitmap.isRecycled()) {
-						bitmap.recycle();
+					// The thumbnail normally has its own copy, unless the
+					// frame was already the right size.
+					if (bitmap != null && bitmap != mThumbController.getThumb()) {
+						BitmapPool.instance().put(bitmap);
 					}
 				}
 			}
@@ -1603,56 +2132,61 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
         mDoAnimation = false;
     }
     
+    private void setPreviewDisplayAsync(final SurfaceHolder holder) {
+        mCameraExecutor.submit(new Runnable() {
+            public void run() {
+                if (mCameraExecutor.getCamera() != null) setPreviewDisplay(holder);
+            }
+        });
+    }
+
     private void setPreviewDisplay(SurfaceHolder holder) {
         try {
-            mCameraDevice.setPreviewDisplay(holder);
+            mCameraExecutor.getCamera().setPreviewDisplay(holder);
         } catch (Throwable ex) {
             mHeadUpDisplay.closeCamera(this);
             throw new RuntimeException("setPreviewDisplay failed", ex);
         }
     }
 
+    // Runs on the camera thread; the preview is already stopped.
     private void startPreview() throws CameraHardwareException {
         if (mPausing || isFinishing()) return;
+        long section = Profiler.begin();
 
-        ensureCameraDevice();
-        // If we're previewing already, stop the preview first (this will blank
-        // the screen).
-        if (mPreviewing) stopPreview();
-
+        android.hardware.Camera device = ensureCameraDevice();
         setPreviewDisplay(mSurfaceHolder);
-        //Util.setCameraDisplayOrientation(this, mCameraId, mCameraDevice);
+        //Util.setCameraDisplayOrientation(this, mCameraId, device);
         setCameraParameters(UPDATE_PARAM_ALL);
 
-        mCameraDevice.setErrorCallback(mErrorCallback);
+        device.setErrorCallback(mCameraExecutor.errorOnMainThread(mErrorCallback));
+        mAttachPreviewFrameRing.run();
 
         try {
             Log.v(TAG, "startPreview");
-            mCameraDevice.startPreview();
+            device.startPreview();
         } catch (Throwable ex) {
             mHeadUpDisplay.closeCamera(this);
             throw new RuntimeException("startPreview failed", ex);
         }
-        mPreviewing = true;
-        mZoomState = ZOOM_STOPPED;
-        mStatus = IDLE;
+        Profiler.end(Profiler.SECTION_PREVIEW, section);
     }
 
     public void stopPreview() {
-        if (mCameraDevice != null && mPreviewing) {
-            Log.v(TAG, "stopPreview");
-            mCameraDevice.stopPreview();
+        if (mPreviewing) {
+            mCameraExecutor.stopPreview();
         }
         mPreviewing = false;
         // If auto focus was in progress, it would have been canceled.
         clearFocusState();
     }
 
-    private Size getOptimalPreviewSize(List<Size> sizes, double targetRatio) {
+    // Returns the index of the best size in sizes, which holds width, height
+    // pairs, or -1 if there is none.
+    private int getOptimalPreviewSize(int[] sizes, double targetRatio) {
         final double ASPECT_TOLERANCE = 0.05;
-        if (sizes == null) return null;
 
-        Size optimalSize = null;
+        int optimalSize = -1;
         double minDiff = Double.MAX_VALUE;
 
         // Because of bugs of overlay and layout, we sometimes will try to
@@ -1672,23 +2206,26 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
         }
 
         // Try to find an size match aspect ratio and size
-        for (Size size : sizes) {
-            double ratio = (double) size.width / size.height;
+        for (int i = 0; i < sizes.length / 2; i++) {
+            int width = sizes[2 * i];
+            int height = sizes[2 * i + 1];
+            double ratio = (double) width / height;
             if (Math.abs(ratio - targetRatio) > ASPECT_TOLERANCE) continue;
-            if (Math.abs(size.height - targetHeight) < minDiff) {
-                optimalSize = size;
-                minDiff = Math.abs(size.height - targetHeight);
+            if (Math.abs(height - targetHeight) < minDiff) {
+                optimalSize = i;
+                minDiff = Math.abs(height - targetHeight);
             }
         }
 
         // Cannot find the one match the aspect ratio, ignore the requirement
-        if (optimalSize == null) {
+        if (optimalSize < 0) {
             Log.v(TAG, "No preview size match the aspect ratio");
             minDiff = Double.MAX_VALUE;
-            for (Size size : sizes) {
-                if (Math.abs(size.height - targetHeight) < minDiff) {
-                    optimalSize = size;
-                    minDiff = Math.abs(size.height - targetHeight);
+            for (int i = 0; i < sizes.length / 2; i++) {
+                int height = sizes[2 * i + 1];
+                if (Math.abs(height - targetHeight) < minDiff) {
+                    optimalSize = i;
+                    minDiff = Math.abs(height - targetHeight);
                 }
             }
         }
@@ -1718,9 +2255,12 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
     }
 
     private void updateCameraParametersPreference() {
+        // One consistent set of values, even if the GL thread changes a
+        // preference meanwhile.
+        SettingsSnapshot settings = mPreferences.getSnapshot();
+
         // Set picture size.
-        String pictureSize = mPreferences.getString(
-               CameraSettings.KEY_PICTURE_SIZE, null);
+        String pictureSize = settings.getPictureSize();
        if (pictureSize == null) {
             CameraSettings.initialCameraPictureSize(this, mParameters);
             /*if (!CameraHolder.instance().isFrontFacing(mCameraId)) {
@@ -1735,42 +2275,47 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
         }
 
         // Set the preview frame aspect ratio according to the picture size.
-        PreviewFrameLayout frameLayout =
-                (PreviewFrameLayout) findViewById(R.id.frame_layout);
-        frameLayout.setAspectRatio(CameraHolder.instance().getAspectRatio());
+        // This may run on the camera thread, so views are updated on the
+        // main thread.
+        runOnUiThread(new Runnable() {
+            public void run() {
+                PreviewFrameLayout frameLayout =
+                        (PreviewFrameLayout) findViewById(R.id.frame_layout);
+                frameLayout.setAspectRatio(CameraHolder.instance().getAspectRatio());
+            }
+        });
 
         // Set a preview size that is closest to the viewfinder height and has
         // the right aspect ratio.
-        List<Size> sizes = mParameters.getSupportedPreviewSizes();
+        boolean readBack = false;
+        int[] sizes = mCapabilities.getPreviewSizes();
         Size size = mParameters.getPictureSize();
-        Size optimalSize = getOptimalPreviewSize(
+        int optimalSize = getOptimalPreviewSize(
                 sizes, (double) size.width / size.height);
-        if (optimalSize != null) {
+        if (optimalSize >= 0) {
+            int width = sizes[2 * optimalSize];
+            int height = sizes[2 * optimalSize + 1];
             Size original = mParameters.getPreviewSize();
-            if (!original.equals(optimalSize)) {
-                mParameters.setPreviewSize(optimalSize.width, optimalSize.height);
+            if (original.width != width || original.height != height) {
+                mParameters.setPreviewSize(width, height);
 
                 // Zoom related settings will be changed for different preview
                 // sizes, so set and read the parameters to get lastest values
-                mCameraDevice.setParameters(mParameters);
-                mParameters = mCameraDevice.getParameters();
+                readBack = true;
             }
         }
 
         // Since change scene mode may change supported values,
         // Set scene mode first,
-        mSceneMode = mPreferences.getString(
-                CameraSettings.KEY_SCENE_MODE,
-                getString(R.string.pref_camera_scenemode_default));
+        mSceneMode = settings.getSceneMode();
         if (isSupported(mSceneMode, mParameters.getSupportedSceneModes())) {
             if (!mParameters.getSceneMode().equals(mSceneMode)) {
                 mParameters.setSceneMode(mSceneMode);
-                mCameraDevice.setParameters(mParameters);
 
                 // Setting scene mode will change the settings of flash mode,
                 // white balance, and focus mode. Here we read back the
                 // parameters, so we can know those settings.
-                mParameters = mCameraDevice.getParameters();
+                readBack = true;
             }
         } else {
             mSceneMode = mParameters.getSceneMode();
@@ -1778,28 +2323,33 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
                 mSceneMode = Parameters.SCENE_MODE_AUTO;
             }
         }
+        if (readBack) {
+            // One push and one read for both the preview size and the scene
+            // mode.
+            mParameters = mParameterSnapshot.commitAndRead();
+
+            CameraCapabilities capabilities = mCapabilities.withZoomOf(mParameters);
+            if (capabilities != mCapabilities) {
+                mCapabilities = capabilities;
+                CameraCapabilityRegistry.instance().put(capabilities);
+            }
+        }
 
         // Set JPEG quality.
-        String jpegQuality = mPreferences.getString(
-                CameraSettings.KEY_JPEG_QUALITY,
-                getString(R.string.pref_camera_jpegquality_default));
+        String jpegQuality = settings.getJpegQuality();
         mParameters.setJpegQuality(JpegEncodingQualityMappings.getQualityNumber(jpegQuality));
 
         // For the following settings, we need to check if the settings are
         // still supported by latest driver, if not, ignore the settings.
 
         // Set color effect parameter.
-        String colorEffect = mPreferences.getString(
-                CameraSettings.KEY_COLOR_EFFECT,
-                getString(R.string.pref_camera_coloreffect_default));
+        String colorEffect = settings.getColorEffect();
         if (isSupported(colorEffect, mParameters.getSupportedColorEffects())) {
             mParameters.setColorEffect(colorEffect);
         }
 
         // Set exposure compensation
-        String exposure = mPreferences.getString(
-                CameraSettings.KEY_EXPOSURE,
-                getString(R.string.pref_exposure_default));
+        String exposure = settings.getExposure();
         try {
             int value = Integer.parseInt(exposure);
             int max = ParameterUtils.getMaxExposureCompensation(mParameters);
@@ -1813,13 +2363,9 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
             Log.w(TAG, "invalid exposure: " + exposure);
         }
 
-        if (mHeadUpDisplay != null) mPreferences.updateSceneModeInHud(this);
-
         if (Parameters.SCENE_MODE_AUTO.equals(mSceneMode)) {
             // Set flash mode.
-            String flashMode = mPreferences.getString(
-                    CameraSettings.KEY_FLASH_MODE,
-                    getString(R.string.pref_camera_flashmode_default));
+            String flashMode = settings.getFlashMode();
             List<String> supportedFlash = mParameters.getSupportedFlashModes();
             if (isSupported(flashMode, supportedFlash)) {
                 mParameters.setFlashMode(flashMode);
@@ -1832,9 +2378,7 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
             }
 
             // Set white balance parameter.
-            String whiteBalance = mPreferences.getString(
-                    CameraSettings.KEY_WHITE_BALANCE,
-                    getString(R.string.pref_camera_whitebalance_default));
+            String whiteBalance = settings.getWhiteBalance();
             if (isSupported(whiteBalance,
                     mParameters.getSupportedWhiteBalance())) {
                 mParameters.setWhiteBalance(whiteBalance);
@@ -1846,9 +2390,7 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
             }
 
             // Set focus mode.
-            mFocusMode = mPreferences.getString(
-                    CameraSettings.KEY_FOCUS_MODE,
-                    getString(R.string.pref_camera_focusmode_default));
+            mFocusMode = settings.getFocusMode();
             if (isSupported(mFocusMode, mParameters.getSupportedFocusModes())) {
                 mParameters.setFocusMode(mFocusMode);
             } else {
@@ -1866,7 +2408,8 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
     // the subsets actually need updating. The PREFERENCE set needs extra
     // locking because the preference can be changed from GLThread as well.
     private void setCameraParameters(int updateSet) {
-        mParameters = mCameraDevice.getParameters();
+        mParameterSnapshot.beginUpdate();
+        mParameters = mParameterSnapshot.getParameters();
 
         if ((updateSet & UPDATE_PARAM_INITIALIZE) != 0) {
             updateCameraParametersInitialize();
@@ -1880,36 +2423,43 @@ public class Camera extends NoSearchActivity implements View.OnClickListener,
             updateCameraParametersPreference();
         }
 
-    	Parameters oldParameters = mCameraDevice.getParameters();
+        // The flash button is hidden when there is only one flash mode.
+        List<String> flashModes = mParameters.getSupportedFlashModes();
+        if (flashModes != null && flashModes.size() == 1) {
+            mParameters.setFlashMode(flashModes.get(0));
+        }
+
         try {
-        	mCameraDevice.setParameters(mParameters);
+        	mParameterSnapshot.commit();
         } catch (IllegalArgumentException e) {
-        	mCameraDevice.setParameters(oldParameters);
-        	mParameters = oldParameters;
+        	mParameters = mParameterSnapshot.revert();
         	mZoomValue = 0;
         	Log.w(TAG, e);
         }
-        initControlButtons();
+        mParameterSnapshot.endUpdate("setCameraParameters(" + updateSet + ")");
+        mParameterValues = mParameterSnapshot.getValues();
+        final boolean preference = (updateSet & UPDATE_PARAM_PREFERENCE) != 0;
+        runOnUiThread(new Runnable() {
+            public void run() {
+                initControlButtons();
+                if (preference && mHeadUpDisplay != null) {
+                    mPreferences.updateSceneModeInHud(Camera.this);
+                }
+            }
+        });
     }
 
     // If the Camera is idle, update the parameters immediately, otherwise
-    // accumulate them in mUpdateSet and update later.
+    // merge them into the pending update, which is applied when focus or
+    // the snapshot finishes (or after the preview start in progress).
     public void setCameraParametersWhenIdle(int additionalUpdateSet) {
-        mUpdateSet |= additionalUpdateSet;
-        if (mCameraDevice == null) {
+        if (mCameraExecutor.getCamera() == null && mStartPreviewFuture == null) {
             // We will update all the parameters when we open the device, so
             // we don't need to do anything now.
-            mUpdateSet = 0;
+            mParameterScheduler.cancel();
             return;
-        } else if (isCameraIdle()) {
-            setCameraParameters(mUpdateSet);
-            mUpdateSet = 0;
-        } else {
-            if (!mHandler.hasMessages(SET_CAMERA_PARAMETERS_WHEN_IDLE)) {
-                mHandler.sendEmptyMessageDelayed(
-                        SET_CAMERA_PARAMETERS_WHEN_IDLE, 1000);
-            }
         }
+        mParameterScheduler.request(additionalUpdateSet);
     }
 
     public boolean isCameraIdle() {
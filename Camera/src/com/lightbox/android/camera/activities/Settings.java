@@ -17,9 +17,11 @@
 package com.lightbox.android.camera.activities;
 
 
+import java.io.File;
 import java.util.List;
 
 import com.lightbox.android.camera.R;
+import com.lightbox.android.camera.util.CaptureTracer;
 
 import android.content.Context;
 import android.content.Intent;
@@ -27,8 +29,10 @@ import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.net.Uri;
 import android.preference.Preference;
+import android.preference.Preference.OnPreferenceClickListener;
 import android.preference.PreferenceActivity;
 import android.preference.PreferenceScreen;
+import android.widget.Toast;
 
 /** 
  * Settings 
@@ -55,6 +59,19 @@ public class Settings extends PreferenceActivity {
 		
 		Preference getLightboxPref = findPreference("get_lightbox");
 		getLightboxPref.setIntent(buildViewMarketDetailsIntent(this, LIGHTBOX_PACKAGE));
+
+		Preference dumpLatencyPref = findPreference("dump_capture_latency");
+		dumpLatencyPref.setOnPreferenceClickListener(new OnPreferenceClickListener() {
+			@Override
+			public boolean onPreferenceClick(Preference preference) {
+				File file = CaptureTracer.dump();
+				String text = (file != null)
+						? getString(R.string.settings_dump_capture_latency_done, file.getPath())
+						: getString(R.string.settings_dump_capture_latency_failed);
+				Toast.makeText(Settings.this, text, Toast.LENGTH_LONG).show();
+				return true;
+			}
+		});
 	}
 	
 	public static Intent buildViewMarketDetailsIntent(Context context, String packageName) {
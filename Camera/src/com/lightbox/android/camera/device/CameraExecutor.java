@@ -0,0 +1,396 @@
+/*
+ * Copyright (C) 2012 Lightbox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightbox.android.camera.device;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import android.hardware.Camera.AutoFocusCallback;
+import android.hardware.Camera.ErrorCallback;
+import android.hardware.Camera.OnZoomChangeListener;
+import android.hardware.Camera.PictureCallback;
+import android.hardware.Camera.PreviewCallback;
+import android.hardware.Camera.ShutterCallback;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+
+import com.lightbox.android.camera.CameraHardwareException;
+
+/**
+ * The thread which talks to the camera driver: it opens, configures, starts,
+ * stops and releases the {@code android.hardware.Camera}, so the main thread
+ * never waits on the HAL for those. Commands run one at a time in the order
+ * they are submitted, and each returns a Future.
+ *
+ * <p>The executor holds the camera it opened. Each command on it runs on
+ * whichever camera is open when the command's turn comes, and does nothing if
+ * the camera was released first, so callers need not check.
+ *
+ * <p>The camera is opened on this thread's Looper, so its callbacks arrive
+ * here too. The callbacks given to the commands below arrive on the main
+ * thread; preview frame and zoom callbacks stay here.
+ */
+public class CameraExecutor {
+	/** Used to tag logs */
+	private static final String TAG = "CameraExecutor";
+
+	/** Called on the main thread when a command submitted with it is done. */
+	public interface Listener<T> {
+		void onDone(Future<T> future);
+	}
+
+	private static CameraExecutor sInstance;
+
+	private final Looper mLooper;
+	private final Handler mHandler;
+	private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+	// Set and cleared on this thread; read on any.
+	private volatile android.hardware.Camera mCamera;
+
+	public static synchronized CameraExecutor instance() {
+		if (sInstance == null) {
+			sInstance = new CameraExecutor();
+		}
+		return sInstance;
+	}
+
+	private CameraExecutor() {
+		HandlerThread thread = new HandlerThread(TAG);
+		thread.start();
+		mLooper = thread.getLooper();
+		mHandler = new Handler(mLooper);
+	}
+
+	public Looper getLooper() {
+		return mLooper;
+	}
+
+	public boolean isExecutorThread() {
+		return Looper.myLooper() == mLooper;
+	}
+
+	public <T> Future<T> submit(Callable<T> task) {
+		FutureTask<T> future = new FutureTask<T>(task);
+		mHandler.post(future);
+		return future;
+	}
+
+	public Future<?> submit(Runnable task) {
+		FutureTask<Void> future = new FutureTask<Void>(task, null);
+		mHandler.post(future);
+		return future;
+	}
+
+	/**
+	 * Runs task, then calls listener on the main thread, where
+	 * {@code future.get()} returns at once.
+	 */
+	public <T> Future<T> submit(Callable<T> task, Listener<T> listener) {
+		ListenedTask<T> future = new ListenedTask<T>(task, listener);
+		mHandler.post(future);
+		return future;
+	}
+
+	/**
+	 * Blocks until every command submitted so far has run. Only for the few
+	 * places which must not return before the driver is done, like releasing
+	 * the camera in onPause(). Does nothing on the executor thread.
+	 */
+	public void waitDone() {
+		if (isExecutorThread()) return;
+		Future<?> future = submit(new Runnable() {
+			public void run() {
+			}
+		});
+		boolean interrupted = false;
+		while (true) {
+			try {
+				future.get();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			} catch (ExecutionException e) {
+				break;
+			}
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+	}
+
+	/**
+	 * The camera opened by {@link #open(int)}, or null. Only commands may use
+	 * it; other threads can only test whether one is open.
+	 */
+	public android.hardware.Camera getCamera() {
+		return mCamera;
+	}
+
+	/**
+	 * Opens camera cameraId through the CameraHolder, unless a camera is
+	 * already open, and returns the open one. Only called from a command, as
+	 * what it opens must be configured before the next command runs.
+	 */
+	public android.hardware.Camera open(int cameraId) throws CameraHardwareException {
+		if (!isExecutorThread()) {
+			throw new IllegalStateException("open() outside a command");
+		}
+		if (mCamera == null) {
+			mCamera = CameraHolder.instance().open(cameraId);
+		}
+		return mCamera;
+	}
+
+	/**
+	 * Releases whichever camera is open once the commands submitted before
+	 * are done, including one that a pending command opens. beforeRelease,
+	 * if any, runs first on this thread, with the camera still open. Runs at
+	 * once when called from a command.
+	 */
+	public Future<?> release(final Runnable beforeRelease) {
+		FutureTask<Void> future = new FutureTask<Void>(new CameraCommand() {
+			@Override
+			void run(android.hardware.Camera camera) {
+				if (beforeRelease != null) beforeRelease.run();
+				if (Build.VERSION.SDK_INT >= 0x00000008) {
+					camera.setZoomChangeListener(null);
+				}
+				CameraHolder.instance().release();
+				mCamera = null;
+			}
+		}, null);
+		if (isExecutorThread()) {
+			future.run();
+		} else {
+			mHandler.post(future);
+		}
+		return future;
+	}
+
+	/**
+	 * Starts the preview. setUp, if any, runs first on this thread, with the
+	 * camera open. listener, if any, is called on the main thread when done,
+	 * and the Future throws what startPreview() threw.
+	 */
+	public Future<Void> startPreview(final Runnable setUp, Listener<Void> listener) {
+		Callable<Void> task = new Callable<Void>() {
+			public Void call() {
+				android.hardware.Camera camera = mCamera;
+				if (camera == null) return null;
+				if (setUp != null) setUp.run();
+				Log.v(TAG, "startPreview");
+				camera.startPreview();
+				return null;
+			}
+		};
+		return (listener != null) ? submit(task, listener) : submit(task);
+	}
+
+	public Future<?> stopPreview() {
+		return submit(new CameraCommand() {
+			@Override
+			void run(android.hardware.Camera camera) {
+				Log.v(TAG, "stopPreview");
+				camera.stopPreview();
+			}
+		});
+	}
+
+	/**
+	 * Takes a picture. setUp, if any, runs first on this thread, to set the
+	 * parameters of this picture. The callbacks arrive on the main thread.
+	 */
+	public Future<?> takePicture(final Runnable setUp, ShutterCallback shutter,
+			PictureCallback raw, PictureCallback postview, PictureCallback jpeg) {
+		final ShutterCallback mainShutter = shutterOnMainThread(shutter);
+		final PictureCallback mainRaw = pictureOnMainThread(raw);
+		final PictureCallback mainPostview = pictureOnMainThread(postview);
+		final PictureCallback mainJpeg = pictureOnMainThread(jpeg);
+		return submit(new CameraCommand() {
+			@Override
+			void run(android.hardware.Camera camera) {
+				if (setUp != null) setUp.run();
+				camera.takePicture(mainShutter, mainRaw, mainPostview, mainJpeg);
+			}
+		});
+	}
+
+	/** The callback arrives on the main thread. */
+	public Future<?> autoFocus(AutoFocusCallback callback) {
+		final AutoFocusCallback mainCallback = autoFocusOnMainThread(callback);
+		return submit(new CameraCommand() {
+			@Override
+			void run(android.hardware.Camera camera) {
+				camera.autoFocus(mainCallback);
+			}
+		});
+	}
+
+	public Future<?> cancelAutoFocus() {
+		return submit(new CameraCommand() {
+			@Override
+			void run(android.hardware.Camera camera) {
+				camera.cancelAutoFocus();
+			}
+		});
+	}
+
+	/** The callback arrives on the main thread, with a frame of its own. */
+	public Future<?> setOneShotPreviewCallback(PreviewCallback callback) {
+		final PreviewCallback mainCallback = previewOnMainThread(callback);
+		return submit(new CameraCommand() {
+			@Override
+			void run(android.hardware.Camera camera) {
+				camera.setOneShotPreviewCallback(mainCallback);
+			}
+		});
+	}
+
+	/**
+	 * Needs API level 8. The listener is called on this thread; it must
+	 * post what touches the UI.
+	 */
+	public Future<?> setZoomChangeListener(final OnZoomChangeListener listener) {
+		return submit(new CameraCommand() {
+			@Override
+			void run(android.hardware.Camera camera) {
+				camera.setZoomChangeListener(listener);
+			}
+		});
+	}
+
+	/** Needs API level 8. */
+	public Future<?> startSmoothZoom(final int value) {
+		return submit(new CameraCommand() {
+			@Override
+			void run(android.hardware.Camera camera) {
+				camera.startSmoothZoom(value);
+			}
+		});
+	}
+
+	/** Needs API level 8. */
+	public Future<?> stopSmoothZoom() {
+		return submit(new CameraCommand() {
+			@Override
+			void run(android.hardware.Camera camera) {
+				camera.stopSmoothZoom();
+			}
+		});
+	}
+
+	private ShutterCallback shutterOnMainThread(final ShutterCallback callback) {
+		if (callback == null) return null;
+		return new ShutterCallback() {
+			public void onShutter() {
+				mMainHandler.post(new Runnable() {
+					public void run() {
+						callback.onShutter();
+					}
+				});
+			}
+		};
+	}
+
+	private PictureCallback pictureOnMainThread(final PictureCallback callback) {
+		if (callback == null) return null;
+		return new PictureCallback() {
+			public void onPictureTaken(final byte[] data,
+					final android.hardware.Camera camera) {
+				mMainHandler.post(new Runnable() {
+					public void run() {
+						callback.onPictureTaken(data, camera);
+					}
+				});
+			}
+		};
+	}
+
+	private PreviewCallback previewOnMainThread(final PreviewCallback callback) {
+		if (callback == null) return null;
+		return new PreviewCallback() {
+			public void onPreviewFrame(final byte[] data,
+					final android.hardware.Camera camera) {
+				mMainHandler.post(new Runnable() {
+					public void run() {
+						callback.onPreviewFrame(data, camera);
+					}
+				});
+			}
+		};
+	}
+
+	private AutoFocusCallback autoFocusOnMainThread(final AutoFocusCallback callback) {
+		if (callback == null) return null;
+		return new AutoFocusCallback() {
+			public void onAutoFocus(final boolean success,
+					final android.hardware.Camera camera) {
+				mMainHandler.post(new Runnable() {
+					public void run() {
+						callback.onAutoFocus(success, camera);
+					}
+				});
+			}
+		};
+	}
+
+	/** For the error callback, which commands set while starting a preview. */
+	public ErrorCallback errorOnMainThread(final ErrorCallback callback) {
+		if (callback == null) return null;
+		return new ErrorCallback() {
+			public void onError(final int error, final android.hardware.Camera camera) {
+				mMainHandler.post(new Runnable() {
+					public void run() {
+						callback.onError(error, camera);
+					}
+				});
+			}
+		};
+	}
+
+	// A command on the open camera, skipped if it was released first.
+	private abstract class CameraCommand implements Runnable {
+		public final void run() {
+			android.hardware.Camera camera = mCamera;
+			if (camera != null) run(camera);
+		}
+
+		abstract void run(android.hardware.Camera camera);
+	}
+
+	private class ListenedTask<T> extends FutureTask<T> {
+		private final Listener<T> mListener;
+
+		ListenedTask(Callable<T> task, Listener<T> listener) {
+			super(task);
+			mListener = listener;
+		}
+
+		@Override
+		protected void done() {
+			mMainHandler.post(new Runnable() {
+				public void run() {
+					mListener.onDone(ListenedTask.this);
+				}
+			});
+		}
+	}
+}
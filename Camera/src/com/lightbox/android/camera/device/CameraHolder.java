@@ -29,9 +29,9 @@ import android.os.Looper;
 import android.os.Message;
 
 import com.lightbox.android.camera.CameraHardwareException;
+import com.lightbox.android.camera.CameraPreferenceTree;
 import com.lightbox.android.camera.CameraSettings;
 import com.lightbox.android.camera.PreferenceGroup;
-import com.lightbox.android.camera.PreferenceInflater;
 import com.lightbox.android.camera.device.CameraHolder;
 import com.lightbox.android.camera.device.GingerbreadCameraHolder;
 import com.lightbox.android.camera.device.HTCFrontFacingFixGingerbreadCameraHolder;
@@ -128,6 +128,11 @@ public abstract class CameraHolder {
     
     public abstract int getCameraOrientation(int cameraId, int orientationSensorValue);
 
+    /** The orientation of the camera sensor, as in CameraInfo. */
+    public int getSensorOrientation(int cameraId) {
+        return 90;
+    }
+
     public abstract android.hardware.Camera open(int cameraId) throws CameraHardwareException;
 
     public abstract double getAspectRatio();
@@ -179,10 +184,8 @@ public abstract class CameraHolder {
         mKeepBeforeTime = System.currentTimeMillis() + 3000;
     }
 
-	public PreferenceGroup getPreferenceGroup(CameraSettings cameraSettings, int preferenceRes) {
-	    PreferenceInflater inflater = new PreferenceInflater(cameraSettings.mContext);
-	    PreferenceGroup group =
-	            (PreferenceGroup) inflater.inflate(preferenceRes);
+	public PreferenceGroup getPreferenceGroup(CameraSettings cameraSettings) {
+	    PreferenceGroup group = CameraPreferenceTree.create(cameraSettings.mContext);
 	    cameraSettings.initPreference(group);
 	    return group;
 	}
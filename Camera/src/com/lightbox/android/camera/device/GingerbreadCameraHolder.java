@@ -22,28 +22,50 @@ package com.lightbox.android.camera.device;
 
 import static com.lightbox.android.camera.Util.Assert;
 
-import android.hardware.Camera;
 import android.hardware.Camera.CameraInfo;
 import android.hardware.Camera.Size;
 import android.util.Log;
 
 import java.io.IOException;
 
+import com.lightbox.android.camera.CameraCapabilities;
+import com.lightbox.android.camera.CameraCapabilityRegistry;
 import com.lightbox.android.camera.CameraHardwareException;
 import com.lightbox.android.camera.device.CameraHolder;
 
 public class GingerbreadCameraHolder extends CameraHolder {
     private static final String TAG = "GingerbreadCameraHolder";
     protected CameraInfo[] mInfo;
+    private int mFrontFacingCameraId;
+    private int mRearFacingCameraId;
 
     protected GingerbreadCameraHolder() {
     	super();
         mNumberOfCameras = android.hardware.Camera.getNumberOfCameras();
         mInfo = new CameraInfo[mNumberOfCameras];
+        // Only ask the driver about the cameras we have not seen on this build.
+        CameraCapabilityRegistry registry = CameraCapabilityRegistry.instance();
         for (int i = 0; i < mNumberOfCameras; i++) {
             mInfo[i] = new CameraInfo();
-            android.hardware.Camera.getCameraInfo(i, mInfo[i]);
+            CameraCapabilities capabilities = registry.get(i);
+            if (capabilities != null) {
+                mInfo[i].facing = capabilities.isFrontFacing()
+                        ? CameraInfo.CAMERA_FACING_FRONT
+                        : CameraInfo.CAMERA_FACING_BACK;
+                mInfo[i].orientation = capabilities.getOrientation();
+            } else {
+                android.hardware.Camera.getCameraInfo(i, mInfo[i]);
+            }
         }
+        mFrontFacingCameraId = findCameraId(CameraInfo.CAMERA_FACING_FRONT);
+        mRearFacingCameraId = findCameraId(CameraInfo.CAMERA_FACING_BACK);
+    }
+
+    private int findCameraId(int facing) {
+        for (int i = 0; i < mNumberOfCameras; i++) {
+            if (mInfo[i].facing == facing) return i;
+        }
+        return 0;
     }
 
     public int getNumberOfCameras() {
@@ -58,6 +80,11 @@ public class GingerbreadCameraHolder extends CameraHolder {
     	return mInfo[cameraId].orientation;
     }
 
+    @Override
+    public int getSensorOrientation(int cameraId) {
+        return mInfo[cameraId].orientation;
+    }
+
     public synchronized android.hardware.Camera open(int cameraId)
             throws CameraHardwareException {
         Assert(mUsers == 0);
@@ -99,27 +126,11 @@ public class GingerbreadCameraHolder extends CameraHolder {
 
 	@Override
 	public int getFrontFacingCameraId() {
-		int numCameras = getNumberOfCameras();
-		CameraInfo cameraInfo = new CameraInfo();
-		for (int cameraId = 0; cameraId < numCameras; cameraId++) {
-			Camera.getCameraInfo(cameraId, cameraInfo);				
-			if (cameraInfo.facing == Camera.CameraInfo.CAMERA_FACING_FRONT) {
-				return cameraId;
-			}
-		}
-		return 0;
+		return mFrontFacingCameraId;
 	}
 
 	@Override
 	public int getRearFacingCameraId() {
-		int numCameras = getNumberOfCameras();
-		CameraInfo cameraInfo = new CameraInfo();
-		for (int cameraId = 0; cameraId < numCameras; cameraId++) {
-			Camera.getCameraInfo(cameraId, cameraInfo);				
-			if (cameraInfo.facing == Camera.CameraInfo.CAMERA_FACING_BACK) {
-				return cameraId;
-			}
-		}
-		return 0;
+		return mRearFacingCameraId;
 	}
 }
@@ -17,14 +17,11 @@
 package com.lightbox.android.camera.ui;
 
 import android.content.Context;
-import android.graphics.Matrix;
 import android.graphics.Rect;
 import android.view.animation.AlphaAnimation;
-import android.view.animation.Transformation;
 
 import javax.microedition.khronos.opengles.GL11;
 
-import com.lightbox.android.camera.ui.BitmapTexture;
 import com.lightbox.android.camera.ui.GLRootView;
 import com.lightbox.android.camera.ui.GLView;
 import com.lightbox.android.camera.ui.MeasureHelper;
@@ -33,7 +30,7 @@ abstract class AbstractIndicator extends GLView {
     private static final int DEFAULT_PADDING = 3;
     private int mOrientation = 0;
 
-    abstract protected BitmapTexture getIcon();
+    abstract protected Texture getIcon();
 
     public AbstractIndicator(Context context) {
         int padding = GLRootView.dpToPixel(context, DEFAULT_PADDING);
@@ -42,7 +39,7 @@ abstract class AbstractIndicator extends GLView {
 
     @Override
     protected void onMeasure(int widthSpec, int heightSpec) {
-        BitmapTexture icon = getIcon();
+        Texture icon = getIcon();
         new MeasureHelper(this)
                .setPreferredContentSize(icon.getWidth(), icon.getHeight())
                .measure(widthSpec, heightSpec);
@@ -50,16 +47,15 @@ abstract class AbstractIndicator extends GLView {
 
     @Override
     protected void render(GLRootView root, GL11 gl) {
-        BitmapTexture icon = getIcon();
+        Texture icon = getIcon();
         if (icon != null) {
             Rect p = mPaddings;
             int width = mRootView.getWidth(this) - p.left - p.right;
             int height = getHeight() - p.top - p.bottom;
             if (mOrientation != 0) {
-                Transformation trans = root.mEglConfigChooser.pushTransform(root);
-                Matrix matrix = trans.getMatrix();
-                matrix.preTranslate(p.left + width / 2, p.top + height / 2);
-                matrix.preRotate(-mOrientation);
+                TransformStack trans = root.mEglConfigChooser.pushTransform(root);
+                trans.translate(p.left + width / 2, p.top + height / 2);
+                trans.rotate(-mOrientation);
                 icon.draw(root, -icon.getWidth() / 2, -icon.getHeight() / 2);
                 root.mContentView.popTransform(root);
             } else {
@@ -1,9 +1,6 @@
 package com.lightbox.android.camera.ui;
 
 import javax.microedition.khronos.opengles.GL11;
-import javax.microedition.khronos.opengles.GL11Ext;
-
-import android.graphics.Matrix;
 
 import com.lightbox.android.camera.ui.GLRootView;
 import com.lightbox.android.camera.ui.Texture;
@@ -27,6 +24,21 @@ abstract class BasicTexture implements Texture {
     protected int mTextureWidth;
     protected int mTextureHeight;
 
+    // The atlas page holding the texture, or null if it has a texture of its
+    // own, and where the content starts in it.
+    TextureAtlas.Page mPage;
+    int mOffsetX;
+    int mOffsetY;
+
+    // Set while the texture is recorded by a TextureManager.
+    TextureManager mManager;
+
+    // The texture bound to GL_TEXTURE_2D, so drawing several icons from the
+    // same atlas page binds it once. 0 if unknown.
+    private static int sBoundTextureId;
+    // Scratch for glGenTextures and glDeleteTextures, on the GL thread.
+    private static final int[] sTextureIds = new int[1];
+
     protected BasicTexture(GL11 gl, int id, int state) {
         mGL = gl;
         mId = id;
@@ -65,12 +77,55 @@ abstract class BasicTexture implements Texture {
     }
 
     public void deleteFromGL() {
-        if (mState == STATE_LOADED) {
-            mGL.glDeleteTextures(1, new int[]{mId}, 0);
+        if (mManager != null) {
+            mManager.onDeleted(this);
+            mManager = null;
+        }
+        if (mPage != null) {
+            // The page is shared; the region is just left unused.
+            mPage = null;
+        } else if (mState == STATE_LOADED) {
+            deleteTexture(mGL, mId);
+        }
+        mState = STATE_UNLOADED;
+    }
+
+    /**
+     * Deletes the texture of its own, once its TextureManager has forgotten
+     * it. It is uploaded again the next time it is drawn.
+     */
+    void evictFromGL() {
+        mManager = null;
+        if (mState == STATE_LOADED && mPage == null) {
+            deleteTexture(mGL, mId);
         }
         mState = STATE_UNLOADED;
     }
 
+    static void bindTexture(GL11 gl, int id) {
+        if (sBoundTextureId == id) return;
+        gl.glBindTexture(GL11.GL_TEXTURE_2D, id);
+        sBoundTextureId = id;
+    }
+
+    /** Returns a new texture name. */
+    static int genTexture(GL11 gl) {
+        gl.glGenTextures(1, sTextureIds, 0);
+        return sTextureIds[0];
+    }
+
+    static void deleteTexture(GL11 gl, int id) {
+        sTextureIds[0] = id;
+        gl.glDeleteTextures(1, sTextureIds, 0);
+        // Deleting the bound texture unbinds it, and its id can be reused.
+        if (sBoundTextureId == id) sBoundTextureId = 0;
+    }
+
+    /** Forgets which texture is bound, as when the GL context changes. */
+    static void invalidateBinding() {
+        sBoundTextureId = 0;
+    }
+
     public void draw(GLRootView root, int x, int y) {
         drawTexture(root, x, y, mWidth, mHeight);
     }
@@ -83,46 +138,27 @@ abstract class BasicTexture implements Texture {
 
 	public void drawTexture(
 	        GLRootView glRootView, int x, int y, int width, int height) {
-	    drawTexture(glRootView, x, y, width, height, glRootView.mTransformation.getAlpha());
+	    drawTexture(glRootView, x, y, width, height, glRootView.mTransform.getAlpha());
 	}
 
 	public void drawTexture(GLRootView glRootView, int x, int y, int width, int height, float alpha) {
 	
-	    if (!GLRootView.mTexture2DEnabled) {
-	        glRootView.mGL.glEnable(GL11.GL_TEXTURE_2D);
-	        GLRootView.mTexture2DEnabled = true;
-	    }
-	
 	    if (!bind(glRootView, glRootView.mGL)) {
 	        throw new RuntimeException("cannot bind" + toString());
 	    }
 	    if (width <= 0 || height <= 0) return ;
 	
-	    Matrix matrix = glRootView.mTransformation.getMatrix();
-	    matrix.getValues(glRootView.mMatrixValues);
-		float[] matrix1 = glRootView.mMatrixValues;
-	
-	    // Test whether it has been rotated or flipped, if so, glDrawTexiOES
-	    // won't work
-	    if (matrix1[Matrix.MSKEW_X] != 0 || matrix1[Matrix.MSKEW_Y] != 0
-		|| matrix1[Matrix.MSCALE_X] < 0 || matrix1[Matrix.MSCALE_Y] > 0) {
-	        GLRootView.putRectangle(0, 0,
-	                (mWidth - 0.5f) / mTextureWidth,
-	                (mHeight - 0.5f) / mTextureHeight,
-	                glRootView.mUvBuffer, glRootView.mUvPointer);
-	        glRootView.setAlphaValue(alpha);
-	        glRootView.drawRect(x, y, width, height, glRootView.mMatrixValues);
-	    } else {
-	        // draw the rect from bottom-left to top-right
-	        float points[] = glRootView.mapPoints(matrix, x, y + height, x + width, y);
-	        x = (int) points[0];
-	        y = (int) points[1];
-	        width = (int) points[2] - x;
-	        height = (int) points[3] - y;
-	        if (width > 0 && height > 0) {
-	            glRootView.setAlphaValue(alpha);
-	            ((GL11Ext) glRootView.mGL).glDrawTexiOES(x, y, 0, width, height);
-	        }
-	    }
+	    // Rotated or not, the quad is mapped on the CPU and drawn with the
+	    // others from the same texture. The right and bottom edges stop half
+	    // a texel short, as in GLView.stretch(): GL_LINEAR would otherwise
+	    // blend in the texel beyond the bitmap, undefined past a bitmap
+	    // uploaded alone and the next entry's border in an atlas.
+	    float textureWidth = mTextureWidth;
+	    float textureHeight = mTextureHeight;
+	    glRootView.mSpriteBatch.add(glRootView, mId, alpha, glRootView.mTransform.getValues(),
+	            x, y, width, height,
+	            mOffsetX / textureWidth, mOffsetY / textureHeight,
+	            (mOffsetX + mWidth - 0.5f) / textureWidth,
+	            (mOffsetY + mHeight - 0.5f) / textureHeight);
 	}
 }
@@ -12,7 +12,6 @@ import android.graphics.Bitmap;
 import android.opengl.GLUtils;
 
 import javax.microedition.khronos.opengles.GL11;
-import javax.microedition.khronos.opengles.GL11Ext;
 
 abstract class BitmapTexture extends BasicTexture {
 
@@ -39,23 +38,35 @@ abstract class BitmapTexture extends BasicTexture {
 
     protected abstract void freeBitmap(Bitmap bitmap);
 
-    private void uploadToGL(GL11 gl) throws GLOutOfMemoryException {
+    /** Whether the texture may be packed into the HUD's TextureAtlas. */
+    protected boolean isAtlasCandidate() {
+        return false;
+    }
+
+    private void uploadToGL(GLRootView root, GL11 gl) throws GLOutOfMemoryException {
         Bitmap bitmap = getBitmap();
         int glError = GL11.GL_NO_ERROR;
-        if (bitmap != null) {
-            int[] textureId = new int[1];
+        if (bitmap != null && isAtlasCandidate() && TextureAtlas.accepts(bitmap)) {
+            try {
+                root.mTextureAtlas.add(gl, this, bitmap);
+            } finally {
+                freeBitmap(bitmap);
+            }
+            mGL = gl;
+            mState = STATE_LOADED;
+        } else if (bitmap != null) {
+            mPage = null;
+            mOffsetX = 0;
+            mOffsetY = 0;
+            int textureId = 0;
+            int bytes = 0;
             try {
-                // Define a vertically flipped crop rectangle for
-                // OES_draw_texture.
                 int width = bitmap.getWidth();
                 int height = bitmap.getHeight();
-                int[] cropRect = {0,  height, width, -height};
 
                 // Upload the bitmap to a new texture.
-                gl.glGenTextures(1, textureId, 0);
-                gl.glBindTexture(GL11.GL_TEXTURE_2D, textureId[0]);
-                gl.glTexParameteriv(GL11.GL_TEXTURE_2D,
-                        GL11Ext.GL_TEXTURE_CROP_RECT_OES, cropRect, 0);
+                textureId = genTexture(gl);
+                bindTexture(gl, textureId);
                 gl.glTexParameteri(GL11.GL_TEXTURE_2D,
                         GL11.GL_TEXTURE_WRAP_S, GL11.GL_CLAMP_TO_EDGE);
                 gl.glTexParameteri(GL11.GL_TEXTURE_2D,
@@ -74,11 +85,18 @@ abstract class BitmapTexture extends BasicTexture {
                 mTextureHeight = heightExt;
                 gl.glTexImage2D(GL11.GL_TEXTURE_2D, 0, format,
                         widthExt, heightExt, 0, format, type, null);
-                GLUtils.texSubImage2D(
-                        GL11.GL_TEXTURE_2D, 0, 0, 0, bitmap, format, type);
+                glError = gl.glGetError();
+                if (glError == GL11.GL_NO_ERROR) {
+                    GLUtils.texSubImage2D(
+                            GL11.GL_TEXTURE_2D, 0, 0, 0, bitmap, format, type);
+                }
+                bytes = widthExt * heightExt * getBytesPerPixel(bitmap);
             } finally {
                 freeBitmap(bitmap);
             }
+            if (glError != GL11.GL_NO_ERROR) {
+                deleteTexture(gl, textureId);
+            }
             if (glError == GL11.GL_OUT_OF_MEMORY) {
                 throw new GLOutOfMemoryException();
             }
@@ -90,8 +108,10 @@ abstract class BitmapTexture extends BasicTexture {
             } else {
                 // Update texture state.
                 mGL = gl;
-                mId = textureId[0];
+                mId = textureId;
                 mState = BitmapTexture.STATE_LOADED;
+                mManager = root.mTextureManager;
+                mManager.onUploaded(this, bytes);
             }
         } else {
             mState = STATE_ERROR;
@@ -101,28 +121,44 @@ abstract class BitmapTexture extends BasicTexture {
 
     @Override
     protected boolean bind(GLRootView root, GL11 gl) {
-        if (mState == BitmapTexture.STATE_UNLOADED || mGL != gl) {
+        if (mState == BitmapTexture.STATE_UNLOADED || mGL != gl
+                || (mPage != null && mPage.mId == 0)) {
+            // mPage.mId is 0 once the atlas dropped its pages.
             mState = BitmapTexture.STATE_UNLOADED;
+            mPage = null;
             try {
-                uploadToGL(gl);
+                uploadToGL(root, gl);
             } catch (GLOutOfMemoryException e) {
-                root.mEglConfigChooser.handleLowMemory();
-                return false;
+                // Free what is not on screen and try once more.
+                if (!root.mEglConfigChooser.handleLowMemory(root)) return false;
+                try {
+                    uploadToGL(root, gl);
+                } catch (GLOutOfMemoryException again) {
+                    return false;
+                }
             }
         } else {
-            gl.glBindTexture(GL11.GL_TEXTURE_2D, getId());
+            bindTexture(gl, getId());
+            if (mManager != null) mManager.onDrawn(this);
         }
         return true;
     }
 
+    private static int getBytesPerPixel(Bitmap bitmap) {
+        Bitmap.Config config = bitmap.getConfig();
+        if (config == Bitmap.Config.ALPHA_8) return 1;
+        if (config == Bitmap.Config.ARGB_8888 || config == null) return 4;
+        return 2;
+    }
+
 	public void setAvailableZoomRatios(ZoomController zoomController, float[] ratios) {
 	    if (Arrays.equals(ratios, zoomController.mRatios)) return;
 	    zoomController.mRatios = ratios;
 	    zoomController.mLabelStep = zoomController.sFineTickMark.getLabelStep(ratios.length);
-	    zoomController.mTickLabels = new CanvasTexture[
+	    zoomController.mTickLabels = new TextTexture[
 	            (ratios.length + zoomController.mLabelStep - 1) / zoomController.mLabelStep];
 	    for (int i = 0, n = zoomController.mTickLabels.length; i < n; ++i) {
-	        zoomController.mTickLabels[i] = CanvasTexture.newInstance(
+	        zoomController.mTickLabels[i] = TextTexture.newInstance(
 	                ZoomController.sZoomFormat.format(ratios[i * zoomController.mLabelStep]),
 	                ZoomController.sLabelSize, ZoomController.LABEL_COLOR);
 	    }
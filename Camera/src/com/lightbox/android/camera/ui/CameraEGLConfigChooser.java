@@ -15,11 +15,9 @@
  */
 package com.lightbox.android.camera.ui;
 
-import android.graphics.Matrix;
 import android.opengl.GLSurfaceView.EGLConfigChooser;
 import android.opengl.GLU;
 import android.util.Log;
-import android.view.animation.Transformation;
 
 import javax.microedition.khronos.egl.EGL10;
 import javax.microedition.khronos.egl.EGLConfig;
@@ -101,14 +99,14 @@ class CameraEGLConfigChooser implements EGLConfigChooser {
     }
 
 	public void clearClip(GLRootView glRootView) {
+	    // The pending quads were queued under the old clip.
+	    glRootView.flushSprites();
 	    glRootView.mGL.glScissor(0, 0, glRootView.getWidth(), glRootView.getHeight());
 	}
 
-	public Transformation pushTransform(GLRootView glRootView) {
-	    Transformation trans = glRootView.mContentView.obtainTransformation(glRootView);
-	    trans.set(glRootView.mTransformation);
-	    glRootView.mTransformStack.push(trans);
-	    return glRootView.mTransformation;
+	public TransformStack pushTransform(GLRootView glRootView) {
+	    glRootView.mTransform.save();
+	    return glRootView.mTransform;
 	}
 
 	public long currentAnimationTimeMillis(GLRootView glRootView) {
@@ -117,81 +115,24 @@ class CameraEGLConfigChooser implements EGLConfigChooser {
 
 	public void drawRect(GLRootView glRootView, int x, int y, int width, int height) {
 	    float matrix[] = glRootView.mMatrixValues;
-	    glRootView.mTransformation.getMatrix().getValues(matrix);
+	    System.arraycopy(glRootView.mTransform.getValues(), 0, matrix, 0, 9);
 	    glRootView.drawRect(x, y, width, height, matrix);
 	}
 
-	void handleLowMemory() {
-	    //TODO: delete texture from GL
+	/**
+	 * Frees the HUD textures not drawn in the current frame. Returns whether
+	 * anything was freed. Must be called on the GL thread.
+	 */
+	boolean handleLowMemory(GLRootView glRootView) {
+	    // The pending quads may use the atlas pages about to be deleted.
+	    glRootView.flushSprites();
+	    return glRootView.mTextureManager.handleLowMemory(glRootView.mGL);
 	}
 
 	public GLView getContentPane(GLRootView glRootView) {
 	    return glRootView.mContentView;
 	}
 
-	void drawMesh(
-	        GLRootView glRootView, int[] x, int[] y, float[] u, float[] v, int nx, int ny) {
-	    /*
-	     * Given a 3x3 nine-patch image, the vertex order is defined as the
-	     * following graph:
-	     *
-	     * (0) (1) (2) (3)
-	     *  |  /|  /|  /|
-	     *  | / | / | / |
-	     * (4) (5) (6) (7)
-	     *  | \ | \ | \ |
-	     *  |  \|  \|  \|
-	     * (8) (9) (A) (B)
-	     *  |  /|  /|  /|
-	     *  | / | / | / |
-	     * (C) (D) (E) (F)
-	     *
-	     * And we draw the triangle strip in the following index order:
-	     *
-	     * index: 04152637B6A5948C9DAEBF
-	     */
-	    int pntCount = 0;
-	    float xy[] = glRootView.mXyBuffer;
-	    float uv[] = glRootView.mUvBuffer;
-	    for (int j = 0; j < ny; ++j) {
-	        for (int i = 0; i < nx; ++i) {
-	            int xIndex = (pntCount++) << 1;
-	            int yIndex = xIndex + 1;
-	            xy[xIndex] = x[i];
-	            xy[yIndex] = y[j];
-	            uv[xIndex] = u[i];
-	            uv[yIndex] = v[j];
-	        }
-	    }
-	    glRootView.mUvPointer.asFloatBuffer().put(uv, 0, pntCount << 1).position(0);
-	    glRootView.mXyPointer.asFloatBuffer().put(xy, 0, pntCount << 1).position(0);
-	
-	    int idxCount = 1;
-	    byte index[] = glRootView.mIndexBuffer;
-	    for (int i = 0, bound = nx * (ny - 1); true;) {
-	        // normal direction
-	        --idxCount;
-	        for (int j = 0; j < nx; ++j, ++i) {
-	            index[idxCount++] = (byte) i;
-	            index[idxCount++] = (byte) (i + nx);
-	        }
-	        if (i >= bound) break;
-	
-	        // reverse direction
-	        int sum = i + i + nx - 1;
-	        --idxCount;
-	        for (int j = 0; j < nx; ++j, ++i) {
-	            index[idxCount++] = (byte) (sum - i);
-	            index[idxCount++] = (byte) (sum - i + nx);
-	        }
-	        if (i >= bound) break;
-	    }
-	    glRootView.mIndexPointer.put(index, 0, idxCount).position(0);
-	
-	    glRootView.mGL.glDrawElements(GL11.GL_TRIANGLE_STRIP,
-	            idxCount, GL11.GL_UNSIGNED_BYTE, glRootView.mIndexPointer);
-	}
-
 	/**
 	 * Called when the OpenGL surface is recreated without destroying the
 	 * context.
@@ -212,9 +153,9 @@ class CameraEGLConfigChooser implements EGLConfigChooser {
 	    gl.glLoadIdentity();
 	
 	    GLU.gluOrtho2D(gl, 0, width, 0, height);
-	    Matrix matrix = glRootView.mTransformation.getMatrix();
-	    matrix.reset();
-	    matrix.preTranslate(0, glRootView.getHeight());
-	    matrix.preScale(1, -1);
+	    TransformStack transform = glRootView.mTransform;
+	    transform.reset();
+	    transform.translate(0, glRootView.getHeight());
+	    transform.scale(1, -1);
 	}
 }
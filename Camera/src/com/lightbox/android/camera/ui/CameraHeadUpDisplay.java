@@ -16,23 +16,19 @@
 
 package com.lightbox.android.camera.ui;
 
-import java.io.File;
-
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.hardware.Camera.Parameters;
 import android.os.Build;
-import android.os.Build.VERSION;
 import android.util.Log;
 
 import com.lightbox.android.camera.CameraSettings;
-import com.lightbox.android.camera.ImageManager;
+import com.lightbox.android.camera.JpegHeader;
 import com.lightbox.android.camera.ListPreference;
 import com.lightbox.android.camera.ParameterUtils;
 import com.lightbox.android.camera.PreferenceGroup;
 import com.lightbox.android.camera.Util;
 import com.lightbox.android.camera.activities.Camera;
-import com.lightbox.android.camera.device.CameraHolder;
 
 public class CameraHeadUpDisplay extends HeadUpDisplay {
 
@@ -113,14 +109,7 @@ public class CameraHeadUpDisplay extends HeadUpDisplay {
     }
 
 	public Bitmap createCaptureBitmap(Camera camera, byte[] data) {
-	    // This is really stupid...we just want to read the orientation in
-	    // the jpeg header.
-	    String filepath = ImageManager.getTempJpegPath();
-	    int degree = 0;
-	    if (camera.mThumbController.saveDataToFile(filepath, data)) {
-	        degree = ImageManager.getExifOrientation(filepath);
-	        new File(filepath).delete();
-	    }
+	    int degree = JpegHeader.parse(data).getOrientation();
 	
 	    // Limit to 50k pixels so we can return it in the intent.
 	    Bitmap bitmap = Util.makeBitmap(data, 50 * 1024);
@@ -129,14 +118,7 @@ public class CameraHeadUpDisplay extends HeadUpDisplay {
 	}
 
 	public void closeCamera(Camera camera) {
-	    if (camera.mCameraDevice != null) {
-	        CameraHolder.instance().release();
-	        if (VERSION.SDK_INT >= 0x00000008) {
-	        	camera.mCameraDevice.setZoomChangeListener(null);
-	        }
-	        camera.mCameraDevice = null;
-	        camera.mPreviewing = false;
-	    }
+	    camera.closeCamera();
 	}
 
 	public boolean canTakePicture(Camera camera) {
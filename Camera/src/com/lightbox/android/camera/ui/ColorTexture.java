@@ -33,4 +33,13 @@ class ColorTexture implements Texture {
     public void draw(GLRootView root, int x, int y, int w, int h) {
         root.drawColor(x, y, w, h, mColor);
     }
+
+    // A color fills whatever it is drawn in; it has no size of its own.
+    public int getWidth() {
+        return 0;
+    }
+
+    public int getHeight() {
+        return 0;
+    }
 }
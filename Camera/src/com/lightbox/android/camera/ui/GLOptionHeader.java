@@ -26,7 +26,7 @@ import com.lightbox.android.camera.ui.ColorTexture;
 import com.lightbox.android.camera.ui.GLRootView;
 import com.lightbox.android.camera.ui.GLView;
 import com.lightbox.android.camera.ui.MeasureHelper;
-import com.lightbox.android.camera.ui.CanvasTexture;
+import com.lightbox.android.camera.ui.TextTexture;
 import com.lightbox.android.camera.ui.Texture;
 
 class GLOptionHeader extends GLView {
@@ -39,7 +39,7 @@ class GLOptionHeader extends GLView {
     private static int sHorizontalPaddings = -1;
     private static int sVerticalPaddings;
 
-    private final CanvasTexture mTitle;
+    private final TextTexture mTitle;
     private Texture mBackground;
 
     private static void initializeStaticVariables(Context context) {
@@ -52,7 +52,7 @@ class GLOptionHeader extends GLView {
         initializeStaticVariables(context);
 
         float fontSize = GLRootView.dpToPixel(context, FONT_SIZE);
-        mTitle = CanvasTexture.newInstance(title, fontSize, FONT_COLOR);
+        mTitle = TextTexture.newInstance(title, fontSize, FONT_COLOR);
         setBackground(new ColorTexture(COLOR_OPTION_HEADER));
         setPaddings(sHorizontalPaddings,
                 sVerticalPaddings, sHorizontalPaddings, sVerticalPaddings);
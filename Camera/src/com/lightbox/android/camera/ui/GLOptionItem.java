@@ -20,13 +20,12 @@ import static com.lightbox.android.camera.ui.GLRootView.dpToPixel;
 import android.content.Context;
 import android.graphics.Color;
 import android.graphics.Rect;
-import android.view.animation.Transformation;
 
 import com.lightbox.android.camera.ui.GLRootView;
 import com.lightbox.android.camera.ui.GLView;
 import com.lightbox.android.camera.ui.MeasureHelper;
 import com.lightbox.android.camera.ui.ResourceTexture;
-import com.lightbox.android.camera.ui.CanvasTexture;
+import com.lightbox.android.camera.ui.TextTexture;
 import com.lightbox.android.camera.R;
 
 import javax.microedition.khronos.opengles.GL11;
@@ -61,7 +60,7 @@ class GLOptionItem extends GLView {
     private static int sVerticalPaddings;
 
     private final ResourceTexture mIcon;
-    private final CanvasTexture mText;
+    private final TextTexture mText;
     private boolean mEnabled = true;
 
     private ResourceTexture mCheckBox;
@@ -87,7 +86,7 @@ class GLOptionItem extends GLView {
     public GLOptionItem(Context context, int iconId, String title) {
         initializeStaticVariables(context);
         mIcon = iconId == 0 ? null : new ResourceTexture(context, iconId);
-        mText = CanvasTexture.newInstance(title, sFontSize, FONT_COLOR);
+        mText = TextTexture.newInstance(title, sFontSize, FONT_COLOR);
         mCheckBox = sCheckOff;
         setPaddings(sHorizontalPaddings,
                 sVerticalPaddings, sHorizontalPaddings, sVerticalPaddings);
@@ -119,7 +118,7 @@ class GLOptionItem extends GLView {
 
         int xoffset = p.left;
 
-        Transformation trans = root.mContentView.getTransformation(root);
+        TransformStack trans = root.mContentView.getTransformation(root);
         float oldAlpha = trans.getAlpha();
         trans.setAlpha(oldAlpha * (mEnabled ? ENABLED_ALPHA : DISABLED_ALPHA));
 
@@ -132,7 +131,7 @@ class GLOptionItem extends GLView {
             xoffset += sNoIconLeadingSpace;
         }
 
-        CanvasTexture title = mText;
+        TextTexture title = mText;
         xoffset += sTextLeftPadding;
         int yoffset = p.top + (height - title.getHeight()) / 2;
         //TODO: cut the text if it is too long
@@ -18,6 +18,7 @@ package com.lightbox.android.camera.ui;
 
 import com.lightbox.android.camera.CameraSettings;
 import com.lightbox.android.camera.MenuHelper;
+import com.lightbox.android.camera.ParameterValues;
 import com.lightbox.android.camera.R;
 import com.lightbox.android.camera.R.array;
 import com.lightbox.android.camera.R.id;
@@ -28,6 +29,7 @@ import com.lightbox.android.camera.device.CameraHolder;
 import com.lightbox.android.camera.ui.CameraEGLConfigChooser;
 import com.lightbox.android.camera.ui.GLRootView;
 import com.lightbox.android.camera.ui.GLView;
+import com.lightbox.android.camera.util.Profiler;
 
 import android.app.Activity;
 import android.content.ActivityNotFoundException;
@@ -35,10 +37,11 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences.Editor;
 import android.graphics.Color;
-import android.graphics.Matrix;
 import android.graphics.PixelFormat;
 import android.graphics.Rect;
 import android.opengl.GLSurfaceView;
+import android.os.Build;
+import android.os.Debug;
 import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.DisplayMetrics;
@@ -52,10 +55,10 @@ import android.view.animation.Transformation;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Stack;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
@@ -77,11 +80,14 @@ public class GLRootView extends GLSurfaceView
     private int mFrameCount = 0;
     private long mFrameCountingStart = 0;
 
-    // We need 16 vertices for a normal nine-patch image (the 4x4 vertices)
-    private static final int VERTEX_BUFFER_SIZE = 16 * 2;
+    // Logs the frames which allocate once the textures, glyphs and pools
+    // have warmed up. The render loop should not allocate at all.
+    private final boolean ENABLE_ALLOCATION_CHECK = false;
+    private static final int ALLOCATION_CHECK_WARM_UP = 30;
+    private int mAllocationCheckFrames = 0;
 
-    // We need 22 indices for a normal nine-patch image
-    private static final int INDEX_BUFFER_SIZE = 22;
+    // The untextured rectangles of drawRect() need 4 vertices.
+    private static final int VERTEX_BUFFER_SIZE = 4 * 2;
 
     private static final int FLAG_INITIALIZED = 1;
     private static final int FLAG_NEED_LAYOUT = 2;
@@ -96,35 +102,41 @@ public class GLRootView extends GLSurfaceView
 
     private final List<Animation> mAnimations =  Collections.synchronizedList(new ArrayList<Animation>());
 
-    final Stack<Transformation> mFreeTransform =
-            new Stack<Transformation>();
+    // The transform and alpha things are drawn with.
+    final TransformStack mTransform = new TransformStack();
+    // Filled by the running animations, one at a time.
+    private final Transformation mAnimationTransformation = new Transformation();
+    private final float[] mAnimationValues = new float[9];
 
-    final Transformation mTransformation = new Transformation();
-    final Stack<Transformation> mTransformStack =
-            new Stack<Transformation>();
-
-    private float mLastAlpha = mTransformation.getAlpha();
+    private float mLastAlpha = mTransform.getAlpha();
 
     final float mMatrixValues[] = new float[16];
 
-    final float mUvBuffer[] = new float[VERTEX_BUFFER_SIZE];
     final float mXyBuffer[] = new float[VERTEX_BUFFER_SIZE];
-    final byte mIndexBuffer[] = new byte[INDEX_BUFFER_SIZE];
 
     int mNinePatchX[] = new int[4];
     int mNinePatchY[] = new int[4];
     float mNinePatchU[] = new float[4];
     float mNinePatchV[] = new float[4];
 
-    ByteBuffer mXyPointer;
-    ByteBuffer mUvPointer;
-    ByteBuffer mIndexPointer;
+    // Views made once; asFloatBuffer() allocates.
+    FloatBuffer mXyPointer;
+    FloatBuffer mUvPointer;
 
     private int mFlags = FLAG_NEED_LAYOUT;
     long mAnimationTime;
 
     CameraEGLConfigChooser mEglConfigChooser = new CameraEGLConfigChooser();
 
+    // The small icons of the HUD, packed into shared textures.
+    final TextureAtlas mTextureAtlas = new TextureAtlas();
+    // Keeps the textures of the HUD under a memory budget.
+    final TextureManager mTextureManager = new TextureManager(mTextureAtlas);
+    // Draws the textured quads of a frame in as few calls as it can.
+    final SpriteBatch mSpriteBatch = new SpriteBatch();
+
+    private boolean mPaused;
+
     public GLRootView(Context context) {
         this(context, null);
     }
@@ -133,15 +145,18 @@ public class GLRootView extends GLSurfaceView
         super(context, attrs);
         mFlags |= FLAG_INITIALIZED;
 		setEGLConfigChooser(mEglConfigChooser);
+		if (Build.VERSION.SDK_INT >= 0x0000000B) {
+			// Keep the textures across onPause() where the GPU allows it.
+			setPreserveEGLContextOnPause(true);
+		}
 		getHolder().setFormat(PixelFormat.TRANSLUCENT);
 		setZOrderOnTop(true);
 		
 		setRenderer(this);
 		
 		int size = VERTEX_BUFFER_SIZE * Float.SIZE / Byte.SIZE;
-		mXyPointer = allocateDirectNativeOrderBuffer(size);
-		mUvPointer = allocateDirectNativeOrderBuffer(size);
-		mIndexPointer = allocateDirectNativeOrderBuffer(INDEX_BUFFER_SIZE);
+		mXyPointer = allocateDirectNativeOrderBuffer(size).asFloatBuffer();
+		mUvPointer = allocateDirectNativeOrderBuffer(size).asFloatBuffer();
     }
 
     void registerLaunchedAnimation(Animation animation) {
@@ -206,6 +221,33 @@ public class GLRootView extends GLSurfaceView
         if (changed) requestLayoutContentPane();
     }
 
+    @Override
+    public void onPause() {
+        super.onPause();
+        mPaused = true;
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        mPaused = false;
+    }
+
+    public boolean isPaused() {
+        return mPaused;
+    }
+
+    /**
+     * Frees the textures not on screen. They are uploaded again when drawn.
+     */
+    public void onLowMemory() {
+        queueEvent(new Runnable() {
+            public void run() {
+                if (mGL != null) mEglConfigChooser.handleLowMemory(GLRootView.this);
+            }
+        });
+    }
+
     /**
      * Called when the context is created, possibly after automatic destruction.
      */
@@ -217,6 +259,11 @@ public class GLRootView extends GLSurfaceView
             Log.i(TAG, "GLObject has changed from " + mGL + " to " + gl);
         }
         mGL = gl;
+        // The textures of the previous context are gone.
+        mTextureAtlas.reset();
+        mTextureManager.reset();
+        mSpriteBatch.reset();
+        BasicTexture.invalidateBinding();
 
         if (!ENABLE_FPS_TEST) {
             setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY);
@@ -243,9 +290,7 @@ public class GLRootView extends GLSurfaceView
         gl.glClearColor(0f, 0f, 0f, 0f);
         gl.glClearStencil(0);
 
-        gl.glVertexPointer(2, GL11.GL_FLOAT, 0, mXyPointer);
-        gl.glTexCoordPointer(2, GL11.GL_FLOAT, 0, mUvPointer);
-
+        restoreVertexPointers();
     }
 
     /**
@@ -258,6 +303,19 @@ public class GLRootView extends GLSurfaceView
 		mEglConfigChooser.onSurfaceChanged(this, gl1, width, height);
 	}
 
+    void restoreVertexPointers() {
+        mGL.glVertexPointer(2, GL11.GL_FLOAT, 0, mXyPointer);
+        mGL.glTexCoordPointer(2, GL11.GL_FLOAT, 0, mUvPointer);
+    }
+
+    /**
+     * Draws the pending textured quads. Call before drawing anything else,
+     * or changing the clip, stencil or blending.
+     */
+    void flushSprites() {
+        mSpriteBatch.flush(this);
+    }
+
     void setAlphaValue(float alpha) {
         if (mLastAlpha == alpha) return;
 
@@ -274,7 +332,7 @@ public class GLRootView extends GLSurfaceView
     }
 
     static void putRectangle(float x, float y,
-            float width, float height, float[] buffer, ByteBuffer pointer) {
+            float width, float height, float[] buffer, FloatBuffer pointer) {
         buffer[0] = x;
         buffer[1] = y;
         buffer[2] = x + width;
@@ -283,7 +341,7 @@ public class GLRootView extends GLSurfaceView
         buffer[5] = y + height;
         buffer[6] = x + width;
         buffer[7] = y + height;
-        pointer.asFloatBuffer().put(buffer, 0, 8).position(0);
+        pointer.put(buffer, 0, 8).position(0);
     }
 
     void drawRect(
@@ -296,13 +354,28 @@ public class GLRootView extends GLSurfaceView
         gl.glPopMatrix();
     }
 
-    float[] mapPoints(Matrix matrix, int x1, int y1, int x2, int y2) {
+    float[] mapPoints(int x1, int y1, int x2, int y2) {
         float[] point = mXyBuffer;
         point[0] = x1; point[1] = y1; point[2] = x2; point[3] = y2;
-        matrix.mapPoints(point, 0, point, 0, 4);
+        mTransform.mapPoints(point, 2);
         return point;
     }
 
+    /**
+     * Saves the transform and applies anim to it at the time now. Returns
+     * whether the animation is still running.
+     */
+    boolean pushAnimation(Animation anim, long now) {
+        Transformation t = mAnimationTransformation;
+        t.clear();
+        boolean more = anim.getTransformation(now, t);
+        mTransform.save();
+        t.getMatrix().getValues(mAnimationValues);
+        mTransform.concat(mAnimationValues);
+        mTransform.multiplyAlpha(t.getAlpha());
+        return more;
+    }
+
     static float[] toGLMatrix(float v[]) {
         v[15] = v[8]; v[13] = v[5]; v[5] = v[4]; v[4] = v[1];
         v[12] = v[2]; v[1] = v[3]; v[3] = v[6];
@@ -312,7 +385,8 @@ public class GLRootView extends GLSurfaceView
     }
 
     public void drawColor(int x, int y, int width, int height, int color) {
-        float alpha = mTransformation.getAlpha();
+        flushSprites();
+        float alpha = mTransform.getAlpha();
         GL11 gl = mGL;
         if (mTexture2DEnabled) {
             // Set mLastAlpha to an invalid value, so that it will reset again
@@ -328,6 +402,7 @@ public class GLRootView extends GLSurfaceView
     }
 
     public synchronized void onDrawFrame(GL10 gl) {
+        if (ENABLE_ALLOCATION_CHECK) startAllocationCheck();
         if (ENABLE_FPS_TEST) {
             long now = System.nanoTime();
             if (mFrameCountingStart == 0) {
@@ -348,14 +423,35 @@ public class GLRootView extends GLSurfaceView
         gl.glBlendFunc(GL11.GL_ONE, GL11.GL_ONE_MINUS_SRC_ALPHA);
 
         mAnimationTime = SystemClock.uptimeMillis();
+        mTextureManager.beginFrame();
         if (mContentView != null) {
+            long section = Profiler.begin();
             mContentView.render(GLRootView.this, (GL11) gl);
+            mSpriteBatch.endFrame(this);
+            Profiler.end(Profiler.SECTION_HUD_RENDER, section);
         }
         long now = SystemClock.uptimeMillis();
-        for (Animation animation : mAnimations) {
-            animation.setStartTime(now);
+        synchronized (mAnimations) {
+            // Indexed, as an iterator would be allocated every frame.
+            for (int i = 0, n = mAnimations.size(); i < n; ++i) {
+                mAnimations.get(i).setStartTime(now);
+            }
+            mAnimations.clear();
+        }
+        if (ENABLE_ALLOCATION_CHECK) endAllocationCheck();
+    }
+
+    private void startAllocationCheck() {
+        if (mAllocationCheckFrames++ == 0) Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+    }
+
+    private void endAllocationCheck() {
+        int count = Debug.getThreadAllocCount();
+        if (count > 0 && mAllocationCheckFrames > ALLOCATION_CHECK_WARM_UP) {
+            Log.w(TAG, "frame " + mAllocationCheckFrames + " allocated " + count
+                    + " objects, " + Debug.getThreadAllocSize() + " bytes");
         }
-        mAnimations.clear();
     }
 
     @Override
@@ -392,25 +488,22 @@ public class GLRootView extends GLSurfaceView
 	    int xoffset = component.mBounds.left - glView.mScrollX;
 	    int yoffset = component.mBounds.top - glView.mScrollY;
 	
-	    Transformation transform = mContentView.getTransformation(this);
-	    Matrix matrix = transform.getMatrix();
-	    matrix.preTranslate(xoffset, yoffset);
+	    TransformStack transform = mTransform;
+	    // Restoring, rather than translating back, leaves no rounding error.
+	    transform.save();
+	    transform.translate(xoffset, yoffset);
 	
 	    Animation anim = component.mAnimation;
 	    if (anim != null) {
 	        long now = mEglConfigChooser.currentAnimationTimeMillis(this);
-	        Transformation temp = mContentView.obtainTransformation(this);
-	        if (!anim.getTransformation(now, temp)) {
+	        if (!pushAnimation(anim, now)) {
 	            component.mAnimation = null;
 	        }
 	        glView.invalidate();
-	        mEglConfigChooser.pushTransform(this);
-	        transform.compose(temp);
-	        mContentView.freeTransformation(this, temp);
 	    }
 	    component.render(this, gl);
-	    if (anim != null) mContentView.popTransform(this);
-	    matrix.preTranslate(-xoffset, -yoffset);
+	    if (anim != null) transform.restore();
+	    transform.restore();
 	}
 
 	public void doCancel(Camera camera) {
@@ -440,7 +533,7 @@ public class GLRootView extends GLSurfaceView
 	    if (camera.mPausing) return;
 	    Runnable runnable = new Runnable() {
 	        public void run() {
-	            camera.mHeadUpDisplay.mSharedPrefs.restorePreferences(camera.mHeadUpDisplay, camera.mParameters);
+	            camera.mHeadUpDisplay.mSharedPrefs.restorePreferences(camera.mHeadUpDisplay);
 	        }
 	    };
 	    MenuHelper.confirmAction(camera,
@@ -489,7 +582,9 @@ public class GLRootView extends GLSurfaceView
 	            doCancel();
 	            break;*/
 	        case id.btn_flash:
-	        	String flashMode = camera.mParameters.getFlashMode();
+	        	ParameterValues values = camera.mParameterValues;
+	        	String flashMode = (values != null) ? values.getFlashMode() : null;
+	        	if (flashMode == null) break;
 	        	String[] flashModes = camera.getResources().getStringArray(array.pref_camera_flashmode_entryvalues);
 	        	Editor editor = camera.mPreferences.edit();
 	        	if (flashMode.equals(flashModes[0])) {
@@ -23,7 +23,6 @@ import android.util.DisplayMetrics;
 import android.view.MotionEvent;
 import android.view.View.MeasureSpec;
 import android.view.animation.Animation;
-import android.view.animation.Transformation;
 
 import java.util.ArrayList;
 
@@ -99,8 +98,10 @@ public class GLView {
     protected void onRemoveFromParent(GLView parent) {
         if (parent != null && parent.mMotionTarget == this) {
             long now = SystemClock.uptimeMillis();
-            dispatchTouchEvent(MotionEvent.obtain(
-                    now, now, MotionEvent.ACTION_CANCEL, 0, 0, 0));
+            MotionEvent cancel = MotionEvent.obtain(
+                    now, now, MotionEvent.ACTION_CANCEL, 0, 0, 0);
+            dispatchTouchEvent(cancel);
+            cancel.recycle();
             parent.mMotionTarget = null;
         }
         onDetachFromRoot();
@@ -211,6 +212,8 @@ public class GLView {
             if (action == MotionEvent.ACTION_DOWN) {
                 MotionEvent cancel = MotionEvent.obtain(event);
                 cancel.setAction(MotionEvent.ACTION_CANCEL);
+                dispatchTouchEvent(cancel, x, y, mMotionTarget, false);
+                cancel.recycle();
                 mMotionTarget = null;
             } else {
                 dispatchTouchEvent(event, x, y, mMotionTarget, false);
@@ -330,8 +333,7 @@ public class GLView {
     }
 
 	public void clipRect(GLRootView glRootView, int x, int y, int width, int height) {
-	    float point[] = glRootView.mapPoints(
-	            glRootView.mTransformation.getMatrix(), x, y + height, x + width, y);
+	    float point[] = glRootView.mapPoints(x, y + height, x + width, y);
 	
 	    // mMatrix could be a rotation matrix. In this case, we need to find
 	    // the boundaries after rotation. (only handle 90 * n degrees)
@@ -349,6 +351,7 @@ public class GLView {
 	        y = (int) point[1];
 	        height = (int) point[3] - y;
 	    }
+	    glRootView.flushSprites();
 	    glRootView.mGL.glScissor(x, y, width, height);
 	}
 
@@ -382,23 +385,14 @@ public class GLView {
 	            xoffset, yoffset, xoffset + width, yoffset + height);
 	}
 
-	public Transformation getTransformation(GLRootView glRootView) {
-	    return glRootView.mTransformation;
+	public TransformStack getTransformation(GLRootView glRootView) {
+	    return glRootView.mTransform;
 	}
 
 	public CameraEGLConfigChooser getEGLConfigChooser(GLRootView glRootView) {
 	    return glRootView.mEglConfigChooser;
 	}
 
-	public Transformation obtainTransformation(GLRootView glRootView) {
-	    if (!glRootView.mFreeTransform.isEmpty()) {
-	        Transformation t = glRootView.mFreeTransform.pop();
-	        t.clear();
-	        return t;
-	    }
-	    return new Transformation();
-	}
-
 	void showPopupWindow(HeadUpDisplay headUpDisplay) {
 	    layoutPopupWindow(headUpDisplay);
 	    headUpDisplay.mPopupWindow.popup();
@@ -410,13 +404,7 @@ public class GLView {
 	}
 
 	public void popTransform(GLRootView glRootView) {
-	    Transformation trans = glRootView.mTransformStack.pop();
-	    glRootView.mTransformation.set(trans);
-	    glRootView.mContentView.freeTransformation(glRootView, trans);
-	}
-
-	public void freeTransformation(GLRootView glRootView, Transformation freeTransformation) {
-	    glRootView.mFreeTransform.push(freeTransformation);
+	    glRootView.mTransform.restore();
 	}
 
 	public DisplayMetrics getDisplayMetrics(GLRootView glRootView) {
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2012 Lightbox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightbox.android.camera.ui;
+
+import java.util.HashMap;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Paint.FontMetricsInt;
+import android.util.SparseArray;
+
+/**
+ * The glyphs of one text size and color, each rasterized once into a small
+ * texture. The glyph textures are packed into the pages of the HUD's
+ * {@link TextureAtlas}, so after the first frames a label costs no bitmap
+ * and no upload; see {@link TextTexture}. Glyphs upload themselves again
+ * after the GL context is lost, like the other bitmap textures.
+ */
+class GlyphAtlas {
+	// Room around each glyph for the shadow.
+	static final int PADDING = 2;
+
+	private static final float SHADOW_RADIUS = 1.5f;
+
+	private static final HashMap<Long, GlyphAtlas> sAtlases =
+			new HashMap<Long, GlyphAtlas>();
+
+	private final Paint mPaint;
+	private final FontMetricsInt mMetrics;
+	private final int mHeight;
+	// Glyphs are looked up on the GL thread only.
+	private final SparseArray<Glyph> mGlyphs = new SparseArray<Glyph>();
+
+	/** One character, with its shadow. */
+	private class Glyph extends BitmapTexture {
+		private final char mChar;
+
+		Glyph(char c, int width) {
+			mChar = c;
+			setSize(width, mHeight);
+		}
+
+		@Override
+		protected boolean isAtlasCandidate() {
+			return true;
+		}
+
+		@Override
+		protected Bitmap getBitmap() {
+			Bitmap bitmap = Bitmap.createBitmap(mWidth, mHeight, Config.ARGB_8888);
+			Canvas canvas = new Canvas(bitmap);
+			canvas.translate(PADDING, PADDING - mMetrics.ascent);
+			canvas.drawText(String.valueOf(mChar), 0, 0, mPaint);
+			return bitmap;
+		}
+
+		@Override
+		protected void freeBitmap(Bitmap bitmap) {
+			bitmap.recycle();
+		}
+	}
+
+	private GlyphAtlas(float textSize, int color) {
+		mPaint = new Paint();
+		mPaint.setTextSize(textSize);
+		mPaint.setAntiAlias(true);
+		mPaint.setColor(color);
+		mPaint.setShadowLayer(SHADOW_RADIUS, 0, 0, Color.BLACK);
+		mMetrics = mPaint.getFontMetricsInt();
+		mHeight = mMetrics.bottom - mMetrics.top + PADDING * 2;
+	}
+
+	/** Returns the shared glyphs of textSize and color. */
+	static GlyphAtlas getInstance(float textSize, int color) {
+		Long key = ((long) Float.floatToIntBits(textSize) << 32) | (color & 0xffffffffL);
+		synchronized (sAtlases) {
+			GlyphAtlas atlas = sAtlases.get(key);
+			if (atlas == null) {
+				atlas = new GlyphAtlas(textSize, color);
+				sAtlases.put(key, atlas);
+			}
+			return atlas;
+		}
+	}
+
+	/** The height of a line, padding included. */
+	int getHeight() {
+		return mHeight;
+	}
+
+	/**
+	 * Fills advances with the advance of each character of text, and returns
+	 * their sum.
+	 */
+	float measure(String text, float[] advances) {
+		// A Paint is not safe to use from several threads at once.
+		synchronized (mPaint) {
+			mPaint.getTextWidths(text, advances);
+		}
+		float width = 0;
+		for (int i = 0, n = text.length(); i < n; i++) {
+			width += advances[i];
+		}
+		return width;
+	}
+
+	/**
+	 * Draws the glyph of c with its origin, padding included, at x, y. Must
+	 * be called on the GL thread.
+	 */
+	void drawGlyph(GLRootView root, char c, int x, int y) {
+		Glyph glyph = mGlyphs.get(c);
+		if (glyph == null) {
+			int width;
+			synchronized (mPaint) {
+				width = (int) Math.ceil(mPaint.measureText(String.valueOf(c)));
+			}
+			glyph = new Glyph(c, width + PADDING * 2);
+			mGlyphs.put(c, glyph);
+		}
+		glyph.draw(root, x, y);
+	}
+}
@@ -16,8 +16,6 @@
 
 package com.lightbox.android.camera.ui;
 
-import javax.microedition.khronos.opengles.GL11;
-
 import com.lightbox.android.camera.Util;
 import com.lightbox.android.camera.ui.GLListView.OnItemSelectedListener;
 import com.lightbox.android.camera.ui.GLRootView;
@@ -27,10 +25,8 @@ import com.lightbox.android.camera.ui.ResourceTexture;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.graphics.Matrix;
 import android.graphics.Rect;
 import android.view.animation.Animation;
-import android.view.animation.Transformation;
 
 class NinePatchTexture extends ResourceTexture {
     private NinePatchChunk mChunk;
@@ -39,6 +35,12 @@ class NinePatchTexture extends ResourceTexture {
         super(context, resId);
     }
 
+    @Override
+    protected boolean isAtlasCandidate() {
+        // The mesh is drawn with UVs over the whole texture.
+        return false;
+    }
+
     @Override
     protected Bitmap getBitmap() {
         if (mBitmap != null) return mBitmap;
@@ -96,15 +98,10 @@ class NinePatchTexture extends ResourceTexture {
 	    int nx = glRootView.mContentView.stretch(divX, divU, chunk.mDivX, getWidth(), width);
 	    int ny = glRootView.mContentView.stretch(divY, divV, chunk.mDivY, getHeight(), height);
 	
-	    glRootView.setAlphaValue(glRootView.mTransformation.getAlpha());
-	    Matrix matrix = glRootView.mTransformation.getMatrix();
-	    matrix.getValues(glRootView.mMatrixValues);
-	    GL11 gl = glRootView.mGL;
-	    gl.glPushMatrix();
-	    gl.glMultMatrixf(GLRootView.toGLMatrix(glRootView.mMatrixValues), 0);
-	    gl.glTranslatef(x, y, 0);
-	    glRootView.mEglConfigChooser.drawMesh(glRootView, divX, divY, divU, divV, nx, ny);
-	    gl.glPopMatrix();
+	    TransformStack transform = glRootView.mTransform;
+	    glRootView.mSpriteBatch.addGrid(glRootView, mId,
+	            transform.getAlpha(), transform.getValues(),
+	            x, y, divX, divY, divU, divV, nx, ny);
 	}
 
 	public void setZoomIndex(ZoomController zoomController, int index) {
@@ -141,10 +138,7 @@ class NinePatchTexture extends ResourceTexture {
 
 	boolean drawWithAnimation(GLListView glListView, GLRootView root, Texture texture, int x, int y, int w, int h, Animation anim) {
 	    long now = root.mEglConfigChooser.currentAnimationTimeMillis(root);
-	    Transformation temp = root.mContentView.obtainTransformation(root);
-	    boolean more = anim.getTransformation(now, temp);
-	    Transformation transformation = root.mEglConfigChooser.pushTransform(root);
-	    transformation.compose(temp);
+	    boolean more = root.pushAnimation(anim, now);
 	    texture.draw(root, x, y, w, h);
 	    glListView.invalidate();
 	    root.mContentView.popTransform(root);
@@ -121,9 +121,11 @@ class PopupWindow extends GLView {
         aYoffset = Math.min(aYoffset, height - p.bottom - aHeight);
 
         if (mAnchor != null) {
+            root.flushSprites();
             gl.glStencilOp(GL11.GL_KEEP, GL11.GL_KEEP, GL11.GL_REPLACE);
             gl.glStencilFunc(GL11.GL_ALWAYS, 1, 1);
             mAnchor.draw(root, aXoffset, aYoffset);
+            root.flushSprites();
             gl.glStencilFunc(GL11.GL_NOTEQUAL, 1, 1);
             gl.glStencilOp(GL11.GL_KEEP, GL11.GL_KEEP, GL11.GL_KEEP);
         }
@@ -168,6 +170,7 @@ class PopupWindow extends GLView {
                     width - aWidth + mAnchorOffset, height);
         }
 
+        root.flushSprites();
         gl.glBlendFunc(GL11.GL_ONE, GL11.GL_ZERO);
         backup.drawBack(root, aXoffset, aYoffset, aWidth, aHeight);
         gl.glBlendFunc(GL11.GL_ONE, GL11.GL_ONE_MINUS_SRC_ALPHA);
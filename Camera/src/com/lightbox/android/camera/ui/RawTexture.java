@@ -20,7 +20,6 @@ package com.lightbox.android.camera.ui;
 import javax.microedition.khronos.opengles.GL11;
 import javax.microedition.khronos.opengles.GL11Ext;
 
-import android.graphics.Matrix;
 
 import com.lightbox.android.camera.Util;
 import com.lightbox.android.camera.ui.BasicTexture;
@@ -38,40 +37,60 @@ class RawTexture extends BasicTexture {
     }
 
     public static RawTexture newInstance(GL11 gl) {
-        int[] textureId = new int[1];
-        gl.glGenTextures(1, textureId, 0);
+        int textureId = genTexture(gl);
         int glError = gl.glGetError();
         if (glError != GL11.GL_NO_ERROR) {
             throw new RuntimeException("GL_ERROR: " + glError);
         }
-        return new RawTexture(gl, textureId[0]);
+        return new RawTexture(gl, textureId);
     }
 
     @Override
     protected boolean bind(GLRootView glRootView, GL11 gl) {
         if (mGL == gl) {
-            gl.glBindTexture(GL11.GL_TEXTURE_2D, getId());
+            bindTexture(gl, getId());
             return true;
         }
         return false;
     }
 
+    // Copied from the framebuffer, so upside down compared to the bitmap
+    // textures; drawn on its own with OES_draw_texture rather than batched.
     public void drawBack(GLRootView root, int x, int y, int w, int h) {
-        drawTexture(root, x, y, w, h, 1f);
+        root.flushSprites();
+        if (!GLRootView.mTexture2DEnabled) {
+            root.mGL.glEnable(GL11.GL_TEXTURE_2D);
+            GLRootView.mTexture2DEnabled = true;
+        }
+        if (!bind(root, root.mGL)) {
+            throw new RuntimeException("cannot bind" + toString());
+        }
+        if (w <= 0 || h <= 0) return;
+
+        // draw the rect from bottom-left to top-right
+        float points[] = root.mapPoints(x, y + h, x + w, y);
+        x = (int) points[0];
+        y = (int) points[1];
+        w = (int) points[2] - x;
+        h = (int) points[3] - y;
+        if (w > 0 && h > 0) {
+            root.setAlphaValue(1f);
+            ((GL11Ext) root.mGL).glDrawTexiOES(x, y, 0, w, h);
+        }
     }
 
 	public void copyTexture2D(
 	        GLRootView glRootView, int x, int y, int width, int height)
 	        throws GLOutOfMemoryException {
-	    Matrix matrix = glRootView.mTransformation.getMatrix();
-	    matrix.getValues(glRootView.mMatrixValues);
-		float[] matrix1 = glRootView.mMatrixValues;
+	    // The quads drawn so far must be in the framebuffer.
+	    glRootView.flushSprites();
+	    float[] matrix = glRootView.mTransform.getValues();
 	
-	    if (matrix1[Matrix.MSKEW_X] != 0 || matrix1[Matrix.MSKEW_Y] != 0
-		|| matrix1[Matrix.MSCALE_X] < 0 || matrix1[Matrix.MSCALE_Y] > 0) {
+	    if (matrix[TransformStack.SKEW_X] != 0 || matrix[TransformStack.SKEW_Y] != 0
+		|| matrix[TransformStack.SCALE_X] < 0 || matrix[TransformStack.SCALE_Y] > 0) {
 	        throw new IllegalArgumentException("cannot support rotated matrix");
 	    }
-	    float points[] = glRootView.mapPoints(matrix, x, y + height, x + width, y);
+	    float points[] = glRootView.mapPoints(x, y + height, x + width, y);
 	    x = (int) points[0];
 	    y = (int) points[1];
 	    width = (int) points[2] - x;
@@ -82,7 +101,7 @@ class RawTexture extends BasicTexture {
 	    int newHeight = Util.nextPowerOf2(height);
 	    int glError = GL11.GL_NO_ERROR;
 	
-	    gl.glBindTexture(GL11.GL_TEXTURE_2D, getId());
+	    bindTexture(gl, getId());
 	
 	    int[] cropRect = {0,  0, width, height};
 	    gl.glTexParameteriv(GL11.GL_TEXTURE_2D,
@@ -34,6 +34,11 @@ class ResourceTexture extends BitmapTexture {
         mResId = resId;
     }
 
+    @Override
+    protected boolean isAtlasCandidate() {
+        return true;
+    }
+
     @Override
     protected Bitmap getBitmap() {
         if (mBitmap != null) return mBitmap;
@@ -26,7 +26,7 @@ import javax.microedition.khronos.opengles.GL11;
 import com.lightbox.android.camera.ui.GLRootView;
 import com.lightbox.android.camera.ui.GLView;
 import com.lightbox.android.camera.ui.MeasureHelper;
-import com.lightbox.android.camera.ui.CanvasTexture;
+import com.lightbox.android.camera.ui.TextTexture;
 
 class RestoreSettingsItem extends GLView {
     private static final int FONT_COLOR = Color.WHITE;
@@ -43,7 +43,7 @@ class RestoreSettingsItem extends GLView {
     private static int sBottomPadding;
     private static float sFontSize;
 
-    private final CanvasTexture mText;
+    private final TextTexture mText;
 
     private static void initializeStaticVariables(Context context) {
         if (sLeftPadding >= 0) return;
@@ -57,7 +57,7 @@ class RestoreSettingsItem extends GLView {
 
     public RestoreSettingsItem(Context context, String title) {
         initializeStaticVariables(context);
-        mText = CanvasTexture.newInstance(title, sFontSize, FONT_COLOR);
+        mText = TextTexture.newInstance(title, sFontSize, FONT_COLOR);
         setPaddings(sLeftPadding, sTopPadding, sRightPadding, sBottomPadding);
     }
 
@@ -73,7 +73,7 @@ class RestoreSettingsItem extends GLView {
         Rect p = mPaddings;
         int height = getHeight() - p.top - p.bottom;
 
-        CanvasTexture title = mText;
+        TextTexture title = mText;
         //TODO: cut the text if it is too long
         title.draw(root, p.left, p.top + (height - title.getHeight()) / 2);
     }
@@ -16,7 +16,6 @@
 
 package com.lightbox.android.camera.ui;
 
-import android.graphics.Matrix;
 import android.view.MotionEvent;
 
 import javax.microedition.khronos.opengles.GL11;
@@ -77,19 +76,18 @@ class RotatePane extends GLView {
             return;
         }
 
-        view.mEglConfigChooser.pushTransform(view);
-        Matrix matrix = view.mContentView.getTransformation(view).getMatrix();
+        TransformStack transform = view.mEglConfigChooser.pushTransform(view);
         float width = mRootView.getWidth(this);
         float height = getHeight();
         switch (mOrientation) {
             case DOWN:
-                matrix.preRotate(180, width / 2, height / 2);
+                transform.rotate(180, width / 2, height / 2);
                 break;
             case LEFT:
-                matrix.preRotate(270, height / 2, height / 2);
+                transform.rotate(270, height / 2, height / 2);
                 break;
             case RIGHT:
-                matrix.preRotate(90, width / 2, width / 2);
+                transform.rotate(90, width / 2, width / 2);
                 break;
         }
         mChild.render(view, gl);
@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2012 Lightbox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightbox.android.camera.ui;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+import javax.microedition.khronos.opengles.GL11;
+
+import android.util.Log;
+
+/**
+ * Collects the textured quads of a frame and draws those sharing a texture
+ * and an alpha with one glDrawElements. The quads are transformed on the CPU,
+ * so the model-view matrix stays identity. Icons and glyphs in the same
+ * {@link TextureAtlas} page go out together.
+ *
+ * <p>Anything else that draws or changes GL state must {@link #flush} first;
+ * see {@link GLRootView#flushSprites()}. Only used on the GL thread.
+ */
+class SpriteBatch {
+	/** Used to tag logs */
+	private static final String TAG = "SpriteBatch";
+
+	private static final int MAX_QUADS = 64;
+	private static final int FLOAT_SIZE = 4;
+	private static final int SHORT_SIZE = 2;
+
+	private final float[] mXy = new float[MAX_QUADS * 8];
+	private final float[] mUv = new float[MAX_QUADS * 8];
+	private final FloatBuffer mXyBuffer;
+	private final FloatBuffer mUvBuffer;
+	private final ShortBuffer mIndexBuffer;
+	// The indices never change, so they are kept in a buffer object: 0 until
+	// uploaded in the current context, -1 if that failed and the client
+	// array is used.
+	private int mIndexBufferId;
+	private final int[] mBufferIds = new int[1];
+
+	// The state shared by the pending quads.
+	private int mCount;
+	private int mTextureId;
+	private float mAlpha;
+
+	// Per frame: the sprites drawn, each of which used to be a draw call,
+	// and the draw calls actually made.
+	private int mSpriteCount;
+	private int mDrawCallCount;
+	private long mFrameCount;
+	private long mTotalSpriteCount;
+	private long mTotalDrawCallCount;
+
+	SpriteBatch() {
+		mXyBuffer = allocateFloats(mXy.length);
+		mUvBuffer = allocateFloats(mUv.length);
+		mIndexBuffer = ByteBuffer.allocateDirect(MAX_QUADS * 6 * SHORT_SIZE)
+				.order(ByteOrder.nativeOrder()).asShortBuffer();
+		// Two triangles per quad, over vertices laid out as a strip.
+		for (int i = 0; i < MAX_QUADS; i++) {
+			short first = (short) (i * 4);
+			mIndexBuffer.put(first).put((short) (first + 1)).put((short) (first + 2))
+					.put((short) (first + 2)).put((short) (first + 1)).put((short) (first + 3));
+		}
+		mIndexBuffer.position(0);
+	}
+
+	private static FloatBuffer allocateFloats(int count) {
+		return ByteBuffer.allocateDirect(count * FLOAT_SIZE)
+				.order(ByteOrder.nativeOrder()).asFloatBuffer();
+	}
+
+	/**
+	 * Adds the quad x, y, width, height, mapped by matrix, the values of a
+	 * {@link TransformStack}, with the texture coordinates u0, v0 at its
+	 * top-left and u1, v1 at its bottom-right. Flushes first if the texture
+	 * or the alpha differs from the pending quads.
+	 */
+	void add(GLRootView root, int textureId, float alpha, float[] matrix,
+			float x, float y, float width, float height,
+			float u0, float v0, float u1, float v1) {
+		addQuad(root, textureId, alpha, matrix, x, y, width, height, u0, v0, u1, v1);
+		mSpriteCount++;
+	}
+
+	/**
+	 * Adds the cells of a stretched nine-patch, as one sprite: the nx by ny
+	 * grid of divX, divY, offset by x, y, with the texture coordinates divU,
+	 * divV.
+	 */
+	void addGrid(GLRootView root, int textureId, float alpha, float[] matrix,
+			int x, int y, int[] divX, int[] divY, float[] divU, float[] divV,
+			int nx, int ny) {
+		for (int j = 0; j < ny - 1; j++) {
+			int height = divY[j + 1] - divY[j];
+			if (height <= 0) continue;
+			for (int i = 0; i < nx - 1; i++) {
+				int width = divX[i + 1] - divX[i];
+				if (width <= 0) continue;
+				addQuad(root, textureId, alpha, matrix,
+						x + divX[i], y + divY[j], width, height,
+						divU[i], divV[j], divU[i + 1], divV[j + 1]);
+			}
+		}
+		mSpriteCount++;
+	}
+
+	private void addQuad(GLRootView root, int textureId, float alpha, float[] matrix,
+			float x, float y, float width, float height,
+			float u0, float v0, float u1, float v1) {
+		if (mCount > 0 && (textureId != mTextureId || alpha != mAlpha)) {
+			flush(root);
+		}
+		if (mCount == MAX_QUADS) flush(root);
+		mTextureId = textureId;
+		mAlpha = alpha;
+
+		float sx = matrix[TransformStack.SCALE_X];
+		float kx = matrix[TransformStack.SKEW_X];
+		float tx = matrix[TransformStack.TRANS_X];
+		float ky = matrix[TransformStack.SKEW_Y];
+		float sy = matrix[TransformStack.SCALE_Y];
+		float ty = matrix[TransformStack.TRANS_Y];
+		float right = x + width;
+		float bottom = y + height;
+
+		float[] xy = mXy;
+		int i = mCount * 8;
+		xy[i] = sx * x + kx * y + tx;
+		xy[i + 1] = ky * x + sy * y + ty;
+		xy[i + 2] = sx * right + kx * y + tx;
+		xy[i + 3] = ky * right + sy * y + ty;
+		xy[i + 4] = sx * x + kx * bottom + tx;
+		xy[i + 5] = ky * x + sy * bottom + ty;
+		xy[i + 6] = sx * right + kx * bottom + tx;
+		xy[i + 7] = ky * right + sy * bottom + ty;
+
+		float[] uv = mUv;
+		uv[i] = u0;
+		uv[i + 1] = v0;
+		uv[i + 2] = u1;
+		uv[i + 3] = v0;
+		uv[i + 4] = u0;
+		uv[i + 5] = v1;
+		uv[i + 6] = u1;
+		uv[i + 7] = v1;
+
+		mCount++;
+	}
+
+	/** Draws the pending quads. */
+	void flush(GLRootView root) {
+		if (mCount == 0) return;
+		GL11 gl = root.mGL;
+		if (!GLRootView.mTexture2DEnabled) {
+			gl.glEnable(GL11.GL_TEXTURE_2D);
+			GLRootView.mTexture2DEnabled = true;
+		}
+		BasicTexture.bindTexture(gl, mTextureId);
+		root.setAlphaValue(mAlpha);
+
+		int floats = mCount * 8;
+		mXyBuffer.put(mXy, 0, floats).position(0);
+		mUvBuffer.put(mUv, 0, floats).position(0);
+		gl.glVertexPointer(2, GL11.GL_FLOAT, 0, mXyBuffer);
+		gl.glTexCoordPointer(2, GL11.GL_FLOAT, 0, mUvBuffer);
+		if (mIndexBufferId == 0) uploadIndices(gl);
+		if (mIndexBufferId > 0) {
+			gl.glDrawElements(GL11.GL_TRIANGLES, mCount * 6,
+					GL11.GL_UNSIGNED_SHORT, 0);
+		} else {
+			gl.glDrawElements(GL11.GL_TRIANGLES, mCount * 6,
+					GL11.GL_UNSIGNED_SHORT, mIndexBuffer);
+		}
+		// GLRootView.drawRect() expects its own arrays.
+		root.restoreVertexPointers();
+
+		mCount = 0;
+		mDrawCallCount++;
+	}
+
+	// Nothing else in the HUD uses element buffers, so it stays bound.
+	private void uploadIndices(GL11 gl) {
+		gl.glGenBuffers(1, mBufferIds, 0);
+		int id = mBufferIds[0];
+		gl.glBindBuffer(GL11.GL_ELEMENT_ARRAY_BUFFER, id);
+		gl.glBufferData(GL11.GL_ELEMENT_ARRAY_BUFFER,
+				mIndexBuffer.capacity() * SHORT_SIZE, mIndexBuffer, GL11.GL_STATIC_DRAW);
+		if (gl.glGetError() != GL11.GL_NO_ERROR) {
+			gl.glBindBuffer(GL11.GL_ELEMENT_ARRAY_BUFFER, 0);
+			gl.glDeleteBuffers(1, mBufferIds, 0);
+			Log.w(TAG, "no index buffer object, using a client array");
+			id = -1;
+		}
+		mIndexBufferId = id;
+	}
+
+	/**
+	 * Drops the pending quads and forgets the index buffer object, after the
+	 * GL context was lost.
+	 */
+	void reset() {
+		mCount = 0;
+		mIndexBufferId = 0;
+	}
+
+	/** Draws what is pending, and counts the frame. */
+	void endFrame(GLRootView root) {
+		flush(root);
+		mFrameCount++;
+		mTotalSpriteCount += mSpriteCount;
+		mTotalDrawCallCount += mDrawCallCount;
+		if (Log.isLoggable(TAG, Log.VERBOSE)) {
+			Log.v(TAG, "frame: " + mDrawCallCount + " draw calls for "
+					+ mSpriteCount + " sprites, " + this);
+		}
+		mSpriteCount = 0;
+		mDrawCallCount = 0;
+	}
+
+	@Override
+	public String toString() {
+		return "SpriteBatch(" + mFrameCount + " frames, " + mTotalDrawCallCount
+				+ " draw calls for " + mTotalSpriteCount + " sprites)";
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2012 Lightbox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightbox.android.camera.ui;
+
+/**
+ * A line of HUD text, drawn glyph by glyph from a {@link GlyphAtlas}.
+ * Creating one only measures the text, so labels can be made freely, as when
+ * the zoom ratios change.
+ */
+class TextTexture implements Texture {
+	private final GlyphAtlas mGlyphs;
+	private final String mText;
+	// Where each glyph starts, from the left edge.
+	private final int[] mOffsets;
+	private final int mWidth;
+
+	private TextTexture(GlyphAtlas glyphs, String text) {
+		mGlyphs = glyphs;
+		mText = text;
+		int n = text.length();
+		float[] advances = new float[n];
+		float width = glyphs.measure(text, advances);
+		mOffsets = new int[n];
+		float x = 0;
+		for (int i = 0; i < n; i++) {
+			mOffsets[i] = Math.round(x);
+			x += advances[i];
+		}
+		mWidth = (int) (.5f + width) + GlyphAtlas.PADDING * 2;
+	}
+
+	public static TextTexture newInstance(String text, float textSize, int color) {
+		return new TextTexture(GlyphAtlas.getInstance(textSize, color), text);
+	}
+
+	public int getWidth() {
+		return mWidth;
+	}
+
+	public int getHeight() {
+		return mGlyphs.getHeight();
+	}
+
+	public void draw(GLRootView root, int x, int y) {
+		String text = mText;
+		for (int i = 0, n = text.length(); i < n; i++) {
+			char c = text.charAt(i);
+			if (Character.isWhitespace(c)) continue;
+			mGlyphs.drawGlyph(root, c, x + mOffsets[i], y);
+		}
+	}
+
+	public void draw(GLRootView root, int x, int y, int w, int h) {
+		// Text is not scaled.
+		draw(root, x, y);
+	}
+}
@@ -21,4 +21,6 @@ import com.lightbox.android.camera.ui.GLRootView;
 interface Texture {
     public void draw(GLRootView root, int x, int y);
     public void draw(GLRootView root, int x, int y, int w, int h);
+    public int getWidth();
+    public int getHeight();
 }
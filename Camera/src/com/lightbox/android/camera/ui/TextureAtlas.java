@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2012 Lightbox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightbox.android.camera.ui;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import javax.microedition.khronos.opengles.GL11;
+
+import android.graphics.Bitmap;
+import android.opengl.GLUtils;
+import android.util.Log;
+
+import com.lightbox.android.camera.Util;
+
+/**
+ * Packs the small HUD icons into a few shared textures, instead of one
+ * power-of-two texture each. A texture in the atlas keeps its page and its
+ * offset in it, so the icons of a page are drawn together by the
+ * {@link SpriteBatch}.
+ *
+ * <p>Pages are filled in shelves, left to right, and space is not reclaimed
+ * when a texture is deleted; the HUD only loads a few dozen icons. The pages
+ * belong to one GL context: {@link #reset()} drops them when it is lost.
+ * Only used on the GL thread.
+ */
+class TextureAtlas {
+	/** Used to tag logs */
+	private static final String TAG = "TextureAtlas";
+
+	static final int PAGE_SIZE = 512;
+	// Bigger bitmaps get a texture of their own.
+	static final int MAX_REGION_SIZE = 128;
+	// Transparent border around each region, so linear filtering does not
+	// pick up the neighbors.
+	private static final int PADDING = 1;
+
+	/** One shared texture. */
+	static class Page {
+		int mId;
+		// The shelf being filled.
+		private int mShelfX;
+		private int mShelfY;
+		private int mShelfHeight;
+
+		// Returns the offset of a width x height region as x << 16 | y, or
+		// -1 if the page is full.
+		private int allocate(int width, int height) {
+			if (mShelfX + width > PAGE_SIZE) {
+				mShelfY += mShelfHeight;
+				mShelfX = 0;
+				mShelfHeight = 0;
+			}
+			if (mShelfY + height > PAGE_SIZE) return -1;
+			int offset = (mShelfX << 16) | mShelfY;
+			mShelfX += width;
+			mShelfHeight = Math.max(mShelfHeight, height);
+			return offset;
+		}
+	}
+
+	private final ArrayList<Page> mPages = new ArrayList<Page>();
+	private int mTextureCount;
+	// What the textures in the atlas would take as separate power-of-two
+	// textures.
+	private long mStandaloneBytes;
+
+	/** Whether a bitmap is small enough, and in the format, to be packed. */
+	static boolean accepts(Bitmap bitmap) {
+		return bitmap.getConfig() == Bitmap.Config.ARGB_8888
+				&& bitmap.getWidth() <= MAX_REGION_SIZE
+				&& bitmap.getHeight() <= MAX_REGION_SIZE;
+	}
+
+	/**
+	 * Copies bitmap into a page and points texture at it, setting its id,
+	 * texture size and offset. The page is left bound.
+	 */
+	void add(GL11 gl, BasicTexture texture, Bitmap bitmap)
+			throws GLOutOfMemoryException {
+		int width = bitmap.getWidth();
+		int height = bitmap.getHeight();
+		int paddedWidth = width + 2 * PADDING;
+		int paddedHeight = height + 2 * PADDING;
+
+		Page page = null;
+		int offset = -1;
+		for (int i = mPages.size() - 1; i >= 0 && offset < 0; i--) {
+			page = mPages.get(i);
+			offset = page.allocate(paddedWidth, paddedHeight);
+		}
+		if (offset < 0) {
+			page = newPage(gl);
+			offset = page.allocate(paddedWidth, paddedHeight);
+		} else {
+			BasicTexture.bindTexture(gl, page.mId);
+		}
+
+		int x = (offset >>> 16) + PADDING;
+		int y = (offset & 0xffff) + PADDING;
+		GLUtils.texSubImage2D(GL11.GL_TEXTURE_2D, 0, x, y, bitmap,
+				GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE);
+
+		texture.mId = page.mId;
+		texture.mPage = page;
+		texture.mOffsetX = x;
+		texture.mOffsetY = y;
+		texture.setTextureSize(PAGE_SIZE, PAGE_SIZE);
+
+		mTextureCount++;
+		mStandaloneBytes += 4L * Util.nextPowerOf2(width) * Util.nextPowerOf2(height);
+		if (Log.isLoggable(TAG, Log.VERBOSE)) {
+			Log.v(TAG, "added " + width + "x" + height + ", " + this);
+		}
+	}
+
+	/** Forgets the pages, after the GL context was lost. */
+	void reset() {
+		for (Page page : mPages) {
+			page.mId = 0;
+		}
+		mPages.clear();
+		mTextureCount = 0;
+		mStandaloneBytes = 0;
+	}
+
+	/** Deletes the pages, to free memory. */
+	void release(GL11 gl) {
+		for (Page page : mPages) {
+			BasicTexture.deleteTexture(gl, page.mId);
+		}
+		reset();
+	}
+
+	int getPageCount() {
+		return mPages.size();
+	}
+
+	/** The bytes of texture memory the pages take. */
+	long getAtlasBytes() {
+		return 4L * PAGE_SIZE * PAGE_SIZE * mPages.size();
+	}
+
+	/**
+	 * The bytes saved over uploading each texture on its own, padded to
+	 * powers of two. Negative while the first page is mostly empty.
+	 */
+	long getSavedBytes() {
+		return mStandaloneBytes - getAtlasBytes();
+	}
+
+	@Override
+	public String toString() {
+		return "TextureAtlas(" + mTextureCount + " textures in "
+				+ mPages.size() + " pages, " + getAtlasBytes() / 1024
+				+ "K, saved " + getSavedBytes() / 1024 + "K)";
+	}
+
+	private Page newPage(GL11 gl) throws GLOutOfMemoryException {
+		int textureId = BasicTexture.genTexture(gl);
+		BasicTexture.bindTexture(gl, textureId);
+		gl.glTexParameteri(GL11.GL_TEXTURE_2D,
+				GL11.GL_TEXTURE_WRAP_S, GL11.GL_CLAMP_TO_EDGE);
+		gl.glTexParameteri(GL11.GL_TEXTURE_2D,
+				GL11.GL_TEXTURE_WRAP_T, GL11.GL_CLAMP_TO_EDGE);
+		gl.glTexParameterf(GL11.GL_TEXTURE_2D,
+				GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR);
+		gl.glTexParameterf(GL11.GL_TEXTURE_2D,
+				GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_LINEAR);
+		// Start transparent, for the padding. A direct buffer is zeroed.
+		ByteBuffer pixels = ByteBuffer.allocateDirect(4 * PAGE_SIZE * PAGE_SIZE);
+		gl.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_RGBA, PAGE_SIZE,
+				PAGE_SIZE, 0, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, pixels);
+		if (gl.glGetError() == GL11.GL_OUT_OF_MEMORY) {
+			BasicTexture.deleteTexture(gl, textureId);
+			throw new GLOutOfMemoryException();
+		}
+
+		Page page = new Page();
+		page.mId = textureId;
+		mPages.add(page);
+		Log.v(TAG, "new page, " + this);
+		return page;
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2012 Lightbox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightbox.android.camera.ui;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.microedition.khronos.opengles.GL11;
+
+import android.util.Log;
+
+/**
+ * Keeps the GL memory of the HUD textures under a budget. Every texture with
+ * a GL texture of its own is recorded with its size when it is uploaded and
+ * touched each time it is drawn; when the total goes over the budget, or GL
+ * runs out of memory, the least recently drawn ones are deleted. They are
+ * uploaded again the next time they are drawn.
+ *
+ * <p>Textures drawn in the current frame are never evicted. The atlas pages
+ * count towards the budget but are only dropped on low memory. Only used on
+ * the GL thread.
+ */
+class TextureManager {
+	/** Used to tag logs */
+	private static final String TAG = "TextureManager";
+
+	public static final long DEFAULT_BUDGET = 8 * 1024 * 1024;
+
+	private final TextureAtlas mAtlas;
+	private long mBudget = DEFAULT_BUDGET;
+
+	private static class Entry {
+		int mBytes;
+		// The frame the texture was last drawn in.
+		long mFrame;
+	}
+
+	// In least recently drawn order. Touching an entry moves it without
+	// allocating, so drawing costs no garbage.
+	private final LinkedHashMap<BasicTexture, Entry> mTextures =
+			new LinkedHashMap<BasicTexture, Entry>(32, 0.75f, true);
+	private long mBytes;
+	private long mFrame;
+
+	private int mUploadCount;
+	private int mEvictionCount;
+
+	TextureManager(TextureAtlas atlas) {
+		mAtlas = atlas;
+	}
+
+	/** Sets the bytes of texture memory to stay under. */
+	void setBudget(long bytes) {
+		mBudget = bytes;
+	}
+
+	long getBudget() {
+		return mBudget;
+	}
+
+	/** Bytes taken by the recorded textures and the atlas pages. */
+	long getBytes() {
+		return mBytes + mAtlas.getAtlasBytes();
+	}
+
+	/** Called at the start of each frame. */
+	void beginFrame() {
+		mFrame++;
+	}
+
+	/** Records a texture just uploaded, and evicts others if over budget. */
+	void onUploaded(BasicTexture texture, int bytes) {
+		mUploadCount++;
+		Entry entry = mTextures.get(texture);
+		if (entry == null) {
+			entry = new Entry();
+			mTextures.put(texture, entry);
+		} else {
+			mBytes -= entry.mBytes;
+		}
+		entry.mBytes = bytes;
+		entry.mFrame = mFrame;
+		mBytes += bytes;
+		if (getBytes() > mBudget) trim(mBudget);
+	}
+
+	/** Marks texture as drawn in this frame. */
+	void onDrawn(BasicTexture texture) {
+		Entry entry = mTextures.get(texture);
+		if (entry != null) entry.mFrame = mFrame;
+	}
+
+	/** Forgets a texture deleted by its owner. */
+	void onDeleted(BasicTexture texture) {
+		Entry entry = mTextures.remove(texture);
+		if (entry != null) mBytes -= entry.mBytes;
+	}
+
+	/**
+	 * Frees what can be freed after GL ran out of memory: every texture not
+	 * drawn in this frame, and the atlas pages. Returns whether anything was
+	 * freed, so an upload is worth retrying.
+	 */
+	boolean handleLowMemory(GL11 gl) {
+		long before = getBytes();
+		trim(0);
+		// Its textures upload themselves into new pages when next drawn.
+		mAtlas.release(gl);
+		Log.w(TAG, "low memory, freed " + (before - getBytes()) / 1024 + "K, " + this);
+		return getBytes() < before;
+	}
+
+	/**
+	 * Forgets every texture without deleting it, after the GL context was
+	 * lost.
+	 */
+	void reset() {
+		mTextures.clear();
+		mBytes = 0;
+	}
+
+	@Override
+	public String toString() {
+		return "TextureManager(" + mTextures.size() + " textures, "
+				+ getBytes() / 1024 + "K of " + mBudget / 1024 + "K, "
+				+ mUploadCount + " uploads, " + mEvictionCount + " evictions)";
+	}
+
+	// Evicts the least recently drawn textures until at most target bytes
+	// are used, keeping those drawn in this frame.
+	private void trim(long target) {
+		Iterator<Map.Entry<BasicTexture, Entry>> it = mTextures.entrySet().iterator();
+		while (getBytes() > target && it.hasNext()) {
+			Map.Entry<BasicTexture, Entry> entry = it.next();
+			// The rest were drawn even more recently.
+			if (entry.getValue().mFrame == mFrame) break;
+			BasicTexture texture = entry.getKey();
+			it.remove();
+			mBytes -= entry.getValue().mBytes;
+			mEvictionCount++;
+			texture.evictFromGL();
+		}
+	}
+}
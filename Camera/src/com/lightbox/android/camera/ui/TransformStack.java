@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2012 Lightbox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightbox.android.camera.ui;
+
+/**
+ * The transform and alpha the HUD is drawn with, and a stack of saved ones.
+ * It replaces a Transformation per level, pooled in synchronized Stacks, and
+ * the JNI calls of android.graphics.Matrix: the matrix is plain floats, laid
+ * out as Matrix.getValues() gives them, and saved levels are copied into one
+ * growable array.
+ *
+ * <p>Only affine transforms are kept; the last row stays 0, 0, 1. Like the
+ * pre* methods of Matrix, each operation applies before the current
+ * transform. Only used on the GL thread, so nothing is synchronized.
+ */
+class TransformStack {
+	// Indices in the values, as in android.graphics.Matrix.
+	static final int SCALE_X = 0;
+	static final int SKEW_X = 1;
+	static final int TRANS_X = 2;
+	static final int SKEW_Y = 3;
+	static final int SCALE_Y = 4;
+	static final int TRANS_Y = 5;
+
+	// The six affine values and the alpha of each saved level.
+	private static final int STRIDE = 7;
+	private static final int INITIAL_DEPTH = 8;
+
+	private final float[] mValues = new float[9];
+	private float mAlpha;
+	private float[] mSaved = new float[INITIAL_DEPTH * STRIDE];
+	private int mDepth;
+
+	TransformStack() {
+		reset();
+	}
+
+	/** Sets the identity and an alpha of 1, and drops the saved levels. */
+	void reset() {
+		float[] v = mValues;
+		v[SCALE_X] = 1;
+		v[SKEW_X] = 0;
+		v[TRANS_X] = 0;
+		v[SKEW_Y] = 0;
+		v[SCALE_Y] = 1;
+		v[TRANS_Y] = 0;
+		v[6] = 0;
+		v[7] = 0;
+		v[8] = 1;
+		mAlpha = 1;
+		mDepth = 0;
+	}
+
+	/** Saves the transform and alpha, for {@link #restore()}. */
+	void save() {
+		int i = mDepth * STRIDE;
+		if (i + STRIDE > mSaved.length) {
+			// Not Arrays.copyOf(), which needs API level 9.
+			float[] saved = new float[mSaved.length * 2];
+			System.arraycopy(mSaved, 0, saved, 0, mSaved.length);
+			mSaved = saved;
+		}
+		System.arraycopy(mValues, 0, mSaved, i, 6);
+		mSaved[i + 6] = mAlpha;
+		mDepth++;
+	}
+
+	/** Goes back to the transform and alpha of the last {@link #save()}. */
+	void restore() {
+		if (mDepth == 0) throw new IllegalStateException("nothing saved");
+		mDepth--;
+		int i = mDepth * STRIDE;
+		System.arraycopy(mSaved, i, mValues, 0, 6);
+		mAlpha = mSaved[i + 6];
+	}
+
+	int getDepth() {
+		return mDepth;
+	}
+
+	/**
+	 * The current values, as Matrix.getValues() would give them. Live: do
+	 * not modify.
+	 */
+	float[] getValues() {
+		return mValues;
+	}
+
+	float getAlpha() {
+		return mAlpha;
+	}
+
+	void setAlpha(float alpha) {
+		mAlpha = alpha;
+	}
+
+	void multiplyAlpha(float alpha) {
+		mAlpha *= alpha;
+	}
+
+	/** Like Matrix.preTranslate(). */
+	void translate(float dx, float dy) {
+		float[] v = mValues;
+		v[TRANS_X] += v[SCALE_X] * dx + v[SKEW_X] * dy;
+		v[TRANS_Y] += v[SKEW_Y] * dx + v[SCALE_Y] * dy;
+	}
+
+	/** Like Matrix.preScale(). */
+	void scale(float sx, float sy) {
+		float[] v = mValues;
+		v[SCALE_X] *= sx;
+		v[SKEW_Y] *= sx;
+		v[SKEW_X] *= sy;
+		v[SCALE_Y] *= sy;
+	}
+
+	/** Like Matrix.preRotate(), in degrees. */
+	void rotate(float degrees) {
+		float sin;
+		float cos;
+		// Quarter turns are exact, so the HUD stays on the pixel grid.
+		if (degrees % 90 == 0) {
+			int quarter = ((int) (degrees / 90) % 4 + 4) % 4;
+			sin = (quarter == 1) ? 1 : (quarter == 3) ? -1 : 0;
+			cos = (quarter == 0) ? 1 : (quarter == 2) ? -1 : 0;
+		} else {
+			double radians = Math.toRadians(degrees);
+			sin = (float) Math.sin(radians);
+			cos = (float) Math.cos(radians);
+		}
+		float[] v = mValues;
+		float a = v[SCALE_X];
+		float b = v[SKEW_X];
+		float d = v[SKEW_Y];
+		float e = v[SCALE_Y];
+		v[SCALE_X] = a * cos + b * sin;
+		v[SKEW_X] = b * cos - a * sin;
+		v[SKEW_Y] = d * cos + e * sin;
+		v[SCALE_Y] = e * cos - d * sin;
+	}
+
+	/** Like Matrix.preRotate(), in degrees around px, py. */
+	void rotate(float degrees, float px, float py) {
+		translate(px, py);
+		rotate(degrees);
+		translate(-px, -py);
+	}
+
+	/**
+	 * Like Matrix.preConcat(), with the values of an affine matrix as
+	 * Matrix.getValues() gives them.
+	 */
+	void concat(float[] m) {
+		float[] v = mValues;
+		float a = v[SCALE_X];
+		float b = v[SKEW_X];
+		float d = v[SKEW_Y];
+		float e = v[SCALE_Y];
+		v[SCALE_X] = a * m[SCALE_X] + b * m[SKEW_Y];
+		v[SKEW_X] = a * m[SKEW_X] + b * m[SCALE_Y];
+		v[TRANS_X] += a * m[TRANS_X] + b * m[TRANS_Y];
+		v[SKEW_Y] = d * m[SCALE_X] + e * m[SKEW_Y];
+		v[SCALE_Y] = d * m[SKEW_X] + e * m[SCALE_Y];
+		v[TRANS_Y] += d * m[TRANS_X] + e * m[TRANS_Y];
+	}
+
+	/** Like Matrix.mapPoints(), in place on count x, y pairs. */
+	void mapPoints(float[] points, int count) {
+		float[] v = mValues;
+		for (int i = 0, n = count * 2; i < n; i += 2) {
+			float x = points[i];
+			float y = points[i + 1];
+			points[i] = v[SCALE_X] * x + v[SKEW_X] * y + v[TRANS_X];
+			points[i + 1] = v[SKEW_Y] * x + v[SCALE_Y] * y + v[TRANS_Y];
+		}
+	}
+}
@@ -28,7 +28,7 @@ import com.lightbox.android.camera.ui.GLView;
 import com.lightbox.android.camera.ui.MeasureHelper;
 import com.lightbox.android.camera.ui.NinePatchTexture;
 import com.lightbox.android.camera.ui.ResourceTexture;
-import com.lightbox.android.camera.ui.CanvasTexture;
+import com.lightbox.android.camera.ui.TextTexture;
 import com.lightbox.android.camera.ui.ZoomControllerListener;
 import com.lightbox.android.camera.R;
 
@@ -59,7 +59,7 @@ class ZoomController extends GLView {
     private static BitmapTexture sTickMark;
     static BitmapTexture sFineTickMark;
 
-    CanvasTexture mTickLabels[];
+    TextTexture mTickLabels[];
     float mRatios[];
     int mIndex;
 
@@ -168,7 +168,7 @@ class ZoomController extends GLView {
         int xoffset = mPaddings.left + mMaxLabelWidth;
         float yoffset = mSliderBottom - sSlider.getHeight() / 2;
         for (int i = 0, n = mTickLabels.length; i < n; ++i) {
-            BitmapTexture t = mTickLabels[i];
+            TextTexture t = mTickLabels[i];
             t.draw(root, xoffset - t.getWidth(),
                     (int) (yoffset - t.getHeight() / 2));
             yoffset -= labelStep * gap;
@@ -39,7 +39,7 @@ class ZoomIndicator extends AbstractIndicator {
     private int mDrawIndex = -1;
     private float mZoomRatios[];
 
-    private CanvasTexture mTitle;
+    private TextTexture mTitle;
 
     public ZoomIndicator(Context context) {
         super(context);
@@ -53,7 +53,7 @@ class ZoomIndicator extends AbstractIndicator {
         int n = mZoomRatios == null ? 0: mZoomRatios.length;
         for (int i = 0; i < n; ++i) {
             float value = mZoomRatios[i];
-            BitmapTexture tex = CanvasTexture.newInstance(
+            TextTexture tex = TextTexture.newInstance(
                     sZoomFormat.format(value), mFontSize, FONT_COLOR);
             if (maxWidth < tex.getWidth()) maxWidth = tex.getWidth();
             if (maxHeight < tex.getHeight()) maxHeight = tex.getHeight();
@@ -64,12 +64,11 @@ class ZoomIndicator extends AbstractIndicator {
     }
 
     @Override
-    protected BitmapTexture getIcon() {
+    protected Texture getIcon() {
         if (mDrawIndex != mZoomIndex) {
             mDrawIndex = mZoomIndex;
-            if (mTitle != null) mTitle.deleteFromGL();
             float value = mZoomRatios[mZoomIndex];
-            mTitle = CanvasTexture.newInstance(
+            mTitle = TextTexture.newInstance(
                     sZoomFormat.format(value), mFontSize, FONT_COLOR);
         }
         return mTitle;
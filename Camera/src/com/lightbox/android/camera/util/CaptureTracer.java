@@ -0,0 +1,296 @@
+/*
+ * Copyright (C) 2012 Lightbox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightbox.android.camera.util;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import android.os.Build;
+import android.os.Environment;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Records the stages of each capture, from the shutter press to the thumbnail
+ * being shown, and keeps a latency histogram per stage so that percentiles
+ * can be compared across devices and builds.
+ *
+ * <p>A shot is started with {@link #beginShot()}, which returns an id that is
+ * passed to {@link #record(int, int)} by whoever sees a stage happen, on any
+ * thread. When {@link #endShot(int)} is called, the time from the start of
+ * the shot to each recorded stage is added to that stage's histogram.
+ * Recording does not allocate; the recent events are also kept in a ring for
+ * the dump.
+ */
+public class CaptureTracer {
+	/** Used to tag logs */
+	private static final String TAG = "CaptureTracer";
+
+	public static final int NO_SHOT = -1;
+
+	public static final int STAGE_PRESS = 0;
+	public static final int STAGE_FOCUS_START = 1;
+	public static final int STAGE_FOCUS_END = 2;
+	public static final int STAGE_CAPTURE = 3;
+	public static final int STAGE_SHUTTER = 4;
+	public static final int STAGE_RAW = 5;
+	public static final int STAGE_POSTVIEW = 6;
+	public static final int STAGE_JPEG = 7;
+	public static final int STAGE_FILE_WRITTEN = 8;
+	public static final int STAGE_INSERTED = 9;
+	public static final int STAGE_THUMBNAIL = 10;
+	private static final int STAGE_COUNT = 11;
+
+	private static final String[] STAGE_NAMES = {
+		"press", "focus_start", "focus_end", "capture", "shutter", "raw",
+		"postview", "jpeg", "file_written", "inserted", "thumbnail",
+	};
+
+	// The number of shots which can be in flight at once. If more are
+	// started, the oldest one is dropped.
+	private static final int MAX_SHOTS = 8;
+
+	// The number of recent events kept for the dump.
+	private static final int EVENT_RING_SIZE = 256;
+
+	// Histogram buckets: values below LINEAR_BUCKETS ms get a bucket each;
+	// above that every power of two is split into SUB_BUCKETS buckets, so a
+	// bucket is never wider than 1/SUB_BUCKETS of its value.
+	private static final int LINEAR_BUCKETS = 16;
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_EXPONENT = 17;  // about 2 minutes
+	private static final int BUCKET_COUNT =
+			LINEAR_BUCKETS + (MAX_EXPONENT - 4 + 1) * SUB_BUCKETS;
+
+	private static final Object sLock = new Object();
+
+	// In-flight shots. A shot id maps to slot (id % MAX_SHOTS); the slot
+	// belongs to the shot only while sSlotShot[slot] == id.
+	private static final int[] sSlotShot = new int[MAX_SHOTS];
+	private static final long[][] sSlotTimes = new long[MAX_SHOTS][STAGE_COUNT];
+	private static int sNextShot;
+	private static int sDroppedShots;
+
+	private static final long[] sEventTimes = new long[EVENT_RING_SIZE];
+	private static final int[] sEventShots = new int[EVENT_RING_SIZE];
+	private static final byte[] sEventStages = new byte[EVENT_RING_SIZE];
+	private static int sEventCount;
+
+	private static final int[][] sHistograms = new int[STAGE_COUNT][BUCKET_COUNT];
+	private static final int[] sHistogramCounts = new int[STAGE_COUNT];
+	private static int sCompletedShots;
+
+	static {
+		for (int i = 0; i < MAX_SHOTS; i++) {
+			sSlotShot[i] = NO_SHOT;
+		}
+	}
+
+	private CaptureTracer() {
+	}
+
+	/**
+	 * Starts a shot and records {@link #STAGE_PRESS} for it. If the previous
+	 * shot was started but never got to {@link #STAGE_CAPTURE}, for example
+	 * because the shutter was only half pressed, it is discarded.
+	 */
+	public static int beginShot() {
+		long now = SystemClock.uptimeMillis();
+		synchronized (sLock) {
+			if (sNextShot > 0) {
+				int last = sNextShot - 1;
+				int slot = last % MAX_SHOTS;
+				if (sSlotShot[slot] == last
+						&& sSlotTimes[slot][STAGE_CAPTURE] == 0) {
+					sSlotShot[slot] = NO_SHOT;
+				}
+			}
+			int shot = sNextShot++;
+			if (sNextShot < 0) sNextShot = 0;
+			int slot = shot % MAX_SHOTS;
+			if (sSlotShot[slot] != NO_SHOT) {
+				sDroppedShots++;
+			}
+			sSlotShot[slot] = shot;
+			long[] times = sSlotTimes[slot];
+			for (int i = 0; i < STAGE_COUNT; i++) {
+				times[i] = 0;
+			}
+			times[STAGE_PRESS] = now;
+			addEvent(shot, STAGE_PRESS, now);
+			return shot;
+		}
+	}
+
+	/** Records that {@code shot} reached {@code stage} now. */
+	public static void record(int shot, int stage) {
+		if (shot == NO_SHOT) return;
+		long now = SystemClock.uptimeMillis();
+		synchronized (sLock) {
+			int slot = shot % MAX_SHOTS;
+			if (sSlotShot[slot] != shot) return;
+			sSlotTimes[slot][stage] = now;
+			addEvent(shot, stage, now);
+		}
+	}
+
+	/**
+	 * Returns whether {@code shot} has been started but has not reached
+	 * {@link #STAGE_CAPTURE} yet.
+	 */
+	public static boolean isPending(int shot) {
+		if (shot == NO_SHOT) return false;
+		synchronized (sLock) {
+			int slot = shot % MAX_SHOTS;
+			return sSlotShot[slot] == shot && sSlotTimes[slot][STAGE_CAPTURE] == 0;
+		}
+	}
+
+	/** Ends {@code shot} and adds its stages to the histograms. */
+	public static void endShot(int shot) {
+		if (shot == NO_SHOT) return;
+		synchronized (sLock) {
+			int slot = shot % MAX_SHOTS;
+			if (sSlotShot[slot] != shot) return;
+			long[] times = sSlotTimes[slot];
+			long start = times[STAGE_PRESS];
+			for (int stage = STAGE_PRESS + 1; stage < STAGE_COUNT; stage++) {
+				if (times[stage] == 0) continue;
+				long latency = times[stage] - start;
+				sHistograms[stage][bucketOf(latency)]++;
+				sHistogramCounts[stage]++;
+			}
+			sSlotShot[slot] = NO_SHOT;
+			sCompletedShots++;
+		}
+	}
+
+	/**
+	 * Returns the given percentile (0-100) of the time from the start of a
+	 * shot to {@code stage}, in ms, or -1 if the stage was never recorded.
+	 */
+	public static long getPercentile(int stage, int percentile) {
+		synchronized (sLock) {
+			int count = sHistogramCounts[stage];
+			if (count == 0) return -1;
+			// The rank of the wanted sample, 1-based, rounded up.
+			long rank = Math.max(1, ((long) count * percentile + 99) / 100);
+			int[] histogram = sHistograms[stage];
+			long seen = 0;
+			for (int i = 0; i < BUCKET_COUNT; i++) {
+				seen += histogram[i];
+				if (seen >= rank) return bucketUpperBound(i);
+			}
+			return bucketUpperBound(BUCKET_COUNT - 1);
+		}
+	}
+
+	/** Clears the histograms and the event ring. */
+	public static void reset() {
+		synchronized (sLock) {
+			for (int i = 0; i < STAGE_COUNT; i++) {
+				int[] histogram = sHistograms[i];
+				for (int j = 0; j < BUCKET_COUNT; j++) {
+					histogram[j] = 0;
+				}
+				sHistogramCounts[i] = 0;
+			}
+			sEventCount = 0;
+			sCompletedShots = 0;
+			sDroppedShots = 0;
+		}
+	}
+
+	/**
+	 * Writes the percentiles of every stage and the recent events to a file
+	 * on the external storage named after the device model. Returns the file,
+	 * or null if it could not be written.
+	 */
+	public static File dump() {
+		File file = new File(Environment.getExternalStorageDirectory(),
+				"capture-latency-" + Build.MODEL.replaceAll("[^A-Za-z0-9_-]", "_")
+				+ ".txt");
+		PrintWriter out = null;
+		try {
+			out = new PrintWriter(new FileWriter(file));
+			dump(out);
+		} catch (IOException e) {
+			Log.e(TAG, "Could not write " + file, e);
+			return null;
+		} finally {
+			if (out != null) out.close();
+		}
+		Log.i(TAG, "Capture latency written to " + file);
+		return file;
+	}
+
+	public static void dump(PrintWriter out) {
+		synchronized (sLock) {
+			out.println("model: " + Build.MODEL);
+			out.println("fingerprint: " + Build.FINGERPRINT);
+			out.println("shots: " + sCompletedShots + " (dropped " + sDroppedShots + ")");
+			out.println();
+			out.println("stage\tcount\tp50\tp95\tp99\t(ms from press)");
+			for (int stage = STAGE_PRESS + 1; stage < STAGE_COUNT; stage++) {
+				out.println(STAGE_NAMES[stage] + "\t" + sHistogramCounts[stage]
+						+ "\t" + getPercentile(stage, 50)
+						+ "\t" + getPercentile(stage, 95)
+						+ "\t" + getPercentile(stage, 99));
+			}
+			out.println();
+			out.println("recent events (uptime ms, shot, stage):");
+			int count = Math.min(sEventCount, EVENT_RING_SIZE);
+			for (int i = sEventCount - count; i < sEventCount; i++) {
+				int index = i % EVENT_RING_SIZE;
+				out.println(sEventTimes[index] + "\t" + sEventShots[index]
+						+ "\t" + STAGE_NAMES[sEventStages[index]]);
+			}
+		}
+	}
+
+	// Must hold sLock.
+	private static void addEvent(int shot, int stage, long time) {
+		int index = sEventCount % EVENT_RING_SIZE;
+		sEventTimes[index] = time;
+		sEventShots[index] = shot;
+		sEventStages[index] = (byte) stage;
+		sEventCount++;
+		if (sEventCount < 0) {
+			// Keep the index right after overflow.
+			sEventCount = EVENT_RING_SIZE;
+		}
+	}
+
+	static int bucketOf(long value) {
+		if (value < LINEAR_BUCKETS) return (int) Math.max(0, value);
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		if (exponent > MAX_EXPONENT) return BUCKET_COUNT - 1;
+		int sub = (int) (value >> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return LINEAR_BUCKETS + (exponent - 4) * SUB_BUCKETS + sub;
+	}
+
+	static long bucketUpperBound(int bucket) {
+		if (bucket < LINEAR_BUCKETS) return bucket;
+		int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 4;
+		int sub = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+		long width = 1L << (exponent - SUB_BUCKET_BITS);
+		return (1L << exponent) + (sub + 1) * width - 1;
+	}
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright (C) 2012 Lightbox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightbox.android.camera.util;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.Environment;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+/**
+ * An opt-in profiler which is off unless the "profiler_mode" preference or
+ * the {@link #EXTRA_MODE} intent extra asks for it. It has two modes, which
+ * can be used together:
+ * <ul>
+ * <li>sections: code marks named sections with {@link #begin()} and
+ * {@link #end(String, long)}, and the duration of each is recorded.</li>
+ * <li>sampling: the main thread's stack is sampled every
+ * {@link #SAMPLE_INTERVAL_MS} ms and the stacks are counted.</li>
+ * </ul>
+ * When off, begin() and end() only read a field. Samples are taken and the
+ * output is written on a background thread, to
+ * /sdcard/traces/quicksnap-&lt;uptime&gt;.txt.
+ */
+public class Profiler {
+	/** Used to tag logs */
+	private static final String TAG = "Profiler";
+
+	/** String extra with the same values as the "profiler_mode" preference. */
+	public static final String EXTRA_MODE = "com.lightbox.android.camera.PROFILER_MODE";
+	public static final String KEY_MODE = "profiler_mode";
+
+	private static final String MODE_OFF = "off";
+	private static final String MODE_SECTIONS = "sections";
+	private static final String MODE_SAMPLING = "sampling";
+	private static final String MODE_ALL = "all";
+
+	public static final String SECTION_CAPTURE = "capture";
+	public static final String SECTION_JPEG = "jpeg_callback";
+	public static final String SECTION_PREVIEW = "start_preview";
+	public static final String SECTION_HUD_RENDER = "hud_render";
+
+	private static final int SAMPLE_INTERVAL_MS = 10;
+	private static final int SAMPLE_DEPTH = 24;
+
+	// Sections are kept here until the writer picks them up; any beyond
+	// this are dropped and counted.
+	private static final int SECTION_BUFFER_SIZE = 1024;
+	private static final int FLUSH_INTERVAL_MS = 5000;
+
+	private static volatile boolean sSectionsEnabled;
+	private static volatile boolean sSamplingEnabled;
+
+	private static final Object sLock = new Object();
+	private static final String[] sSectionNames = new String[SECTION_BUFFER_SIZE];
+	private static final String[] sSectionThreads = new String[SECTION_BUFFER_SIZE];
+	private static final long[] sSectionStarts = new long[SECTION_BUFFER_SIZE];
+	private static final long[] sSectionDurations = new long[SECTION_BUFFER_SIZE];
+	private static int sSectionCount;
+	private static int sDroppedSections;
+
+	// The running session, if any.
+	private static Session sSession;
+
+	private Profiler() {
+	}
+
+	/**
+	 * Starts profiling if the intent or the preferences ask for it, and
+	 * stops it otherwise.
+	 */
+	public static void startIfEnabled(Context context, Intent intent) {
+		String mode = (intent != null) ? intent.getStringExtra(EXTRA_MODE) : null;
+		if (mode == null) {
+			SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+			mode = prefs.getString(KEY_MODE, MODE_OFF);
+		}
+		boolean sections = MODE_SECTIONS.equals(mode) || MODE_ALL.equals(mode);
+		boolean sampling = MODE_SAMPLING.equals(mode) || MODE_ALL.equals(mode);
+		if (sections || sampling) {
+			start(sections, sampling);
+		} else {
+			stop();
+		}
+	}
+
+	public static synchronized void start(boolean sections, boolean sampling) {
+		if (sSession != null) {
+			if (sections == sSession.mSections && sampling == sSession.mSampling) return;
+			stop();
+		}
+		sSession = new Session(sections, sampling);
+		sSectionsEnabled = sections;
+		sSamplingEnabled = sampling;
+	}
+
+	/** Stops profiling and writes what is left, asynchronously. */
+	public static synchronized void stop() {
+		if (sSession == null) return;
+		sSectionsEnabled = false;
+		sSamplingEnabled = false;
+		sSession.finish();
+		sSession = null;
+	}
+
+	public static boolean isEnabled() {
+		return sSectionsEnabled || sSamplingEnabled;
+	}
+
+	/**
+	 * Marks the start of a section. Returns a token to pass to
+	 * {@link #end(String, long)}, or 0 if sections are not being recorded.
+	 */
+	public static long begin() {
+		return sSectionsEnabled ? SystemClock.elapsedRealtime() : 0;
+	}
+
+	/** Records the section {@code name} which started with {@code begin}. */
+	public static void end(String name, long begin) {
+		if (begin == 0 || !sSectionsEnabled) return;
+		long duration = SystemClock.elapsedRealtime() - begin;
+		synchronized (sLock) {
+			if (sSectionCount == SECTION_BUFFER_SIZE) {
+				sDroppedSections++;
+				return;
+			}
+			int i = sSectionCount++;
+			sSectionNames[i] = name;
+			sSectionThreads[i] = Thread.currentThread().getName();
+			sSectionStarts[i] = begin;
+			sSectionDurations[i] = duration;
+		}
+	}
+
+	/** A profiling run, with its own thread and output file. */
+	private static class Session extends HandlerThread {
+		final boolean mSections;
+		final boolean mSampling;
+		private final Handler mHandler;
+		private final File mOutputFile;
+		private PrintWriter mOut;
+		private boolean mFinished;
+
+		// Stack -> number of samples.
+		private final Map<String, Integer> mSampleCounts = new HashMap<String, Integer>();
+		private int mSampleTotal;
+
+		private final Runnable mFlush = new Runnable() {
+			public void run() {
+				writeSections();
+				if (!mFinished) mHandler.postDelayed(this, FLUSH_INTERVAL_MS);
+			}
+		};
+
+		private final Runnable mSample = new Runnable() {
+			public void run() {
+				if (mFinished) return;
+				long start = SystemClock.uptimeMillis();
+				sample();
+				mHandler.postAtTime(this, start + SAMPLE_INTERVAL_MS);
+			}
+		};
+
+		Session(boolean sections, boolean sampling) {
+			super(TAG);
+			mSections = sections;
+			mSampling = sampling;
+			mOutputFile = new File(Environment.getExternalStorageDirectory(),
+					"traces/quicksnap-" + SystemClock.uptimeMillis() + ".txt");
+			start();
+			mHandler = new Handler(getLooper());
+			mHandler.post(new Runnable() {
+				public void run() {
+					openOutput();
+				}
+			});
+			if (sections) mHandler.postDelayed(mFlush, FLUSH_INTERVAL_MS);
+			if (sampling) mHandler.post(mSample);
+			Log.i(TAG, "profiling to " + mOutputFile + " (sections=" + sections
+					+ ", sampling=" + sampling + ")");
+		}
+
+		void finish() {
+			mHandler.post(new Runnable() {
+				public void run() {
+					mFinished = true;
+					mHandler.removeCallbacks(mFlush);
+					mHandler.removeCallbacks(mSample);
+					writeSections();
+					writeSamples();
+					closeOutput();
+					quit();
+				}
+			});
+		}
+
+		// The rest runs on this thread.
+
+		private void openOutput() {
+			File dir = mOutputFile.getParentFile();
+			if (!dir.exists()) dir.mkdirs();
+			try {
+				mOut = new PrintWriter(new FileWriter(mOutputFile));
+				mOut.println("# model: " + Build.MODEL);
+				mOut.println("# section lines: name, thread, start (elapsed ms), duration (ms)");
+			} catch (IOException e) {
+				Log.e(TAG, "Could not open " + mOutputFile, e);
+			}
+		}
+
+		private void sample() {
+			StackTraceElement[] stack =
+					Looper.getMainLooper().getThread().getStackTrace();
+			StringBuilder key = new StringBuilder();
+			int depth = Math.min(stack.length, SAMPLE_DEPTH);
+			// Outermost frame first, as flame graph tools expect.
+			for (int i = depth - 1; i >= 0; i--) {
+				key.append(stack[i].getClassName()).append('.')
+						.append(stack[i].getMethodName());
+				if (i > 0) key.append(';');
+			}
+			String k = key.toString();
+			Integer count = mSampleCounts.get(k);
+			mSampleCounts.put(k, (count == null) ? 1 : count + 1);
+			mSampleTotal++;
+		}
+
+		private void writeSections() {
+			String[] names;
+			String[] threads;
+			long[] starts;
+			long[] durations;
+			int count;
+			int dropped;
+			synchronized (sLock) {
+				count = sSectionCount;
+				if (count == 0 && sDroppedSections == 0) return;
+				names = new String[count];
+				threads = new String[count];
+				starts = new long[count];
+				durations = new long[count];
+				System.arraycopy(sSectionNames, 0, names, 0, count);
+				System.arraycopy(sSectionThreads, 0, threads, 0, count);
+				System.arraycopy(sSectionStarts, 0, starts, 0, count);
+				System.arraycopy(sSectionDurations, 0, durations, 0, count);
+				for (int i = 0; i < count; i++) {
+					sSectionNames[i] = null;
+					sSectionThreads[i] = null;
+				}
+				sSectionCount = 0;
+				dropped = sDroppedSections;
+				sDroppedSections = 0;
+			}
+			if (mOut == null) return;
+			for (int i = 0; i < count; i++) {
+				mOut.println(names[i] + "\t" + threads[i] + "\t" + starts[i]
+						+ "\t" + durations[i]);
+			}
+			if (dropped > 0) {
+				mOut.println("# dropped " + dropped + " sections");
+			}
+			mOut.flush();
+		}
+
+		private void writeSamples() {
+			if (mOut == null || mSampleTotal == 0) return;
+			mOut.println("# " + mSampleTotal + " samples of the main thread every "
+					+ SAMPLE_INTERVAL_MS + " ms (stack, count)");
+			for (Map.Entry<String, Integer> entry : mSampleCounts.entrySet()) {
+				mOut.println(entry.getKey() + " " + entry.getValue());
+			}
+		}
+
+		private void closeOutput() {
+			if (mOut != null) {
+				mOut.close();
+				mOut = null;
+			}
+			Log.i(TAG, "profile written to " + mOutputFile);
+		}
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2012 Lightbox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightbox.android.camera.ui;
+
+import android.os.Debug;
+import android.os.SystemClock;
+import android.test.ActivityInstrumentationTestCase2;
+import android.view.MotionEvent;
+import android.view.animation.AlphaAnimation;
+import android.view.animation.Animation;
+
+import com.lightbox.android.camera.activities.Camera;
+
+/**
+ * Fails if a warm HUD frame allocates. Draws the camera's own GLView tree,
+ * with a popup open and an animation running, through
+ * GLRootView.onDrawFrame() into a GL11 that does nothing, on this thread.
+ * GLRootView.ENABLE_ALLOCATION_CHECK can only log.
+ */
+public class FrameAllocationTest extends ActivityInstrumentationTestCase2<Camera> {
+	private static final int WARM_UP_FRAMES = 200;
+	private static final int FRAMES = 2000;
+
+	// Room for reading the counters, which should cost nothing; none of it
+	// is for the frames.
+	private static final int COUNTER_MARGIN_BYTES = 64;
+
+	// Longer than all the frames take, so every frame measured animates.
+	private static final int ANIMATION_MS = 60000;
+	private static final long HUD_TIMEOUT_MS = 10000;
+
+	// The constructor taking only the class needs API level 8.
+	@SuppressWarnings("deprecation")
+	public FrameAllocationTest() {
+		super("com.lightbox.android.camera", Camera.class);
+	}
+
+	public void testWarmFramesDoNotAllocate() throws Throwable {
+		final GLRootView root = waitForHeadUpDisplay();
+		// The GL thread stops; this thread draws the frames from now on.
+		runTestOnUiThread(new Runnable() {
+			public void run() {
+				root.onPause();
+			}
+		});
+		StubGL11 gl = new StubGL11();
+		root.onSurfaceCreated(gl, null);
+		root.mEglConfigChooser.onSurfaceChanged(root, gl, root.getWidth(), root.getHeight());
+
+		final IndicatorBar bar = ((HeadUpDisplay) root.mContentView).mIndicatorBar;
+		assertTrue("no indicators", bar.getComponentCount() > 1);
+		runTestOnUiThread(new Runnable() {
+			public void run() {
+				synchronized (root) {
+					// Opens the first indicator's popup, for the text of its
+					// items. Component 0 is the bar's background.
+					long now = SystemClock.uptimeMillis();
+					MotionEvent down = MotionEvent.obtain(now, now, MotionEvent.ACTION_DOWN,
+							0, bar.getComponent(1).mBounds.top, 0);
+					bar.onTouch(down);
+					down.recycle();
+
+					Animation fade = new AlphaAnimation(0.5f, 1);
+					fade.setDuration(ANIMATION_MS);
+					root.startAnimation(bar, fade);
+				}
+			}
+		});
+
+		for (int i = 0; i < WARM_UP_FRAMES; i++) {
+			root.onDrawFrame(gl);
+		}
+		Debug.startAllocCounting();
+		Debug.resetAllCounts();
+		for (int i = 0; i < FRAMES; i++) {
+			root.onDrawFrame(gl);
+		}
+		int bytes = Debug.getThreadAllocSize();
+		int objects = Debug.getThreadAllocCount();
+		Debug.stopAllocCounting();
+
+		assertTrue(FRAMES + " frames allocated " + objects + " objects, " + bytes + " bytes",
+				bytes <= COUNTER_MARGIN_BYTES);
+	}
+
+	private GLRootView waitForHeadUpDisplay() throws InterruptedException {
+		Camera camera = getActivity();
+		long deadline = SystemClock.uptimeMillis() + HUD_TIMEOUT_MS;
+		while (true) {
+			GLRootView root = camera.mGLRootView;
+			if (root != null && root.mContentView != null && root.getWidth() > 0) {
+				return root;
+			}
+			assertTrue("no head-up display", SystemClock.uptimeMillis() < deadline);
+			Thread.sleep(100);
+		}
+	}
+}
@@ -0,0 +1,626 @@
+/*
+ * Copyright (C) 2012 Lightbox
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.lightbox.android.camera.ui;
+
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import javax.microedition.khronos.opengles.GL11;
+
+/**
+ * A GL11 which draws nothing, so the HUD's frames can be run off the GL
+ * thread. Texture and buffer names are handed out as a driver would; every
+ * other call is ignored and allocates nothing.
+ */
+class StubGL11 implements GL11 {
+	private int mNextName = 1;
+
+	public void glActiveTexture(int arg0) {
+	}
+
+	public void glAlphaFunc(int arg0, float arg1) {
+	}
+
+	public void glAlphaFuncx(int arg0, int arg1) {
+	}
+
+	public void glBindTexture(int arg0, int arg1) {
+	}
+
+	public void glBlendFunc(int arg0, int arg1) {
+	}
+
+	public void glClear(int arg0) {
+	}
+
+	public void glClearColor(float arg0, float arg1, float arg2, float arg3) {
+	}
+
+	public void glClearColorx(int arg0, int arg1, int arg2, int arg3) {
+	}
+
+	public void glClearDepthf(float arg0) {
+	}
+
+	public void glClearDepthx(int arg0) {
+	}
+
+	public void glClearStencil(int arg0) {
+	}
+
+	public void glClientActiveTexture(int arg0) {
+	}
+
+	public void glColor4f(float arg0, float arg1, float arg2, float arg3) {
+	}
+
+	public void glColor4x(int arg0, int arg1, int arg2, int arg3) {
+	}
+
+	public void glColorMask(boolean arg0, boolean arg1, boolean arg2, boolean arg3) {
+	}
+
+	public void glColorPointer(int arg0, int arg1, int arg2, Buffer arg3) {
+	}
+
+	public void glCompressedTexImage2D(int arg0, int arg1, int arg2, int arg3, int arg4, int arg5, int arg6, Buffer arg7) {
+	}
+
+	public void glCompressedTexSubImage2D(int arg0, int arg1, int arg2, int arg3, int arg4, int arg5, int arg6, int arg7, Buffer arg8) {
+	}
+
+	public void glCopyTexImage2D(int arg0, int arg1, int arg2, int arg3, int arg4, int arg5, int arg6, int arg7) {
+	}
+
+	public void glCopyTexSubImage2D(int arg0, int arg1, int arg2, int arg3, int arg4, int arg5, int arg6, int arg7) {
+	}
+
+	public void glCullFace(int arg0) {
+	}
+
+	public void glDeleteTextures(int arg0, int[] arg1, int arg2) {
+	}
+
+	public void glDeleteTextures(int arg0, IntBuffer arg1) {
+	}
+
+	public void glDepthFunc(int arg0) {
+	}
+
+	public void glDepthMask(boolean arg0) {
+	}
+
+	public void glDepthRangef(float arg0, float arg1) {
+	}
+
+	public void glDepthRangex(int arg0, int arg1) {
+	}
+
+	public void glDisable(int arg0) {
+	}
+
+	public void glDisableClientState(int arg0) {
+	}
+
+	public void glDrawArrays(int arg0, int arg1, int arg2) {
+	}
+
+	public void glDrawElements(int arg0, int arg1, int arg2, Buffer arg3) {
+	}
+
+	public void glEnable(int arg0) {
+	}
+
+	public void glEnableClientState(int arg0) {
+	}
+
+	public void glFinish() {
+	}
+
+	public void glFlush() {
+	}
+
+	public void glFogf(int arg0, float arg1) {
+	}
+
+	public void glFogfv(int arg0, float[] arg1, int arg2) {
+	}
+
+	public void glFogfv(int arg0, FloatBuffer arg1) {
+	}
+
+	public void glFogx(int arg0, int arg1) {
+	}
+
+	public void glFogxv(int arg0, int[] arg1, int arg2) {
+	}
+
+	public void glFogxv(int arg0, IntBuffer arg1) {
+	}
+
+	public void glFrontFace(int arg0) {
+	}
+
+	public void glFrustumf(float arg0, float arg1, float arg2, float arg3, float arg4, float arg5) {
+	}
+
+	public void glFrustumx(int arg0, int arg1, int arg2, int arg3, int arg4, int arg5) {
+	}
+
+	public void glGenTextures(int arg0, int[] arg1, int arg2) {
+		genNames(arg0, arg1, arg2);
+	}
+
+	public void glGenTextures(int arg0, IntBuffer arg1) {
+		genNames(arg0, arg1);
+	}
+
+	public int glGetError() {
+		return GL_NO_ERROR;
+	}
+
+	public void glGetIntegerv(int arg0, int[] arg1, int arg2) {
+	}
+
+	public void glGetIntegerv(int arg0, IntBuffer arg1) {
+	}
+
+	public String glGetString(int arg0) {
+		return "";
+	}
+
+	public void glHint(int arg0, int arg1) {
+	}
+
+	public void glLightModelf(int arg0, float arg1) {
+	}
+
+	public void glLightModelfv(int arg0, float[] arg1, int arg2) {
+	}
+
+	public void glLightModelfv(int arg0, FloatBuffer arg1) {
+	}
+
+	public void glLightModelx(int arg0, int arg1) {
+	}
+
+	public void glLightModelxv(int arg0, int[] arg1, int arg2) {
+	}
+
+	public void glLightModelxv(int arg0, IntBuffer arg1) {
+	}
+
+	public void glLightf(int arg0, int arg1, float arg2) {
+	}
+
+	public void glLightfv(int arg0, int arg1, float[] arg2, int arg3) {
+	}
+
+	public void glLightfv(int arg0, int arg1, FloatBuffer arg2) {
+	}
+
+	public void glLightx(int arg0, int arg1, int arg2) {
+	}
+
+	public void glLightxv(int arg0, int arg1, int[] arg2, int arg3) {
+	}
+
+	public void glLightxv(int arg0, int arg1, IntBuffer arg2) {
+	}
+
+	public void glLineWidth(float arg0) {
+	}
+
+	public void glLineWidthx(int arg0) {
+	}
+
+	public void glLoadIdentity() {
+	}
+
+	public void glLoadMatrixf(float[] arg0, int arg1) {
+	}
+
+	public void glLoadMatrixf(FloatBuffer arg0) {
+	}
+
+	public void glLoadMatrixx(int[] arg0, int arg1) {
+	}
+
+	public void glLoadMatrixx(IntBuffer arg0) {
+	}
+
+	public void glLogicOp(int arg0) {
+	}
+
+	public void glMaterialf(int arg0, int arg1, float arg2) {
+	}
+
+	public void glMaterialfv(int arg0, int arg1, float[] arg2, int arg3) {
+	}
+
+	public void glMaterialfv(int arg0, int arg1, FloatBuffer arg2) {
+	}
+
+	public void glMaterialx(int arg0, int arg1, int arg2) {
+	}
+
+	public void glMaterialxv(int arg0, int arg1, int[] arg2, int arg3) {
+	}
+
+	public void glMaterialxv(int arg0, int arg1, IntBuffer arg2) {
+	}
+
+	public void glMatrixMode(int arg0) {
+	}
+
+	public void glMultMatrixf(float[] arg0, int arg1) {
+	}
+
+	public void glMultMatrixf(FloatBuffer arg0) {
+	}
+
+	public void glMultMatrixx(int[] arg0, int arg1) {
+	}
+
+	public void glMultMatrixx(IntBuffer arg0) {
+	}
+
+	public void glMultiTexCoord4f(int arg0, float arg1, float arg2, float arg3, float arg4) {
+	}
+
+	public void glMultiTexCoord4x(int arg0, int arg1, int arg2, int arg3, int arg4) {
+	}
+
+	public void glNormal3f(float arg0, float arg1, float arg2) {
+	}
+
+	public void glNormal3x(int arg0, int arg1, int arg2) {
+	}
+
+	public void glNormalPointer(int arg0, int arg1, Buffer arg2) {
+	}
+
+	public void glOrthof(float arg0, float arg1, float arg2, float arg3, float arg4, float arg5) {
+	}
+
+	public void glOrthox(int arg0, int arg1, int arg2, int arg3, int arg4, int arg5) {
+	}
+
+	public void glPixelStorei(int arg0, int arg1) {
+	}
+
+	public void glPointSize(float arg0) {
+	}
+
+	public void glPointSizex(int arg0) {
+	}
+
+	public void glPolygonOffset(float arg0, float arg1) {
+	}
+
+	public void glPolygonOffsetx(int arg0, int arg1) {
+	}
+
+	public void glPopMatrix() {
+	}
+
+	public void glPushMatrix() {
+	}
+
+	public void glReadPixels(int arg0, int arg1, int arg2, int arg3, int arg4, int arg5, Buffer arg6) {
+	}
+
+	public void glRotatef(float arg0, float arg1, float arg2, float arg3) {
+	}
+
+	public void glRotatex(int arg0, int arg1, int arg2, int arg3) {
+	}
+
+	public void glSampleCoverage(float arg0, boolean arg1) {
+	}
+
+	public void glSampleCoveragex(int arg0, boolean arg1) {
+	}
+
+	public void glScalef(float arg0, float arg1, float arg2) {
+	}
+
+	public void glScalex(int arg0, int arg1, int arg2) {
+	}
+
+	public void glScissor(int arg0, int arg1, int arg2, int arg3) {
+	}
+
+	public void glShadeModel(int arg0) {
+	}
+
+	public void glStencilFunc(int arg0, int arg1, int arg2) {
+	}
+
+	public void glStencilMask(int arg0) {
+	}
+
+	public void glStencilOp(int arg0, int arg1, int arg2) {
+	}
+
+	public void glTexCoordPointer(int arg0, int arg1, int arg2, Buffer arg3) {
+	}
+
+	public void glTexEnvf(int arg0, int arg1, float arg2) {
+	}
+
+	public void glTexEnvfv(int arg0, int arg1, float[] arg2, int arg3) {
+	}
+
+	public void glTexEnvfv(int arg0, int arg1, FloatBuffer arg2) {
+	}
+
+	public void glTexEnvx(int arg0, int arg1, int arg2) {
+	}
+
+	public void glTexEnvxv(int arg0, int arg1, int[] arg2, int arg3) {
+	}
+
+	public void glTexEnvxv(int arg0, int arg1, IntBuffer arg2) {
+	}
+
+	public void glTexImage2D(int arg0, int arg1, int arg2, int arg3, int arg4, int arg5, int arg6, int arg7, Buffer arg8) {
+	}
+
+	public void glTexParameterf(int arg0, int arg1, float arg2) {
+	}
+
+	public void glTexParameterx(int arg0, int arg1, int arg2) {
+	}
+
+	public void glTexSubImage2D(int arg0, int arg1, int arg2, int arg3, int arg4, int arg5, int arg6, int arg7, Buffer arg8) {
+	}
+
+	public void glTranslatef(float arg0, float arg1, float arg2) {
+	}
+
+	public void glTranslatex(int arg0, int arg1, int arg2) {
+	}
+
+	public void glVertexPointer(int arg0, int arg1, int arg2, Buffer arg3) {
+	}
+
+	public void glViewport(int arg0, int arg1, int arg2, int arg3) {
+	}
+
+	public void glGetPointerv(int arg0, Buffer[] arg1) {
+	}
+
+	public void glBindBuffer(int arg0, int arg1) {
+	}
+
+	public void glBufferData(int arg0, int arg1, Buffer arg2, int arg3) {
+	}
+
+	public void glBufferSubData(int arg0, int arg1, int arg2, Buffer arg3) {
+	}
+
+	public void glClipPlanef(int arg0, float[] arg1, int arg2) {
+	}
+
+	public void glClipPlanef(int arg0, FloatBuffer arg1) {
+	}
+
+	public void glClipPlanex(int arg0, int[] arg1, int arg2) {
+	}
+
+	public void glClipPlanex(int arg0, IntBuffer arg1) {
+	}
+
+	public void glColor4ub(byte arg0, byte arg1, byte arg2, byte arg3) {
+	}
+
+	public void glColorPointer(int arg0, int arg1, int arg2, int arg3) {
+	}
+
+	public void glDeleteBuffers(int arg0, int[] arg1, int arg2) {
+	}
+
+	public void glDeleteBuffers(int arg0, IntBuffer arg1) {
+	}
+
+	public void glDrawElements(int arg0, int arg1, int arg2, int arg3) {
+	}
+
+	public void glGenBuffers(int arg0, int[] arg1, int arg2) {
+		genNames(arg0, arg1, arg2);
+	}
+
+	public void glGenBuffers(int arg0, IntBuffer arg1) {
+		genNames(arg0, arg1);
+	}
+
+	public void glGetBooleanv(int arg0, boolean[] arg1, int arg2) {
+	}
+
+	public void glGetBooleanv(int arg0, IntBuffer arg1) {
+	}
+
+	public void glGetBufferParameteriv(int arg0, int arg1, int[] arg2, int arg3) {
+	}
+
+	public void glGetBufferParameteriv(int arg0, int arg1, IntBuffer arg2) {
+	}
+
+	public void glGetClipPlanef(int arg0, float[] arg1, int arg2) {
+	}
+
+	public void glGetClipPlanef(int arg0, FloatBuffer arg1) {
+	}
+
+	public void glGetClipPlanex(int arg0, int[] arg1, int arg2) {
+	}
+
+	public void glGetClipPlanex(int arg0, IntBuffer arg1) {
+	}
+
+	public void glGetFixedv(int arg0, int[] arg1, int arg2) {
+	}
+
+	public void glGetFixedv(int arg0, IntBuffer arg1) {
+	}
+
+	public void glGetFloatv(int arg0, float[] arg1, int arg2) {
+	}
+
+	public void glGetFloatv(int arg0, FloatBuffer arg1) {
+	}
+
+	public void glGetLightfv(int arg0, int arg1, float[] arg2, int arg3) {
+	}
+
+	public void glGetLightfv(int arg0, int arg1, FloatBuffer arg2) {
+	}
+
+	public void glGetLightxv(int arg0, int arg1, int[] arg2, int arg3) {
+	}
+
+	public void glGetLightxv(int arg0, int arg1, IntBuffer arg2) {
+	}
+
+	public void glGetMaterialfv(int arg0, int arg1, float[] arg2, int arg3) {
+	}
+
+	public void glGetMaterialfv(int arg0, int arg1, FloatBuffer arg2) {
+	}
+
+	public void glGetMaterialxv(int arg0, int arg1, int[] arg2, int arg3) {
+	}
+
+	public void glGetMaterialxv(int arg0, int arg1, IntBuffer arg2) {
+	}
+
+	public void glGetTexEnviv(int arg0, int arg1, int[] arg2, int arg3) {
+	}
+
+	public void glGetTexEnviv(int arg0, int arg1, IntBuffer arg2) {
+	}
+
+	public void glGetTexEnvxv(int arg0, int arg1, int[] arg2, int arg3) {
+	}
+
+	public void glGetTexEnvxv(int arg0, int arg1, IntBuffer arg2) {
+	}
+
+	public void glGetTexParameterfv(int arg0, int arg1, float[] arg2, int arg3) {
+	}
+
+	public void glGetTexParameterfv(int arg0, int arg1, FloatBuffer arg2) {
+	}
+
+	public void glGetTexParameteriv(int arg0, int arg1, int[] arg2, int arg3) {
+	}
+
+	public void glGetTexParameteriv(int arg0, int arg1, IntBuffer arg2) {
+	}
+
+	public void glGetTexParameterxv(int arg0, int arg1, int[] arg2, int arg3) {
+	}
+
+	public void glGetTexParameterxv(int arg0, int arg1, IntBuffer arg2) {
+	}
+
+	public boolean glIsBuffer(int arg0) {
+		return false;
+	}
+
+	public boolean glIsEnabled(int arg0) {
+		return false;
+	}
+
+	public boolean glIsTexture(int arg0) {
+		return false;
+	}
+
+	public void glNormalPointer(int arg0, int arg1, int arg2) {
+	}
+
+	public void glPointParameterf(int arg0, float arg1) {
+	}
+
+	public void glPointParameterfv(int arg0, float[] arg1, int arg2) {
+	}
+
+	public void glPointParameterfv(int arg0, FloatBuffer arg1) {
+	}
+
+	public void glPointParameterx(int arg0, int arg1) {
+	}
+
+	public void glPointParameterxv(int arg0, int[] arg1, int arg2) {
+	}
+
+	public void glPointParameterxv(int arg0, IntBuffer arg1) {
+	}
+
+	public void glPointSizePointerOES(int arg0, int arg1, Buffer arg2) {
+	}
+
+	public void glTexCoordPointer(int arg0, int arg1, int arg2, int arg3) {
+	}
+
+	public void glTexEnvi(int arg0, int arg1, int arg2) {
+	}
+
+	public void glTexEnviv(int arg0, int arg1, int[] arg2, int arg3) {
+	}
+
+	public void glTexEnviv(int arg0, int arg1, IntBuffer arg2) {
+	}
+
+	public void glTexParameterfv(int arg0, int arg1, float[] arg2, int arg3) {
+	}
+
+	public void glTexParameterfv(int arg0, int arg1, FloatBuffer arg2) {
+	}
+
+	public void glTexParameteri(int arg0, int arg1, int arg2) {
+	}
+
+	public void glTexParameteriv(int arg0, int arg1, int[] arg2, int arg3) {
+	}
+
+	public void glTexParameteriv(int arg0, int arg1, IntBuffer arg2) {
+	}
+
+	public void glTexParameterxv(int arg0, int arg1, int[] arg2, int arg3) {
+	}
+
+	public void glTexParameterxv(int arg0, int arg1, IntBuffer arg2) {
+	}
+
+	public void glVertexPointer(int arg0, int arg1, int arg2, int arg3) {
+	}
+
+	private void genNames(int n, int[] names, int offset) {
+		for (int i = 0; i < n; i++) {
+			names[offset + i] = mNextName++;
+		}
+	}
+
+	private void genNames(int n, IntBuffer names) {
+		for (int i = 0; i < n; i++) {
+			names.put(names.position() + i, mNextName++);
+		}
+	}
+}